@@ -1,46 +1,79 @@
 package com.example.john.namedays;
 
-import android.annotation.SuppressLint;
 import android.app.Activity;
 import android.app.AlertDialog;
 import android.app.Dialog;
 import android.app.DialogFragment;
+import android.app.Fragment;
 import android.content.Context;
 import android.content.DialogInterface;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.content.res.AssetFileDescriptor;
+import android.net.Uri;
 import android.support.annotation.NonNull;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.RecyclerView;
+import android.os.Build;
 import android.os.Bundle;
-import android.util.JsonReader;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.v4.os.TraceCompat;
 import android.util.Log;
 import android.view.KeyEvent;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
+import android.view.ViewTreeObserver;
 import android.widget.TextView;
 
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
-import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
 import java.util.Locale;
-import java.util.Map;
-import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 interface DownloadCallback {
-    void handleResponse(@NonNull String jsonString);
+    /**
+     * @param key The request that the response answers
+     */
+    void handleResponse(@NonNull ResponseCache.Key key, @NonNull NameDays nameDays);
+
+    /**
+     * Logs the error to logcat, and to the UI if the request that failed is still wanted
+     *
+     * @param key The request that failed
+     */
+    void handleFailure(@NonNull ResponseCache.Key key, String tag, String message);
 
     /**
      * Logs the error to both logcat and the UI
      */
     void logError(String tag, String message);
 
+    /**
+     * Adds the names of a day of the month to those shown for it
+     *
+     * @param query The query that found them
+     */
+    void handleMonth(RangeQuery.Handle query, int month, int day, String names);
+
     Activity getActivity();
 }
 
@@ -59,98 +92,156 @@ interface DayAndMonthCallback {
     void makeRequest(int day, int month);
 }
 
+interface NameSearchCallback {
+    /**
+     * Find the days on which the names starting with the prefix are celebrated
+     */
+    void findName(String prefix);
+}
+
 /**
  * A class
  *
  */
 public class MainActivity extends AppCompatActivity implements DownloadCallback, CountryCallback,
-    DayAndMonthCallback {
+    DayAndMonthCallback, NameSearchCallback {
+
+    /**
+     * Passes the results of requests to the main thread, and on to the activity attached. Results
+     * that arrive while none is, as while the activity is recreated, are held until one is.
+     * Results from the cache, handed over on the main thread already, are passed on at once
+     */
+    private static class ResponseListener implements RequestExecutor.Listener {
+        private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+        /**
+         * Accessed on the main thread only
+         */
+        private DownloadCallback downloadCallback;
+        private final List<Runnable> held = new ArrayList<>();
 
-    private static class MyConnectionThread extends Thread {
-        DownloadCallback downloadCallback;
-        HttpURLConnection httpURLConnection;
+        void attach(DownloadCallback callback) {
+            downloadCallback = callback;
 
-        MyConnectionThread(DownloadCallback downloadCallback, HttpURLConnection httpURLConnection) {
-            super("Connection Thread");
-            this.downloadCallback = downloadCallback;
-            this.httpURLConnection = httpURLConnection;
+            for (Runnable delivery : held) {
+                delivery.run();
+            }
+            held.clear();
         }
 
-        @Override
-        public void run() {
-            // Open communications link (network traffic occurs here).
-            try {
-                httpURLConnection.connect();
-                final String response = read(new BufferedInputStream(httpURLConnection.getInputStream()));
+        void detach() {
+            downloadCallback = null;
+        }
 
-                if (response != null && downloadCallback != null) {
-                    downloadCallback.getActivity().runOnUiThread(new Runnable() {
-                        @Override
-                        public void run() {
-                            downloadCallback.handleResponse(response);
-                        }
-                    });
+        @Override
+        public void onResponse(final ResponseCache.Key key, final NameDays nameDays) {
+            Runnable delivery = new Runnable() {
+                @Override
+                public void run() {
+                    downloadCallback.handleResponse(key, nameDays);
                 }
+            };
 
-            } catch (final IOException e) {
-                if (downloadCallback != null) {
-                    downloadCallback.getActivity().runOnUiThread(new Runnable() {
-                        @Override
-                        public void run() {
-                            downloadCallback.logError("Connection",
-                                    "Unable to read response from connection: " + e.getMessage());
-                        }
-                    });
-                } else {
-                    Log.e("Connection", "Unable to read response from connection: " + e.getMessage());
+            if (Looper.myLooper() == Looper.getMainLooper()) {
+                deliver(delivery);
+            } else {
+                post(delivery);
+            }
+        }
+
+        @Override
+        public void onFailure(final ResponseCache.Key key, final IOException e) {
+            post(new Runnable() {
+                @Override
+                public void run() {
+                    if (e instanceof ParseException) {
+                        downloadCallback.handleFailure(key, "JSON", e.getMessage());
+                    } else {
+                        downloadCallback.handleFailure(key, "Connection",
+                                "Unable to read response from connection: " + e.getMessage());
+                    }
                 }
-            } finally {
-                if (httpURLConnection != null) {
-                    httpURLConnection.disconnect();
+            });
+        }
+
+        /**
+         * Runs the delivery on the main thread, once an activity is attached. Called on any thread
+         */
+        void post(final Runnable delivery) {
+            final long postedAt = System.nanoTime();
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    metrics.recordNanos(Metrics.UI_POST, System.nanoTime() - postedAt);
+                    deliver(delivery);
                 }
-            }
+            });
         }
 
-        private String read(InputStream inputStream) {
+        private void deliver(Runnable delivery) {
+            if (downloadCallback != null) {
+                delivery.run();
+            } else {
+                held.add(delivery);
+            }
+        }
+    }
 
-            StringBuilder body = null;
-            try {
-                InputStreamReader reader = new InputStreamReader(inputStream, "UTF-8");
-                final int READ_SIZE = 128;
-                char[] buffer = new char[READ_SIZE];
-                body = new StringBuilder();
+    /**
+     * Keeps the requests in flight, and their listener, across recreations of the activity, as
+     * on rotation, so that their results reach the new activity instead of being thrown away and
+     * fetched again. Has no UI
+     */
+    public static class RequestHolderFragment extends Fragment {
+        static final String TAG = "REQUESTS";
 
-                int bytesRead;
+        final ResponseListener responseListener = new ResponseListener();
+        ResponseCache.Key pendingKey;
+        /**
+         * When the pending request was made, in nanos, for the stats of the API as a source
+         */
+        long pendingSince;
+        NameDayService.Lookup pendingLookup;
+        RangeQuery.Handle monthQuery;
 
-                bytesRead = reader.read(buffer);
-                while (bytesRead != -1) {
-                    body.append(buffer, 0, bytesRead);
+        @Override
+        public void onCreate(Bundle savedInstanceState) {
+            super.onCreate(savedInstanceState);
+            setRetainInstance(true);
+        }
 
-                    bytesRead = reader.read(buffer);
-                }
-            } catch (IOException ignore) {
-            } finally {
-                if (inputStream != null ) {
-                    try {
-                        inputStream.close();
-                    } catch (IOException ignore) {
-                    }
-                }
+        /**
+         * Withdraws from the pending request, or month, whose response is no longer wanted. The
+         * connection of a request no one else waits for is closed
+         */
+        void cancel() {
+            if (pendingLookup != null) {
+                pendingLookup.cancel();
+                pendingLookup = null;
+            }
+            pendingKey = null;
+            if (monthQuery != null) {
+                monthQuery.cancel();
+                monthQuery = null;
             }
-            return body != null ? body.toString() : null;
         }
     }
 
     public static class CountryDialogFragment extends DialogFragment
             implements DialogInterface.OnClickListener {
 
-        static CountryDialogFragment newInstance(String nameDays_country) {
+        /**
+         * @param countryCodes The countries to choose from: those of the API, in id order, then
+         * those of the data packs
+         */
+        static CountryDialogFragment newInstance(String nameDays_country, String[] countryCodes) {
             CountryDialogFragment f = new CountryDialogFragment();
 
             Bundle bundle = new Bundle();
 
 
             bundle.putString("country", nameDays_country);
+            bundle.putStringArray("codes", countryCodes);
             f.setArguments(bundle);
 
             return f;
@@ -158,9 +249,6 @@ public class MainActivity extends AppCompatActivity implements DownloadCallback,
 
         private CountryCallback callback;
 
-        private static final String[] COUNTRY_CODES =
-                {"US", "CZ", "SK", "PL", "FR", "HU", "HR", "SE", "AT", "IT", "ES"};
-
         @Override
         public void onCreate(Bundle savedInstanceState) {
             super.onCreate(savedInstanceState);
@@ -176,38 +264,23 @@ public class MainActivity extends AppCompatActivity implements DownloadCallback,
         }
 
         private String[] fetchCountryDisplayNames() {
-            Locale locale = Locale.getDefault();
-            String language = locale.getLanguage();
+            String[] codes = getArguments().getStringArray("codes");
+            String[] names = Arrays.copyOf(LocaleNames.of(Locale.getDefault()).countries,
+                    codes.length);
 
-            String[] displayNames = new String[COUNTRY_CODES.length];
-
-
-            for (int i = 0; i < displayNames.length; i++) {
-                displayNames[i] = new Locale(language, COUNTRY_CODES[i]).getDisplayCountry(locale);
+            // Indexed by country id up to the countries of the data packs
+            for (int i = Countries.COUNT; i < codes.length; i++) {
+                names[i] = displayCountry(codes[i]);
             }
-
-            return displayNames;
+            return names;
         }
 
         private int fetchCheckedItem() {
-            String code = getArguments().getString("country");
+            int found = Arrays.asList(getArguments().getStringArray("codes"))
+                    .indexOf(Countries.countryCodeOfKey(getArguments().getString("country")));
 
             // Fallback on the US, if the country code is not found
-            int found = 0;
-
-            if (code != null) {
-                code = code.substring("name_".length());
-
-                int index = 0;
-                for (String s : COUNTRY_CODES) {
-                    if (code.equalsIgnoreCase(s)) {
-                        found = index;
-                        break;
-                    }
-                    index++;
-                }
-            }
-            return found;
+            return found != -1 ? found : Countries.DEFAULT_ID;
         }
 
         @Override
@@ -228,7 +301,7 @@ public class MainActivity extends AppCompatActivity implements DownloadCallback,
         @Override
         public void onClick(DialogInterface dialogInterface, int i) {
             if (callback != null) {
-                callback.setCountry(COUNTRY_CODES[i]);
+                callback.setCountry(getArguments().getStringArray("codes")[i]);
             }
             dialogInterface.dismiss();
             dismiss();
@@ -312,157 +385,1058 @@ public class MainActivity extends AppCompatActivity implements DownloadCallback,
         }
     }
 
+    public static class NameSearchDialogFragment extends DialogFragment {
+        private NameSearchCallback callback;
+
+        static NameSearchDialogFragment newInstance() {
+            return new NameSearchDialogFragment();
+        }
+
+        @Override
+        public void onCreate(Bundle savedInstanceState) {
+            super.onCreate(savedInstanceState);
+            setStyle(DialogFragment.STYLE_NORMAL, R.style.Theme_AppCompat_Light_Dialog_Alert);
+        }
+
+        @Override
+        public Dialog onCreateDialog(Bundle savedInstanceState) {
+            View view = getActivity().getLayoutInflater().inflate(R.layout.name_search_dialog_layout,
+                    null, false);
+
+            final TextView nameField = view.findViewById(R.id.nameField);
+
+            nameField.setOnKeyListener(
+                    new View.OnKeyListener() {
+                        @Override
+                        public boolean onKey(View keyedView, int i, KeyEvent keyEvent) {
+                            if ((keyEvent.getAction() == KeyEvent.ACTION_DOWN) && (i == KeyEvent.KEYCODE_ENTER)) {
+
+                                if (callback != null) {
+                                    callback.findName(nameField.getText().toString());
+                                }
+                                dismiss();
+                                return true;
+                            }
+                            return false;
+                        }
+                    }
+            );
+
+            return new AlertDialog.Builder(getActivity(), getTheme())
+                    .setTitle(R.string.find_name_dialog_text)
+                    .setView(view)
+                    .create();
+        }
+
+        @Override
+        public void onAttach(Context context) {
+            super.onAttach(context);
+
+            if (getActivity() instanceof NameSearchCallback) {
+                callback = ((NameSearchCallback) getActivity());
+            }
+        }
+
+        @Override
+        public void onDetach() {
+            super.onDetach();
+            callback = null;
+        }
+    }
+
     // State variables
     private String country;
     private int day = 1, month = 1;
 
     // Helper variables
-    private MyConnectionThread connectionThread;
+    private RequestHolderFragment requests;
     private int apiFunction;
-    private String[] displayMonths;
+    /**
+     * The function whose names are shown, for the date in day and month; 0 if none are
+     */
+    private int shownFunction;
+    /**
+     * When onCreate started, in uptime millis, for the time to first content
+     */
+    private long createdAt;
+    /**
+     * True once names have been shown, and the frame with them is reported as the first content
+     */
+    private boolean firstContentReported;
 
     // UI
     private TextView responseView;
+    /**
+     * The rows of results of many rows, such as a month, under the heading in responseView
+     */
+    private NameDayListAdapter nameDayList;
 
     private static final String COUNTRY_KEY = "Country";
-    private static final String RESPONSE_KEY = "Response";
+    private static final String FUNCTION_KEY = "Function";
     private static final String DAY_KEY = "Day";
     private static final String MONTH_KEY = "Month";
+    /**
+     * The country, and what was shown for which date last, to show again on the next start
+     */
+    private static final String LAST_ANSWER_PREFERENCES = "LastAnswer";
     private static final String COUNTRY_DIALOG_TAG = "COUNTRY";
     private static final String DAY_MONTH_DIALOG_TAG = "DAY AND MONTH";
-    private static final String API_HOST_NAME = "https://api.abalin.net/get/";
+    private static final String NAME_SEARCH_DIALOG_TAG = "NAME SEARCH";
+    private static final int NAME_SEARCH_LIMIT = 20;
+    /**
+     * Set at build time, so that the app can be pointed at a stand-in server
+     */
+    private static final String API_HOST_NAME = BuildConfig.API_BASE_URL;
+    private static final String NAME_DAY_INDEX_FILE = "namedays.idx";
+    private static final long NAME_DAY_INDEX_MAX_AGE = TimeUnit.DAYS.toMillis(30);
 
-    @Override
-    protected void onCreate(Bundle savedInstanceState) {
-        super.onCreate(savedInstanceState);
-        setContentView(R.layout.activity_main);
-        responseView = findViewById(R.id.responseView);
-        if (responseView == null) {
-            Log.e("App", "No view to show responses to requests");
+    /**
+     * Loaded once per process, by the first instance of the activity
+     */
+    private static volatile NameDayIndex nameDayIndex;
+    private static volatile boolean nameDayIndexChanged;
+
+    /**
+     * Names to the days they are celebrated on, built from the index and from each response
+     */
+    private static final NameSearchIndex nameSearchIndex = new NameSearchIndex();
+
+    /**
+     * Parsed responses, shared by every instance of the activity for the life of the process.
+     * Served stale for up to a day after they expire, while they are revalidated
+     */
+    private static final ResponseCache responseCache = new ResponseCache(64,
+            TimeUnit.HOURS.toMillis(6), TimeUnit.DAYS.toMillis(1));
+
+    private static final String DISK_CACHE_FILE = "namedays.cache";
+    private static final long DISK_CACHE_COMPACT_THRESHOLD = 256 * 1024;
+
+    /**
+     * Opened in the background, once per process; null until then, or if it cannot be opened
+     */
+    private static volatile NameDayDiskCache diskCache;
+
+    /**
+     * Serializes opening of and writes to the disk cache, off the main thread
+     */
+    private static final ExecutorService diskExecutor = Executors.newSingleThreadExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull Runnable runnable) {
+                    return new Thread(runnable, "Disk Cache");
+                }
+            });
+    private static boolean diskCacheRequested;
+
+    /**
+     * Latencies and errors of every request made by the process
+     */
+    private static final Metrics metrics = new Metrics();
+    private static final long METRICS_DUMP_PERIOD = TimeUnit.MINUTES.toMillis(1);
+
+    private static boolean metricsDumpStarted;
+
+    /**
+     * Shared by every instance of the activity, so that requests are bounded across all of them.
+     * Null until first used, see {@link #engine()}
+     */
+    private static volatile Engine engine;
+    private static final Object engineLock = new Object();
+
+    private static final int SYNC_BATCH_SIZE = 31;
+    private static final int SYNC_PARALLELISM = 2;
+
+    /**
+     * Serializes writes of the name day index
+     */
+    private static final Object nameDayIndexWriteLock = new Object();
+
+    /**
+     * The local index, as a source of the countries of the API
+     */
+    private static final NameDaySource indexSource = new NameDaySource() {
+        @Override
+        public String name() {
+            return "Index";
         }
 
-        // Set up state, such as country and month names, according to locale
-        findDisplayMonths();
+        @Override
+        public boolean covers(String countryCode) {
+            return Countries.idOfCountryCode(countryCode) != -1;
+        }
 
-        if (savedInstanceState != null) {
-            country = savedInstanceState.getString(COUNTRY_KEY);
-            responseView.setText(savedInstanceState.getString(RESPONSE_KEY));
-            day = savedInstanceState.getInt(DAY_KEY);
-            month = savedInstanceState.getInt(MONTH_KEY);
+        @Override
+        public boolean isRemote() {
+            return false;
         }
 
-        if (country == null) {
-            country = getCountryNameForAPI();
+        @Override
+        public String lookup(int day, int month, String countryCode) {
+            NameDayIndex index = nameDayIndex;
+            return index != null
+                    ? index.get(day, month, Countries.apiKeyForCountryCode(countryCode)) : null;
         }
-    }
+    };
 
     /**
-     * @see #getCountryNameForAPI(String)
-     * @return getCountryNameForAPI(null)
+     * The API, as a source, tried after every local one. Only a lookup in it builds the engine
      */
-    private String getCountryNameForAPI() {
-        return getCountryNameForAPI(null);
-    }
+    private static final NameDaySource remoteSource = new NameDaySource() {
+        @Override
+        public String name() {
+            return "NameDays API";
+        }
+
+        @Override
+        public boolean covers(String countryCode) {
+            return Countries.idOfCountryCode(countryCode) != -1;
+        }
+
+        @Override
+        public boolean isRemote() {
+            return true;
+        }
+
+        @Override
+        public String lookup(int day, int month, String countryCode) throws IOException {
+            return engine().remoteSource.lookup(day, month, countryCode);
+        }
+    };
+    private static final long REMOTE_SOURCE_TIMEOUT = TimeUnit.SECONDS.toMillis(10);
 
     /**
-     *
-     * @param countryCode An ISO 3166 alpha-2 country code or a UN M.49 numeric-3 area code or null
-     *
-     * @return A string that denotes country to the namedays API: name_{country code, in lowercase},
-     * for some accepted set of country codes = {CZ, SK, PL, FR, HU, HR, SE, AT, IT, ES, US}
+     * Where name days are looked up: the index, the data packs bundled with the app, those
+     * imported by the user, then the API. Replaced once the data packs are loaded
      */
-    private String getCountryNameForAPI(String countryCode) {
-        if (countryCode == null) {
-            Locale locale = Locale.getDefault();
+    private static volatile CompositeSource nameDaySources =
+            sources(Collections.<DataPack>emptyList());
 
-            if (locale != null) {
-                // Country code is either 'ISO 3166 alpha-2 country code or UN M.49 numeric-3 area code'
-                countryCode = locale.getCountry();
-            }
-            if (countryCode == null) {
-                countryCode = "US";
-            }
-        }
+    /**
+     * The data packs loaded, bundled ones first; none until they are
+     */
+    private static volatile List<DataPack> dataPacks = Collections.emptyList();
+    /**
+     * Of assets, and of app storage, for the bundled and imported data packs
+     */
+    private static final String DATA_PACK_DIR = "packs";
+    private static final String DATA_PACK_SUFFIX = ".tsv";
+    private static final int IMPORT_DATA_PACK_REQUEST = 1;
 
-        /*
-         <https://www.iso.org/obp/ui/#iso:pub:PUB500001:en>
-         <https://en.wikipedia.org/wiki/ISO_3166-1_numeric>
+    /**
+     * The request pipeline of the process, from the fetchers of the API to the service, the
+     * prefetcher and the month queries over them. Built when first used rather than when the
+     * class is loaded, so that none of it is on the path to the first frame
+     */
+    private static final class Engine {
+        /**
+         * Keeps the requests of the process within a budget of the shared API, with taps ahead
+         * of prefetches, months and syncs
+         */
+        final RateLimiter rateLimiter = new RateLimiter(2, 5, 2000, 1, 3, 30000);
+        final ResilientFetcher interactiveFetcher;
+        /**
+         * Also fetches the whole year into the index, for {@link SyncJobService}
          */
-        switch (countryCode) {
-            case "CZ":
-            case "203":
-                return "name_cz";
+        final ResilientFetcher backgroundFetcher;
+        final NameDayService nameDayService;
+        /**
+         * Fetches the days around the last one shown, while the user makes no requests
+         */
+        final Prefetcher prefetcher;
+        /**
+         * Looks up whole months, a few dates at a time
+         */
+        final RangeQuery rangeQuery;
+        final RemoteSource remoteSource;
 
-            case "SK":
-            case "703":
-                return "name_sk";
+        Engine() {
+            // Keep connections to the API alive between requests, rather than paying for DNS, TCP
+            // and TLS on every lookup
+            ApiClient.configureConnectionPool(4, TimeUnit.MINUTES.toMillis(5));
 
-            case "PL":
-            case "616":
-                return "name_pl";
+            HttpFetcher fetcher = new HttpFetcher(new ApiClient(API_HOST_NAME,
+                    ApiClient.DEFAULT_CONNECT_TIMEOUT, ApiClient.DEFAULT_READ_TIMEOUT),
+                    new HttpFetcher.ParserFactory() {
+                        @Override
+                        public ApiClient.BodyReader<NameDays> parserFor(String country) {
+                            return new NameDaysParser(country);
+                        }
+                    }, metrics, responseCache);
 
-            case "FR":
-            case "250":
-                return "name_fr";
+            // One breaker for every fetcher, since they all call the same API
+            CircuitBreaker breaker = new CircuitBreaker(5, TimeUnit.SECONDS.toMillis(30),
+                    new CircuitBreaker.Listener() {
+                        @Override
+                        public void onStateChange(CircuitBreaker.State from,
+                                                  CircuitBreaker.State to) {
+                            Log.i("Breaker", from + " -> " + to);
+                        }
+                    });
 
-            case "HU":
-            case "348":
-                return "name_hu";
+            // Lookups made by the user are retried and hedged, and fall back to the index
+            interactiveFetcher = new ResilientFetcher(
+                    rateLimiter.limit(fetcher, RateLimiter.Priority.INTERACTIVE), 3, 250, 4000,
+                    1000, breaker, new ResilientFetcher.Fallback() {
+                        @Override
+                        public NameDays fallback(ResponseCache.Key key) {
+                            NameDayIndex index = nameDayIndex;
+                            ResponseCache.Key date = resolve(key);
+                            String names = index != null
+                                    ? index.get(date.day, date.month, key.country) : null;
+
+                            return names == null
+                                    ? null : new NameDays(names, date.day, date.month);
+                        }
+                    });
+            // Background lookups, of days the index does not have, are neither hedged nor retried
+            // more than once
+            backgroundFetcher = new ResilientFetcher(
+                    rateLimiter.limit(fetcher, RateLimiter.Priority.BACKGROUND), 2, 1000, 4000, 0,
+                    breaker, null);
+
+            nameDayService = new NameDayService(interactiveFetcher, new NameDayService.Cache() {
+                @Override
+                public NameDays get(ResponseCache.Key key) {
+                    return responseCache.get(key);
+                }
 
-            case "HR":
-            case "191":
-                return "name_hr";
+                @Override
+                public NameDays getStale(ResponseCache.Key key) {
+                    return responseCache.getStale(key);
+                }
 
-            case "SE":
-            case "752":
-                return "name_se";
+                @Override
+                public void put(ResponseCache.Key key, NameDays nameDays) {
+                    storeNameDays(key, nameDays);
+                }
 
-            case "AT":
-            case "040":
-                return "name_at";
+                @Override
+                public NameDays load(ResponseCache.Key key) {
+                    return loadFromDiskCache(key);
+                }
+            }, 2, 8, metrics);
 
-            case "IT":
-            case "380":
-                return "name_it";
+            prefetcher = new Prefetcher(backgroundFetcher, nameDayService, new Prefetcher.Store() {
+                @Override
+                public boolean contains(ResponseCache.Key key) {
+                    NameDayIndex index = nameDayIndex;
+                    return index != null && index.get(key.day, key.month, key.country) != null;
+                }
 
-            case "ES":
-            case "724":
-                return "name_es";
+                @Override
+                public void store(ResponseCache.Key key, NameDays nameDays) {
+                    storeNameDays(key, nameDays);
+                }
+            }, 3, 250);
 
-            case "US":
-            case "840":
-            default:
-                return "name_us";
-        }
-    }
+            rangeQuery = new RangeQuery(backgroundFetcher, nameDayService,
+                    new RangeQuery.Lookup() {
+                        @Override
+                        public String find(int day, int month, String country) {
+                            return nameDaySources.lookupLocal(day, month,
+                                    Countries.countryCodeOfKey(country));
+                        }
 
-    private void findDisplayMonths() {
-        Locale locale = Locale.getDefault();
-        Calendar calendar = Calendar.getInstance(locale);
-        Set<Map.Entry<String, Integer>> months = calendar.getDisplayNames(Calendar.MONTH, Calendar.LONG, locale).entrySet();
+                        @Override
+                        public void store(ResponseCache.Key key, NameDays nameDays) {
+                            storeNameDays(key, nameDays);
+                        }
+                    }, 4);
 
-        if (displayMonths == null || displayMonths.length != months.size()) {
-            displayMonths = new String[months.size()];
+            remoteSource = new RemoteSource(nameDayService, REMOTE_SOURCE_TIMEOUT);
         }
 
-        for (Map.Entry<String, Integer> entry : months) {
-            displayMonths[entry.getValue()] = entry.getKey();
+        @Override
+        public String toString() {
+            return "interactive: " + interactiveFetcher + "\nbackground: " + backgroundFetcher
+                    + "\n" + rateLimiter;
         }
     }
 
-    @Override
-    protected void onSaveInstanceState(Bundle outState) {
-        super.onSaveInstanceState(outState);
-        outState.putString(COUNTRY_KEY, country);
-        outState.putString(RESPONSE_KEY, responseView.getText().toString());
-        outState.putInt(DAY_KEY, day);
-        outState.putInt(MONTH_KEY, month);
+    /**
+     * @return The engine, which is built on the first call, on whichever thread makes it
+     */
+    private static Engine engine() {
+        Engine built = engine;
+
+        if (built == null) {
+            // Not the lock of the class, which loading the index and data packs holds
+            synchronized (engineLock) {
+                built = engine;
+                if (built == null) {
+                    built = engine = new Engine();
+                }
+            }
+        }
+        return built;
     }
 
-    @Override
-    public boolean onCreateOptionsMenu(Menu menu) {
-        getMenuInflater().inflate(R.menu.main, menu);
-        return true;
+    /**
+     * Logs the metrics of the process, and the state of the engine once it is built, every
+     * period. Called on the main thread
+     */
+    private static void startMetricsDump() {
+        if (metricsDumpStarted) {
+            return;
+        }
+        metricsDumpStarted = true;
+
+        metrics.startDump(METRICS_DUMP_PERIOD, new Metrics.Sink() {
+            @Override
+            public void write(Metrics.Snapshot snapshot) {
+                Log.i("Metrics", snapshot + "\n" + (engine != null ? engine : "No engine yet")
+                        + "\n" + responseCache + "\n" + nameDaySources);
+            }
+        });
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        createdAt = SystemClock.uptimeMillis();
+        TraceCompat.beginSection("MainActivity.onCreate");
+        try {
+            super.onCreate(savedInstanceState);
+            create(savedInstanceState);
+        } finally {
+            TraceCompat.endSection();
+        }
+        deferStartupWork();
+    }
+
+    /**
+     * Only what the first frame needs: the views, the state to show, and the names of the last
+     * answer from the local index, which is mapped rather than read. Names of months and
+     * countries are resolved as they are first shown
+     */
+    private void create(Bundle savedInstanceState) {
+        setContentView(R.layout.activity_main);
+        responseView = findViewById(R.id.responseView);
+        if (responseView == null) {
+            Log.e("App", "No view to show responses to requests");
+        }
+        nameDayList = new NameDayListAdapter(this);
+        nameDayList.attachTo((RecyclerView) findViewById(R.id.nameDayList));
+
+        String lastFunction = null;
+        if (savedInstanceState != null) {
+            // The text of responseView is restored by the view itself
+            country = savedInstanceState.getString(COUNTRY_KEY);
+            nameDayList.restore(savedInstanceState);
+            day = savedInstanceState.getInt(DAY_KEY);
+            month = savedInstanceState.getInt(MONTH_KEY);
+        } else {
+            SharedPreferences last = getSharedPreferences(LAST_ANSWER_PREFERENCES, MODE_PRIVATE);
+            country = last.getString(COUNTRY_KEY, null);
+            lastFunction = last.getString(FUNCTION_KEY, null);
+            day = last.getInt(DAY_KEY, day);
+            month = last.getInt(MONTH_KEY, month);
+        }
+
+        if (country == null) {
+            country = getCountryNameForAPI();
+        }
+
+        TraceCompat.beginSection("loadNameDayIndex");
+        try {
+            loadNameDayIndex(this);
+        } finally {
+            TraceCompat.endSection();
+        }
+
+        requests = (RequestHolderFragment) getFragmentManager()
+                .findFragmentByTag(RequestHolderFragment.TAG);
+        if (requests == null) {
+            requests = new RequestHolderFragment();
+            getFragmentManager().beginTransaction().add(requests, RequestHolderFragment.TAG)
+                    .commit();
+        }
+        // Results that arrived while the activity was recreated are handled now
+        requests.responseListener.attach(this);
+
+        if (savedInstanceState == null) {
+            TraceCompat.beginSection("showLastAnswer");
+            try {
+                showLastAnswer(lastFunction);
+            } finally {
+                TraceCompat.endSection();
+            }
+        }
+    }
+
+    /**
+     * Shows the kind of answer shown last, from the local index, before any request is made:
+     * the names of the same day relative to today, or of the same date; or today's, if it was
+     * neither. Shows nothing if the index does not have them
+     */
+    private void showLastAnswer(String function) {
+        if ("yesterday".equals(function)) {
+            showLocally(R.id.yesterday, -1);
+        } else if ("tomorrow".equals(function)) {
+            showLocally(R.id.tomorrow, 1);
+        } else if ("date".equals(function) || "allCountries".equals(function)) {
+            String nameDays = nameDaySources.lookupLocal(day, month, countryCode());
+            if (nameDays != null) {
+                apiFunction = "date".equals(function) ? R.id.dayAndMonth : R.id.allCountries;
+                showNameDays(nameDays, day, month);
+            }
+        } else {
+            showLocally(R.id.today, 0);
+        }
+    }
+
+    /**
+     * Saves what is shown, to be shown again by {@link #showLastAnswer} on the next start
+     */
+    private void saveLastAnswer() {
+        String function;
+        switch (shownFunction) {
+            case R.id.today:
+                function = "today";
+                break;
+            case R.id.yesterday:
+                function = "yesterday";
+                break;
+            case R.id.tomorrow:
+                function = "tomorrow";
+                break;
+            case R.id.dayAndMonth:
+                function = "date";
+                break;
+            case R.id.allCountries:
+                function = "allCountries";
+                break;
+            default:
+                function = null;
+        }
+        getSharedPreferences(LAST_ANSWER_PREFERENCES, MODE_PRIVATE).edit()
+                .putString(COUNTRY_KEY, country)
+                .putString(FUNCTION_KEY, function)
+                .putInt(DAY_KEY, day)
+                .putInt(MONTH_KEY, month)
+                .apply();
+    }
+
+    /**
+     * Tells the system, and the log, that the first content is shown, for startup benchmarks,
+     * once the frame with the names just set is about to be drawn. Reports once, the first time
+     * names are shown; nothing is reported while there are none
+     */
+    private void reportFirstContentWhenDrawn() {
+        if (firstContentReported) {
+            return;
+        }
+        firstContentReported = true;
+
+        responseView.getViewTreeObserver().addOnPreDrawListener(
+                new ViewTreeObserver.OnPreDrawListener() {
+                    @Override
+                    public boolean onPreDraw() {
+                        responseView.getViewTreeObserver().removeOnPreDrawListener(this);
+                        Log.i("Startup", "First content in "
+                                + (SystemClock.uptimeMillis() - createdAt) + "ms from onCreate");
+                        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+                            reportFullyDrawn();
+                        }
+                        return true;
+                    }
+                });
+    }
+
+    /**
+     * Starts what the first frame does not need once it is drawn, off the main thread
+     */
+    private void deferStartupWork() {
+        final Context context = getApplicationContext();
+
+        responseView.post(new Runnable() {
+            @Override
+            public void run() {
+                openDiskCache(context);
+                startMetricsDump();
+
+                final boolean shown = shownFunction != 0;
+                final int shownDay = day, shownMonth = month;
+                final String shownCountry = country;
+                Thread thread = new Thread("Deferred Startup") {
+                    @Override
+                    public void run() {
+                        Engine built = engine();
+                        if (shown && nameDaySources.coversRemotely(
+                                Countries.countryCodeOfKey(shownCountry))) {
+                            built.prefetcher.schedule(shownDay, shownMonth, shownCountry);
+                        }
+                        loadDataPacks(context);
+                        // Ready by the time a month or a country is first shown
+                        LocaleNames.of(Locale.getDefault());
+                        SyncJobService.schedule(context);
+                    }
+                };
+                thread.setPriority(Thread.MIN_PRIORITY);
+                thread.start();
+            }
+        });
+    }
+
+    private static synchronized void openDiskCache(Context context) {
+        if (diskCacheRequested) {
+            return;
+        }
+        diskCacheRequested = true;
+
+        final File file = new File(context.getFilesDir(), DISK_CACHE_FILE);
+        diskExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    diskCache = NameDayDiskCache.open(file, DISK_CACHE_COMPACT_THRESHOLD);
+                } catch (IOException e) {
+                    Log.e("Cache", "Unable to open the disk cache: " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    /**
+     * Puts the last names stored on disk for the request in the response cache, as old as they
+     * are, unless it already holds names for it. Called on a request thread, since it reads the
+     * disk
+     *
+     * @return The names, if they are still fresh; null otherwise
+     */
+    private static NameDays loadFromDiskCache(ResponseCache.Key key) {
+        NameDayDiskCache cache = diskCache;
+
+        // Names in memory, even stale ones, are newer, and may hold validators
+        if (cache == null || responseCache.peek(key) != null) {
+            return null;
+        }
+        ResponseCache.Key date = resolve(key);
+        NameDays stored = cache.get(date.day, date.month, key.country);
+        long writtenAt = cache.writtenAt(date.day, date.month, key.country);
+
+        if (stored == null || writtenAt == -1) {
+            return null;
+        }
+        // As old as when they were written, so that names past their time are fetched anew, and
+        // may be served stale meanwhile
+        responseCache.put(key, stored, writtenAt);
+        return responseCache.get(key);
+    }
+
+    /**
+     * @return The request for the date that the request for today, yesterday or tomorrow is for,
+     * or the request itself if it is for a date
+     */
+    private static ResponseCache.Key resolve(ResponseCache.Key key) {
+        if (!key.isRelative()) {
+            return key;
+        }
+        Calendar calendar = Calendar.getInstance();
+
+        if ("yesterday".equals(key.endpoint)) {
+            calendar.add(Calendar.DAY_OF_MONTH, -1);
+        } else if ("tomorrow".equals(key.endpoint)) {
+            calendar.add(Calendar.DAY_OF_MONTH, 1);
+        }
+        return new ResponseCache.Key("namedays", calendar.get(Calendar.DAY_OF_MONTH),
+                calendar.get(Calendar.MONTH) + 1, key.country);
+    }
+
+    private static void putInDiskCache(final NameDays nameDays, final String country) {
+        diskExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                NameDayDiskCache cache = diskCache;
+
+                if (cache != null) {
+                    try {
+                        cache.put(nameDays.day, nameDays.month, country, nameDays.names);
+                    } catch (IOException e) {
+                        Log.e("Cache", "Unable to write to the disk cache: " + e.getMessage());
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Loads the local name day index, preferring the copy saved in app storage over the one
+     * bundled with the app. Starts an empty index if neither is present, or usable.
+     *
+     * Either is a snapshot that is mapped, not read, so loading costs about the same whatever
+     * the size of the index, and names are decoded only as they are looked up. An index that is
+     * out of date is still served, since old names beat none; the sync fetches every day anew
+     * and replaces its entries in the background, see {@link #syncNameDayIndex}
+     */
+    private static synchronized void loadNameDayIndex(Context context) {
+        if (nameDayIndex != null) {
+            return;
+        }
+        NameDayIndex index = null;
+        File file = new File(context.getFilesDir(), NAME_DAY_INDEX_FILE);
+
+        if (file.exists()) {
+            try {
+                index = NameDayIndex.map(file);
+            } catch (IOException e) {
+                // Such as one saved in an older format, which the bundled index replaces
+                Log.d("Index", "Saved name day index is unusable: " + e.getMessage());
+            }
+        }
+        if (index == null) {
+            try {
+                index = mapBundledNameDayIndex(context);
+            } catch (IOException e) {
+                Log.d("Index", "No usable name day index: " + e.getMessage());
+            }
+        }
+
+        if (index == null) {
+            index = new NameDayIndex();
+            nameDayIndexChanged = true;
+        } else if (index.isStale(System.currentTimeMillis(), NAME_DAY_INDEX_MAX_AGE)) {
+            Log.i("Index", "The name day index is out of date, and is served until it is synced");
+        }
+        nameDayIndex = index;
+
+        final NameDayIndex loaded = index;
+        new Thread("Search Index Builder") {
+            @Override
+            public void run() {
+                loaded.forEach(new NameDayIndex.Visitor() {
+                    @Override
+                    public void visit(int dayOfYear, int countryId, String names) {
+                        nameSearchIndex.add(dayOfYear, countryId, names);
+                    }
+                });
+            }
+        }.start();
+    }
+
+    /**
+     * Maps the index bundled with the app, which is stored uncompressed for that reason
+     */
+    private static NameDayIndex mapBundledNameDayIndex(Context context) throws IOException {
+        AssetFileDescriptor descriptor = context.getAssets().openFd(NAME_DAY_INDEX_FILE);
+        FileInputStream in = descriptor.createInputStream();
+        try {
+            return NameDayIndex.of(NameDaySnapshot.map(in.getChannel(),
+                    descriptor.getStartOffset(), descriptor.getLength()));
+        } finally {
+            in.close();
+            descriptor.close();
+        }
+    }
+
+    /**
+     * @return The index, the data packs and the API, as sources, in the order they are tried
+     * until each is measured
+     */
+    private static CompositeSource sources(List<DataPack> packs) {
+        List<NameDaySource> sources = new ArrayList<>();
+        sources.add(indexSource);
+        sources.addAll(packs);
+        sources.add(remoteSource);
+        return new CompositeSource(sources);
+    }
+
+    /**
+     * Reads the data packs bundled with the app, then those imported by the user, and looks up
+     * name days in them from then on. A pack that cannot be read is skipped. Called on a
+     * background thread
+     */
+    private static synchronized void loadDataPacks(Context context) {
+        List<DataPack> packs = new ArrayList<>();
+
+        try {
+            String[] bundled = context.getAssets().list(DATA_PACK_DIR);
+            for (String name : bundled != null ? bundled : new String[0]) {
+                try {
+                    packs.add(DataPack.read(name,
+                            context.getAssets().open(DATA_PACK_DIR + "/" + name)));
+                } catch (IOException e) {
+                    Log.e("Packs", "Unable to read data pack " + name + ": " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            Log.e("Packs", "Unable to list the bundled data packs: " + e.getMessage());
+        }
+
+        File[] imported = new File(context.getFilesDir(), DATA_PACK_DIR).listFiles();
+        if (imported != null) {
+            Arrays.sort(imported);
+            for (File file : imported) {
+                if (!file.getName().endsWith(DATA_PACK_SUFFIX)) {
+                    continue;
+                }
+                try {
+                    packs.add(DataPack.read(file.getName(), new FileInputStream(file)));
+                } catch (IOException e) {
+                    Log.e("Packs", "Unable to read data pack " + file + ": " + e.getMessage());
+                }
+            }
+        }
+
+        dataPacks = Collections.unmodifiableList(packs);
+        nameDaySources = sources(packs);
+        Log.i("Packs", packs.toString());
+    }
+
+    /**
+     * Copies a data pack chosen by the user to app storage, once it is read without error, in
+     * place of any imported before under the same name
+     *
+     * @return The pack
+     */
+    private static DataPack copyDataPack(Context context, Uri uri) throws IOException {
+        InputStream in = context.getContentResolver().openInputStream(uri);
+        if (in == null) {
+            throw new IOException("Unable to open " + uri);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                bytes.write(buffer, 0, count);
+            }
+        } finally {
+            in.close();
+        }
+
+        String segment = uri.getLastPathSegment();
+        String name = (segment != null ? segment : "imported").replaceAll("[^A-Za-z0-9._-]", "_");
+        if (!name.endsWith(DATA_PACK_SUFFIX)) {
+            name += DATA_PACK_SUFFIX;
+        }
+        DataPack pack = DataPack.read(name, new ByteArrayInputStream(bytes.toByteArray()));
+
+        File dir = new File(context.getFilesDir(), DATA_PACK_DIR);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create " + dir);
+        }
+        File file = new File(dir, name);
+        File temp = new File(dir, name + ".tmp");
+        FileOutputStream out = new FileOutputStream(temp);
+        try {
+            bytes.writeTo(out);
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Unable to replace " + file);
+        }
+        return pack;
+    }
+
+    /**
+     * @return The codes of the countries that only data packs have names for, in order
+     */
+    private static List<String> packCountries() {
+        TreeSet<String> codes = new TreeSet<>();
+        for (DataPack pack : dataPacks) {
+            codes.addAll(pack.countries());
+        }
+
+        List<String> packCountries = new ArrayList<>();
+        for (String code : codes) {
+            if (Countries.idOfCountryCode(code) == -1) {
+                packCountries.add(code);
+            }
+        }
+        return packCountries;
+    }
+
+    private static String displayCountry(String countryCode) {
+        return new Locale("", countryCode).getDisplayCountry();
+    }
+
+    /**
+     * Writes the name day index to app storage on a background thread, if it has changed
+     */
+    private static void saveNameDayIndex(final Context context) {
+        if (!nameDayIndexChanged) {
+            return;
+        }
+
+        new Thread("Index Writer") {
+            @Override
+            public void run() {
+                try {
+                    writeNameDayIndex(context);
+                } catch (IOException e) {
+                    Log.e("Index", "Unable to write the name day index: " + e.getMessage());
+                }
+            }
+        }.start();
+    }
+
+    /**
+     * Writes the name day index to app storage on the calling thread, if it has changed
+     */
+    private static void writeNameDayIndex(Context context) throws IOException {
+        synchronized (nameDayIndexWriteLock) {
+            if (!nameDayIndexChanged) {
+                return;
+            }
+            nameDayIndexChanged = false;
+
+            NameDayIndex index = nameDayIndex;
+            File file = new File(context.getFilesDir(), NAME_DAY_INDEX_FILE);
+            File temp = new File(file.getPath() + ".tmp");
+            BufferedOutputStream out = null;
+            try {
+                out = new BufferedOutputStream(new FileOutputStream(temp));
+                index.writeTo(out);
+                out.close();
+                out = null;
+
+                if (!temp.renameTo(file)) {
+                    throw new IOException("Unable to replace " + file);
+                }
+            } catch (IOException e) {
+                nameDayIndexChanged = true;
+                throw e;
+            } finally {
+                if (out != null) {
+                    try {
+                        out.close();
+                    } catch (IOException ignore) {
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return A sync of the whole year into the name day index, which is written to app storage
+     * after each batch. Run it with {@link #syncNameDayIndex}
+     */
+    static DatasetSync newDatasetSync(final Context context) {
+        return new DatasetSync(engine().backgroundFetcher, new DatasetSync.Store() {
+            @Override
+            public boolean has(int dayOfYear) {
+                return nameDayIndex.hasDay(dayOfYear);
+            }
+
+            @Override
+            public void store(ResponseCache.Key key, NameDays nameDays) {
+                storeInIndex(nameDays);
+            }
+
+            @Override
+            public void checkpoint() throws IOException {
+                writeNameDayIndex(context);
+            }
+        }, Countries.apiKey(Countries.DEFAULT_ID), SYNC_BATCH_SIZE, SYNC_PARALLELISM);
+    }
+
+    /**
+     * Syncs the name day index with the API: every day, if the index is out of date, or else the
+     * days it lacks. Loads the index first, if no activity has. Called on a background thread
+     */
+    static DatasetSync.Result syncNameDayIndex(Context context, DatasetSync sync,
+                                               DatasetSync.Progress progress) throws IOException {
+        loadNameDayIndex(context);
+
+        NameDayIndex index = nameDayIndex;
+        boolean full = index.isStale(System.currentTimeMillis(), NAME_DAY_INDEX_MAX_AGE);
+        DatasetSync.Result result = sync.run(full, progress);
+
+        if (full && result.isComplete()) {
+            index.markBuilt(System.currentTimeMillis());
+            nameDayIndexChanged = true;
+            writeNameDayIndex(context);
+        }
+        return result;
+    }
+
+    /**
+     * Shows the names from the local index, or a data pack, for the day that is offset from today
+     *
+     * @return True if a local source could answer, without going to the network
+     */
+    private boolean showLocally(int apiFunction, int dayOffset) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.add(Calendar.DAY_OF_MONTH, dayOffset);
+
+        String nameDays = nameDaySources.lookupLocal(calendar.get(Calendar.DAY_OF_MONTH),
+                calendar.get(Calendar.MONTH) + 1, countryCode());
+
+        if (nameDays != null) {
+            cancelPendingRequest();
+            this.apiFunction = apiFunction;
+            showNameDays(nameDays,
+                    calendar.get(Calendar.DAY_OF_MONTH), calendar.get(Calendar.MONTH) + 1);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @see #getCountryNameForAPI(String)
+     * @return getCountryNameForAPI(null)
+     */
+    private String getCountryNameForAPI() {
+        return getCountryNameForAPI(null);
+    }
+
+    /**
+     *
+     * @param countryCode An ISO 3166 alpha-2 country code or a UN M.49 numeric-3 area code or null
+     *
+     * @return A string that denotes country to the namedays API: name_{country code, in lowercase},
+     * for some accepted set of country codes = {CZ, SK, PL, FR, HU, HR, SE, AT, IT, ES, US}, or for
+     * the countries of the data packs
+     */
+    private String getCountryNameForAPI(String countryCode) {
+        if (countryCode == null) {
+            countryCode = Locale.getDefault().getCountry();
+        }
+        if (Countries.idOfCountryCode(countryCode) == -1
+                && nameDaySources.covers(countryCode.toUpperCase(Locale.US))) {
+            return Countries.keyOfCountryCode(countryCode);
+        }
+        return Countries.apiKeyForCountryCode(countryCode);
+    }
+
+    /**
+     * @return The ISO 3166 alpha-2 code of the country shown
+     */
+    private String countryCode() {
+        return Countries.countryCodeOfKey(country);
+    }
+
+    /**
+     * @return The countries to choose from: those of the API, in id order, then those that only
+     * data packs have
+     */
+    private static String[] countryCodes() {
+        List<String> codes = new ArrayList<>(Arrays.asList(Countries.CODES));
+        codes.addAll(packCountries());
+        return codes.toArray(new String[codes.size()]);
+    }
+
+    /**
+     * @return The names of the months in the locale, resolved on first use
+     */
+    private String[] displayMonths() {
+        return LocaleNames.of(Locale.getDefault()).months;
+    }
+
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putString(COUNTRY_KEY, country);
+        nameDayList.save(outState);
+        outState.putInt(DAY_KEY, day);
+        outState.putInt(MONTH_KEY, month);
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.main, menu);
+        return true;
     }
 
     @Override
@@ -470,30 +1444,32 @@ public class MainActivity extends AppCompatActivity implements DownloadCallback,
         int id = item.getItemId();
         switch (id) {
             case R.id.today:
-                try {
-                    apiFunction = id;
-                    makeRequest(new URL(API_HOST_NAME + "today"));
-                } catch (MalformedURLException e) {
-                    logError("Request", e.getMessage());
+                if (showLocally(id, 0)) {
+                    break;
                 }
+                apiFunction = id;
+                requestRemotely(new ResponseCache.Key("today", 0, 0, country));
                 break;
 
             case R.id.yesterday:
-                try {
-                    apiFunction = id;
-                    makeRequest(new URL(API_HOST_NAME + "yesterday"));
-                } catch (MalformedURLException e) {
-                    logError("Request", e.getMessage());
+                if (showLocally(id, -1)) {
+                    break;
                 }
+                apiFunction = id;
+                requestRemotely(new ResponseCache.Key("yesterday", 0, 0, country));
                 break;
 
             case R.id.tomorrow:
-                try {
-                    apiFunction = id;
-                    makeRequest(new URL(API_HOST_NAME + "tomorrow"));
-                } catch (MalformedURLException e) {
-                    logError("Request", e.getMessage());
+                if (showLocally(id, 1)) {
+                    break;
                 }
+                apiFunction = id;
+                requestRemotely(new ResponseCache.Key("tomorrow", 0, 0, country));
+                break;
+
+            case R.id.month:
+                apiFunction = id;
+                showMonth(month);
                 break;
 
             case R.id.dayAndMonth:
@@ -501,9 +1477,24 @@ public class MainActivity extends AppCompatActivity implements DownloadCallback,
                 DayAndMonthDialogFragment.newInstance(day, month).show(getFragmentManager(), DAY_MONTH_DIALOG_TAG);
                 break;
 
+            case R.id.findName:
+                apiFunction = id;
+                NameSearchDialogFragment.newInstance().show(getFragmentManager(), NAME_SEARCH_DIALOG_TAG);
+                break;
+
+            case R.id.allCountries:
+                apiFunction = id;
+                showAllCountries();
+                break;
+
             case R.id.country:
                 apiFunction = id;
-                CountryDialogFragment.newInstance(country).show(getFragmentManager(), COUNTRY_DIALOG_TAG);
+                CountryDialogFragment.newInstance(country, countryCodes()).show(getFragmentManager(), COUNTRY_DIALOG_TAG);
+                break;
+
+            case R.id.importDataPack:
+                startActivityForResult(new Intent(Intent.ACTION_GET_CONTENT).setType("text/*")
+                        .addCategory(Intent.CATEGORY_OPENABLE), IMPORT_DATA_PACK_REQUEST);
                 break;
 
             default:
@@ -512,55 +1503,296 @@ public class MainActivity extends AppCompatActivity implements DownloadCallback,
         return true;
     }
 
-    void makeRequest(@NonNull URL url) {
-        HttpURLConnection connection = null;
-        try {
-            connection = ((HttpURLConnection) url.openConnection());
-            // For this use case, set HTTP method to GET.
-            connection.setRequestMethod("GET");
-            // Already true by default but setting just in case; needs to be true since this request
-            // is carrying an input (response) body.
-            connection.setDoInput(true);
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
 
-            connectionThread = new MyConnectionThread(this, connection);
-            // Make the request on a background thread
-            connectionThread.start();
+        if (requestCode == IMPORT_DATA_PACK_REQUEST && resultCode == RESULT_OK && data != null
+                && data.getData() != null) {
+            importDataPack(data.getData());
+        }
+    }
 
-        } catch (IOException e) {
-            logError("Connection", "Unable to open connection: "+e.getMessage());
+    /**
+     * Copies the data pack to app storage, and loads it along with the others, on a background
+     * thread; then says how many names it added, or why it could not be imported
+     */
+    private void importDataPack(final Uri uri) {
+        final Context context = getApplicationContext();
+        final TextView view = responseView;
+
+        new Thread("Data Pack Import") {
+            @Override
+            public void run() {
+                String message;
+                try {
+                    DataPack pack = copyDataPack(context, uri);
+                    loadDataPacks(context);
+                    message = Messages.imported(pack.name(), pack.countries().size(), pack.size());
+                    Log.i("Packs", message);
+                } catch (IOException e) {
+                    message = "Unable to import data pack: " + e.getMessage();
+                    Log.e("Packs", message);
+                }
+
+                final String shown = message;
+                view.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        view.setText(shown);
+                    }
+                });
+            }
+        }.start();
+    }
 
-            if (connection != null)
-                connection.disconnect();
+    /**
+     * Makes the request with NameDays API, if it has the country; otherwise no source has the
+     * names, since the local ones were looked up first
+     */
+    private void requestRemotely(@NonNull ResponseCache.Key key) {
+        String countryCode = countryCode();
+
+        if (nameDaySources.coversRemotely(countryCode)) {
+            makeRequest(key);
+        } else {
+            cancelPendingRequest();
+            logError("Sources", Messages.noNameDays(
+                    countryCode != null ? displayCountry(countryCode) : country));
         }
     }
 
-    @Override
-    public void handleResponse(@NonNull String jsonString) {
-        Log.d("Response", "response: "+jsonString);
+    /**
+     * Shows the cached response to the request if there is one, or else makes the request with
+     * NameDays API on a background thread, in place of any request still pending
+     */
+    void makeRequest(@NonNull ResponseCache.Key key) {
+        if (key.equals(requests.pendingKey)) {
+            return;
+        }
+        cancelPendingRequest();
 
+        // A cached response is handled before lookup returns, so the key must be pending by then
+        requests.pendingKey = key;
+        requests.pendingSince = System.nanoTime();
         try {
-            JSONObject jObj = new JSONObject(jsonString);
-            JSONObject jDataObj = jObj.optJSONObject("data");
+            NameDayService.Lookup lookup = engine().nameDayService.lookup(key,
+                    requests.responseListener);
 
-            if (jDataObj != null) {
-                String nameDays = jDataObj.getString(country);
+            if (key.equals(requests.pendingKey)) {
+                requests.pendingLookup = lookup;
+            }
+        } catch (RejectedExecutionException e) {
+            requests.pendingKey = null;
+            logError("Request", "Too many requests in progress, please try again");
+        }
+    }
 
-                try {
-                    int day = jDataObj.getInt("day");
-                    int month = jDataObj.getInt("month");
+    /**
+     * Withdraws from the pending request, or month, whose response is no longer wanted
+     */
+    private void cancelPendingRequest() {
+        requests.cancel();
+    }
 
-                    if (nameDays != null) {
-                        responseView.setText(printNameDaysMessage(nameDays, day, month));
+    /**
+     * Shows the names for every day of the month, as they arrive
+     */
+    private void showMonth(int month) {
+        cancelPendingRequest();
+        responseView.setText(Messages.title(displayMonths()[month - 1]));
+        nameDayList.clear();
+
+        if (!nameDaySources.coversRemotely(countryCode())) {
+            // Only data packs have the country, so the whole month is at hand
+            for (int day = 1; NameDayIndex.dayOfYear(day, month) != -1; day++) {
+                String names = nameDaySources.lookupLocal(day, month, countryCode());
+                if (names != null) {
+                    nameDayList.put(day, Integer.toString(day), names);
+                }
+            }
+            return;
+        }
+
+        RangeQuery.Handle[] handle = new RangeQuery.Handle[1];
+        handle[0] = engine().rangeQuery.month(month, new String[]{country},
+                monthListener(requests.responseListener, month, handle));
+        requests.monthQuery = handle[0];
+    }
+
+    /**
+     * @return A listener that hands the names of the month to whichever activity is attached.
+     * Static, so that it does not hold on to the activity that made the query
+     */
+    private static RangeQuery.Listener monthListener(final ResponseListener responseListener,
+                                                     final int month,
+                                                     final RangeQuery.Handle[] handle) {
+        return new RangeQuery.Listener() {
+            @Override
+            public void onResult(final int day, int resultMonth, final String[] result) {
+                responseListener.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        responseListener.downloadCallback.handleMonth(handle[0], month, day,
+                                result[0]);
                     }
-                } catch (JSONException e) {
-                    logError("JSON", "Unable to read days or months fields");
+                });
+            }
+
+            @Override
+            public void onFailure(final int day, int resultMonth, IOException e) {
+                Log.e("Connection", "Unable to read name days for " + day + "/" + resultMonth + ": "
+                        + e.getMessage());
+                responseListener.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        responseListener.downloadCallback.handleMonth(handle[0], month, day, "?");
+                    }
+                });
+            }
+
+            @Override
+            public void onComplete(int succeeded, int failed) {
+                Log.d("Range", "Month " + month + ": " + succeeded + " days, " + failed + " failed");
+            }
+        };
+    }
+
+    @Override
+    public void handleMonth(RangeQuery.Handle query, int month, int day, String names) {
+        // Results of a superseded month must not replace newer ones
+        if (query == requests.monthQuery && names != null) {
+            nameDayList.put(day, Integer.toString(day), names);
+        }
+    }
+
+    @Override
+    public void handleResponse(@NonNull ResponseCache.Key key, @NonNull NameDays nameDays) {
+        Log.d("Response", key + ": " + nameDays.names);
+
+        // A response to a superseded request must not replace a newer one
+        if (key.equals(requests.pendingKey)) {
+            recordRemoteLookup(nameDays.names, false);
+            requests.pendingKey = null;
+            requests.pendingLookup = null;
+            showNameDays(nameDays.names, nameDays.day, nameDays.month);
+        }
+    }
+
+    /**
+     * Records the pending request as a lookup in the API, in the stats of the sources
+     */
+    private void recordRemoteLookup(String names, boolean failed) {
+        CompositeSource.Stats stats = nameDaySources.statsOf(remoteSource);
+
+        if (stats != null) {
+            stats.record(System.nanoTime() - requests.pendingSince, names, failed);
+        }
+    }
+
+    /**
+     * Keeps the names of every country in the response in the caches and the index, so that a
+     * later lookup of the same day in another country is answered locally. Called on the thread
+     * that fetched them
+     */
+    private static void storeNameDays(ResponseCache.Key key, NameDays nameDays) {
+        if (nameDays.allCountries == null) {
+            storeNameDaysOfCountry(key, nameDays);
+            return;
+        }
+
+        for (int id = 0; id < Countries.COUNT; id++) {
+            String names = nameDays.allCountries[id];
+
+            if (names != null) {
+                storeNameDaysOfCountry(
+                        new ResponseCache.Key(key.endpoint, key.day, key.month, Countries.apiKey(id)),
+                        new NameDays(names, nameDays.day, nameDays.month, nameDays.allCountries,
+                                nameDays.validators));
+            }
+        }
+    }
+
+    /**
+     * Stores the names of every country in the response in the index alone, bypassing the caches
+     * of single responses, which a sync of the whole year would only churn
+     */
+    private static void storeInIndex(NameDays nameDays) {
+        NameDayIndex index = nameDayIndex;
+        int dayOfYear = NameDayIndex.dayOfYear(nameDays.day, nameDays.month);
+
+        for (int id = 0; id < Countries.COUNT; id++) {
+            String names = nameDays.allCountries != null ? nameDays.allCountries[id] : null;
+
+            if (names != null
+                    && index.put(nameDays.day, nameDays.month, Countries.apiKey(id), names)) {
+                nameDayIndexChanged = true;
+                nameSearchIndex.add(dayOfYear, id, names);
+            }
+        }
+    }
+
+    private static void storeNameDaysOfCountry(ResponseCache.Key key, NameDays nameDays) {
+        responseCache.put(key, nameDays);
+        putInDiskCache(nameDays, key.country);
+
+        NameDayIndex index = nameDayIndex;
+        if (index != null && index.put(nameDays.day, nameDays.month, key.country, nameDays.names)) {
+            nameDayIndexChanged = true;
+        }
+
+        nameSearchIndex.add(NameDayIndex.dayOfYear(nameDays.day, nameDays.month),
+                Countries.idOfApiKey(key.country), nameDays.names);
+    }
+
+    /**
+     * Shows the names, and prefetches the days around them
+     */
+    private void showNameDays(String nameDays, int day, int month) {
+        this.day = day;
+        this.month = month;
+        shownFunction = apiFunction;
+        responseView.setText(printNameDaysMessage(nameDays, day, month));
+        nameDayList.clear();
+        reportFirstContentWhenDrawn();
+
+        if (apiFunction == R.id.allCountries) {
+            String[] countries = LocaleNames.of(Locale.getDefault()).countries;
+            String[] names = nameDayIndex.getAll(day, month);
+
+            for (int id = 0; id < names.length; id++) {
+                if (names[id] != null) {
+                    nameDayList.put(id, countries[id], names[id]);
                 }
+            }
 
-            } else {
-                logError("JSON", "Value corresponding to key: 'data' is not a JSON object");
+            // Then the countries that only data packs have
+            List<String> packCountries = packCountries();
+            for (int i = 0; i < packCountries.size(); i++) {
+                String code = packCountries.get(i);
+                String packNames = nameDaySources.lookupLocal(day, month, code);
+
+                if (packNames != null) {
+                    nameDayList.put(Countries.COUNT + i, displayCountry(code), packNames);
+                }
             }
-        } catch (JSONException e) {
-            logError("JSON", "Unable to make json object");
+        }
+        Engine built = engine;
+        // Before the engine is built, as for the first frame, the deferred startup prefetches
+        if (built != null && nameDaySources.coversRemotely(countryCode())) {
+            built.prefetcher.schedule(day, month, country);
+        }
+    }
+
+    @Override
+    public void handleFailure(@NonNull ResponseCache.Key key, String tag, String message) {
+        if (key.equals(requests.pendingKey)) {
+            recordRemoteLookup(null, true);
+            requests.pendingKey = null;
+            requests.pendingLookup = null;
+            logError(tag, message);
+        } else {
+            Log.e(tag, message);
         }
     }
 
@@ -568,6 +1800,7 @@ public class MainActivity extends AppCompatActivity implements DownloadCallback,
     public void logError(String tag, String message) {
         Log.e(tag, message);
         responseView.setText(message);
+        nameDayList.clear();
     }
 
     @Override
@@ -577,49 +1810,98 @@ public class MainActivity extends AppCompatActivity implements DownloadCallback,
 
     @Override
     public void setCountry(String countryCode) {
+        cancelPendingRequest();
         country = getCountryNameForAPI(countryCode);
+
+        // Every response holds the names of every country, so those of the date shown are
+        // likely at hand for the new country too
+        String nameDays =
+                shownFunction != 0 ? nameDaySources.lookupLocal(day, month, countryCode()) : null;
+        if (nameDays != null) {
+            apiFunction = shownFunction;
+            showNameDays(nameDays, day, month);
+        }
+    }
+
+    /**
+     * Shows the names of every country side by side, for the date shown last. Every response
+     * holds them all, so they cost at most one request, made for the current country
+     */
+    private void showAllCountries() {
+        if (nameDaySources.lookupLocal(day, month, countryCode()) != null) {
+            cancelPendingRequest();
+            showNameDays(null, day, month);
+            return;
+        }
+        requestRemotely(new ResponseCache.Key("namedays", day, month, country));
     }
 
 
-    @SuppressLint("DefaultLocale")
     @Override
     public void makeRequest(int day, int month) {
         this.day = day;
         this.month = month;
 
-        try {
-            makeRequest(new URL(String.format(API_HOST_NAME + "namedays?day=%d&month=%d", day, month)));
-        } catch (MalformedURLException e) {
-            logError("Request", e.getMessage());
+        String nameDays = nameDaySources.lookupLocal(day, month, countryCode());
+
+        if (nameDays != null) {
+            cancelPendingRequest();
+            showNameDays(nameDays, day, month);
+            return;
         }
+
+        requestRemotely(new ResponseCache.Key("namedays", day, month, country));
     }
 
-    @SuppressLint("DefaultLocale")
     private String printNameDaysMessage(String nameDays, Integer day, Integer month) {
         switch (apiFunction) {
             case R.id.today:
-                return String.format("Name day(s) for today : \n\n%s", nameDays);
+                return Messages.nameDaysFor("today", nameDays);
             case R.id.yesterday:
-                return String.format("Name day(s) for yesterday : \n\n%s", nameDays);
+                return Messages.nameDaysFor("yesterday", nameDays);
             case R.id.tomorrow:
-                return String.format("Name day(s) for tomorrow : \n\n%s", nameDays);
+                return Messages.nameDaysFor("tomorrow", nameDays);
             case R.id.dayAndMonth:
-                return String.format("Name day(s) for %s %d : \n\n%s",
-                        displayMonths[month - 1],
-                        day,
-                        nameDays);
+                return Messages.nameDaysFor(displayMonths()[month - 1], day, nameDays);
+            case R.id.allCountries:
+                // The names are in the list beneath
+                return Messages.title(displayMonths()[month - 1], day);
             default:
                 return null;
         }
     }
 
+    @Override
+    public void findName(String prefix) {
+        cancelPendingRequest();
+
+        List<NameSearchIndex.Match> matches =
+                nameSearchIndex.search(prefix, Countries.idOfApiKey(country), NAME_SEARCH_LIMIT);
+        responseView.setText(matches.isEmpty() ? Messages.noNameDays(prefix)
+                : Messages.title(prefix));
+        nameDayList.clear();
+
+        for (int i = 0; i < matches.size(); i++) {
+            NameSearchIndex.Match match = matches.get(i);
+            nameDayList.put(i, match.name, Messages.dates(match.daysOfYear, displayMonths()));
+        }
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        saveNameDayIndex(getApplicationContext());
+        saveLastAnswer();
+    }
+
     @Override
     protected void onDestroy() {
         super.onDestroy();
 
-        if (connectionThread != null) {
-            // Prevent the thread from calling back to the main thread
-            connectionThread.downloadCallback = null;
+        requests.responseListener.detach();
+        // Requests in flight are kept for the activity that replaces this one
+        if (!isChangingConfigurations()) {
+            cancelPendingRequest();
         }
     }
 }
@@ -0,0 +1,277 @@
+package com.example.john.namedays;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.v4.content.ContextCompat;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.view.View;
+import android.view.ViewGroup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Shows results of many rows, such as the days of a month or the countries of a day, in a
+ * recycled list, and adds each row as it arrives.
+ *
+ * The text of a row is formatted and laid out on a background thread, once, so that binding a row
+ * while scrolling only hands its layout to a recycled view, and the main thread never formats or
+ * measures text. Rows are kept in order of their keys, whatever order they arrive in.
+ *
+ * Called on the main thread only.
+ */
+final class NameDayListAdapter extends RecyclerView.Adapter<NameDayListAdapter.RowHolder> {
+
+    private static final class Row {
+        final int key;
+        final String label;
+        final String names;
+        /**
+         * Null until the row is laid out
+         */
+        final Layout layout;
+
+        Row(int key, String label, String names, Layout layout) {
+            this.key = key;
+            this.label = label;
+            this.names = names;
+            this.layout = layout;
+        }
+    }
+
+    static final class RowHolder extends RecyclerView.ViewHolder {
+        final NameDayRowView rowView;
+
+        RowHolder(NameDayRowView rowView) {
+            super(rowView);
+            this.rowView = rowView;
+        }
+    }
+
+    private static final String KEYS_KEY = "Row Keys";
+    private static final String LABELS_KEY = "Row Labels";
+    private static final String NAMES_KEY = "Row Names";
+
+    /**
+     * Lays out the rows of every list, one at a time, in the order they are added
+     */
+    private static final ExecutorService layoutExecutor = Executors.newSingleThreadExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(@NonNull Runnable runnable) {
+                    return new Thread(runnable, "Row Layout");
+                }
+            });
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    /**
+     * Used on the layout thread only
+     */
+    private final TextPaint paint;
+    private final int padding;
+
+    /**
+     * Rows laid out, in order of their keys
+     */
+    private final List<Row> rows = new ArrayList<>();
+    /**
+     * Rows added before the width of the list is known
+     */
+    private final List<Row> waiting = new ArrayList<>();
+    /**
+     * The width of the text of a row, or 0 until the list is laid out
+     */
+    private int width;
+    /**
+     * Counts the clears, so that the layouts of rows added before one are dropped
+     */
+    private int generation;
+
+    NameDayListAdapter(Context context) {
+        padding = context.getResources().getDimensionPixelSize(R.dimen.rowPadding);
+        paint = new TextPaint(TextPaint.ANTI_ALIAS_FLAG);
+        paint.setTextSize(context.getResources().getDimension(R.dimen.rowTextSize));
+        paint.setColor(ContextCompat.getColor(context, R.color.rowText));
+        setHasStableIds(true);
+    }
+
+    /**
+     * Shows the adapter in the list, and lays out its rows to the width of the list
+     */
+    void attachTo(RecyclerView list) {
+        list.setLayoutManager(new LinearLayoutManager(list.getContext()));
+        list.setHasFixedSize(true);
+        list.setAdapter(this);
+        list.addOnLayoutChangeListener(new View.OnLayoutChangeListener() {
+            @Override
+            public void onLayoutChange(View view, int left, int top, int right, int bottom,
+                                       int oldLeft, int oldTop, int oldRight, int oldBottom) {
+                setWidth(right - left - 2 * padding);
+            }
+        });
+    }
+
+    /**
+     * Adds a row, or replaces the one with the same key, once its text is laid out
+     *
+     * @param key The place of the row in the list, such as the day of the month
+     */
+    void put(int key, String label, String names) {
+        Row row = new Row(key, label, names, null);
+
+        if (width == 0) {
+            waiting.add(row);
+        } else {
+            layOut(row);
+        }
+    }
+
+    /**
+     * Removes every row, and drops those still being laid out
+     */
+    void clear() {
+        generation++;
+        waiting.clear();
+
+        int count = rows.size();
+        rows.clear();
+        notifyItemRangeRemoved(0, count);
+    }
+
+    private void setWidth(int width) {
+        if (width <= 0 || width == this.width) {
+            return;
+        }
+        this.width = width;
+
+        // The rows shown stay until they are replaced by ones laid out to the new width
+        for (Row row : rows) {
+            layOut(row);
+        }
+        for (Row row : waiting) {
+            layOut(row);
+        }
+        waiting.clear();
+    }
+
+    private void layOut(final Row row) {
+        final int generation = this.generation;
+        final int width = this.width;
+
+        layoutExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Layout layout = new StaticLayout(Messages.row(row.label, row.names), paint,
+                        width, Layout.Alignment.ALIGN_NORMAL, 1f, 0f, false);
+
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != NameDayListAdapter.this.generation) {
+                            return;
+                        }
+                        if (width != NameDayListAdapter.this.width) {
+                            // Laid out again, to the new width
+                            layOut(row);
+                            return;
+                        }
+                        insert(new Row(row.key, row.label, row.names, layout));
+                    }
+                });
+            }
+        });
+    }
+
+    private void insert(Row row) {
+        int low = 0, high = rows.size() - 1;
+
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int key = rows.get(middle).key;
+
+            if (key < row.key) {
+                low = middle + 1;
+            } else if (key > row.key) {
+                high = middle - 1;
+            } else {
+                rows.set(middle, row);
+                notifyItemChanged(middle);
+                return;
+            }
+        }
+        rows.add(low, row);
+        notifyItemInserted(low);
+    }
+
+    /**
+     * Saves the rows, to be shown again by {@link #restore(Bundle)}
+     */
+    void save(Bundle outState) {
+        int count = rows.size() + waiting.size();
+        int[] keys = new int[count];
+        String[] labels = new String[count];
+        String[] names = new String[count];
+
+        int i = 0;
+        for (Row row : rows) {
+            keys[i] = row.key;
+            labels[i] = row.label;
+            names[i++] = row.names;
+        }
+        for (Row row : waiting) {
+            keys[i] = row.key;
+            labels[i] = row.label;
+            names[i++] = row.names;
+        }
+        outState.putIntArray(KEYS_KEY, keys);
+        outState.putStringArray(LABELS_KEY, labels);
+        outState.putStringArray(NAMES_KEY, names);
+    }
+
+    void restore(Bundle savedInstanceState) {
+        int[] keys = savedInstanceState.getIntArray(KEYS_KEY);
+        String[] labels = savedInstanceState.getStringArray(LABELS_KEY);
+        String[] names = savedInstanceState.getStringArray(NAMES_KEY);
+
+        if (keys == null || labels == null || names == null) {
+            return;
+        }
+        for (int i = 0; i < keys.length; i++) {
+            put(keys[i], labels[i], names[i]);
+        }
+    }
+
+    @Override
+    public RowHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        NameDayRowView rowView = new NameDayRowView(parent.getContext());
+        rowView.setPadding(padding, padding / 2, padding, padding / 2);
+        rowView.setLayoutParams(new RecyclerView.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT));
+        return new RowHolder(rowView);
+    }
+
+    @Override
+    public void onBindViewHolder(RowHolder holder, int position) {
+        holder.rowView.setLayout(rows.get(position).layout);
+    }
+
+    @Override
+    public int getItemCount() {
+        return rows.size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return rows.get(position).key;
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.john.namedays;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.text.Layout;
+import android.view.View;
+
+/**
+ * A row of the name day list, which draws a text layout measured beforehand, off the main thread,
+ * rather than measuring and laying out its text itself, as a TextView would on every bind
+ */
+class NameDayRowView extends View {
+
+    private Layout layout;
+
+    NameDayRowView(Context context) {
+        super(context);
+    }
+
+    /**
+     * @param layout The text of the row, laid out to the width of the list, less its padding
+     */
+    void setLayout(Layout layout) {
+        boolean resized = this.layout == null || layout.getHeight() != this.layout.getHeight();
+        this.layout = layout;
+
+        if (resized) {
+            requestLayout();
+        }
+        invalidate();
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int height = getPaddingTop() + (layout != null ? layout.getHeight() : 0)
+                + getPaddingBottom();
+        setMeasuredDimension(MeasureSpec.getSize(widthMeasureSpec),
+                resolveSize(height, heightMeasureSpec));
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (layout == null) {
+            return;
+        }
+        canvas.save();
+        canvas.translate(getPaddingLeft(), getPaddingTop());
+        layout.draw(canvas);
+        canvas.restore();
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.john.namedays;
+
+import android.util.JsonReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+/**
+ * Parses a response of the NameDays API as it streams in, with {@link NameDaysReader} on
+ * android.util.JsonReader
+ */
+final class NameDaysParser implements ApiClient.BodyReader<NameDays> {
+
+    private final String country;
+
+    /**
+     * @param country The NameDays API key of the country that must be in the response, such as
+     * 'name_cz'
+     */
+    NameDaysParser(String country) {
+        this.country = country;
+    }
+
+    @Override
+    public NameDays read(InputStream body) throws IOException {
+        final JsonReader reader = new JsonReader(new InputStreamReader(body, "UTF-8"));
+
+        return NameDaysReader.read(new NameDaysReader.Json() {
+            @Override
+            public void beginObject() throws IOException {
+                reader.beginObject();
+            }
+
+            @Override
+            public boolean hasNext() throws IOException {
+                return reader.hasNext();
+            }
+
+            @Override
+            public String nextName() throws IOException {
+                return reader.nextName();
+            }
+
+            @Override
+            public NameDaysReader.Token peek() throws IOException {
+                switch (reader.peek()) {
+                    case BEGIN_OBJECT:
+                        return NameDaysReader.Token.BEGIN_OBJECT;
+                    case STRING:
+                        return NameDaysReader.Token.STRING;
+                    case NULL:
+                        return NameDaysReader.Token.NULL;
+                    default:
+                        return NameDaysReader.Token.OTHER;
+                }
+            }
+
+            @Override
+            public String nextString() throws IOException {
+                return reader.nextString();
+            }
+
+            @Override
+            public int nextInt() throws IOException {
+                return reader.nextInt();
+            }
+
+            @Override
+            public void skipValue() throws IOException {
+                reader.skipValue();
+            }
+        }, country);
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.john.namedays;
+
+import android.annotation.TargetApi;
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.Build;
+import android.os.Process;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the name day index in sync with the NameDays API, once a day, while the device is idle,
+ * charging and on an unmetered network, so that lookups are answered without the network, and
+ * the sync costs the user neither data nor battery
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class SyncJobService extends JobService {
+
+    private static final int JOB_ID = 1;
+    private static final long SYNC_PERIOD = TimeUnit.DAYS.toMillis(1);
+
+    /**
+     * The sync in progress, or null
+     */
+    private volatile DatasetSync sync;
+
+    /**
+     * Schedules the sync, unless it is already scheduled. Does nothing before Lollipop, which has
+     * no job scheduler
+     */
+    static void schedule(Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return;
+        }
+        JobScheduler scheduler =
+                (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+
+        for (JobInfo job : scheduler.getAllPendingJobs()) {
+            if (job.getId() == JOB_ID) {
+                return;
+            }
+        }
+
+        JobInfo job = new JobInfo.Builder(JOB_ID, new ComponentName(context, SyncJobService.class))
+                .setRequiresDeviceIdle(true)
+                .setRequiresCharging(true)
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_UNMETERED)
+                .setPeriodic(SYNC_PERIOD)
+                .setPersisted(true)
+                .build();
+
+        if (scheduler.schedule(job) != JobScheduler.RESULT_SUCCESS) {
+            Log.e("Sync", "Unable to schedule the name day sync");
+        }
+    }
+
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        final Context context = getApplicationContext();
+        final DatasetSync sync = MainActivity.newDatasetSync(context);
+        this.sync = sync;
+
+        new Thread("Name Day Sync") {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                boolean reschedule = false;
+
+                try {
+                    DatasetSync.Result result = MainActivity.syncNameDayIndex(context, sync,
+                            new DatasetSync.Progress() {
+                                @Override
+                                public void onProgress(int done, int total) {
+                                    Log.d("Sync", done + "/" + total + " days");
+                                }
+                            });
+                    Log.i("Sync", result.toString());
+                    // Try again later, with backoff, if the API failed some of the days
+                    reschedule = result.failed > 0;
+                } catch (IOException e) {
+                    Log.e("Sync", "Unable to write the name day index: " + e.getMessage());
+                    reschedule = true;
+                } finally {
+                    SyncJobService.this.sync = null;
+                }
+                jobFinished(params, reschedule);
+            }
+        }.start();
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        DatasetSync sync = this.sync;
+
+        if (sync != null) {
+            sync.cancel();
+        }
+        // The days left are fetched by the next run
+        return true;
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.john.namedays;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Resolving country codes, both alpha-2 and numeric, to NameDays API country keys
+ */
+@State(Scope.Benchmark)
+public class CountryLookupBenchmark {
+
+    private final String[] codes = {
+            "US", "840", "CZ", "203", "SK", "703", "PL", "616", "FR", "250", "HU", "348",
+            "HR", "191", "SE", "752", "AT", "040", "IT", "380", "ES", "724", "DE", "276"
+    };
+
+    @Benchmark
+    public void apiKeyForCountryCode(Blackhole blackhole) {
+        for (String code : codes) {
+            blackhole.consume(Countries.apiKeyForCountryCode(code));
+        }
+    }
+
+    @Benchmark
+    public void idOfApiKey(Blackhole blackhole) {
+        for (int i = 0; i < Countries.COUNT; i++) {
+            blackhole.consume(Countries.idOfApiKey(Countries.apiKey(i)));
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.john.namedays;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Locale;
+
+/**
+ * Formatting the messages shown for name days, and finding the names of the months
+ */
+@State(Scope.Benchmark)
+public class MessagesBenchmark {
+
+    private static final String NAMES = "Jonathan, Johanna, John";
+
+    private String[] displayMonths;
+
+    @Setup
+    public void setUp() {
+        Locale.setDefault(Locale.US);
+        displayMonths = Messages.findDisplayMonths(Locale.US);
+    }
+
+    @Benchmark
+    public String nameDaysForRelativeDay() {
+        return Messages.nameDaysFor("today", NAMES);
+    }
+
+    @Benchmark
+    public String nameDaysForDate() {
+        return Messages.nameDaysFor(displayMonths[5], 24, NAMES);
+    }
+
+    @Benchmark
+    public String[] findDisplayMonths() {
+        return Messages.findDisplayMonths(Locale.US);
+    }
+}
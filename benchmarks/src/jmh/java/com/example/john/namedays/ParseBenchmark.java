@@ -0,0 +1,50 @@
+package com.example.john.namedays;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+/**
+ * Getting the names of one country out of a response body: building a JSONObject tree of the
+ * whole body, against streaming over it with the parser of the app, {@link NameDaysReader}.
+ *
+ * The app streams with android.util.JsonReader, which is not on the JVM; Gson's JsonReader, which
+ * it was derived from and shares its API with, stands in for it here.
+ */
+@State(Scope.Benchmark)
+public class ParseBenchmark {
+
+    @Param({"payloads/namedays-01-01.json", "payloads/namedays-06-24.json"})
+    public String payload;
+
+    @Param({"name_cz"})
+    public String country;
+
+    private byte[] body;
+
+    @Setup
+    public void setUp() throws IOException {
+        body = Payloads.load(payload);
+    }
+
+    @Benchmark
+    public String jsonObject() throws IOException, JSONException {
+        String json = ApiClient.STRING_READER.read(new ByteArrayInputStream(body));
+        JSONObject data = new JSONObject(json).optJSONObject("data");
+        return data.getString(country) + data.getInt("day") + data.getInt("month");
+    }
+
+    @Benchmark
+    public String streaming() throws IOException {
+        NameDays nameDays =
+                new GsonNameDaysParser(country).read(new ByteArrayInputStream(body));
+        return nameDays.names + nameDays.day + nameDays.month;
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.john.namedays;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Response bodies in the shape the NameDays API sends, kept as resources so that benchmarks run
+ * offline and on the same input every time
+ */
+final class Payloads {
+
+    static final String[] NAMES = {
+            "payloads/namedays-01-01.json",
+            "payloads/namedays-02-02.json",
+            "payloads/namedays-06-24.json"
+    };
+
+    private Payloads() {
+    }
+
+    static byte[] load(String name) throws IOException {
+        InputStream in = Payloads.class.getClassLoader().getResourceAsStream(name);
+        if (in == null) {
+            throw new IOException("No payload: " + name);
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                bytes.write(buffer, 0, n);
+            }
+            return bytes.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
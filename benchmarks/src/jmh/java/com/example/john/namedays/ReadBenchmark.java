@@ -0,0 +1,37 @@
+package com.example.john.namedays;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+/**
+ * Reading a response body into a string, by the number of chars read at a time
+ */
+@State(Scope.Benchmark)
+public class ReadBenchmark {
+
+    @Param({"128", "1024", "8192"})
+    public int readSize;
+
+    @Param({"payloads/namedays-06-24.json"})
+    public String payload;
+
+    private byte[] body;
+    private ApiClient.BodyReader<String> reader;
+
+    @Setup
+    public void setUp() throws IOException {
+        body = Payloads.load(payload);
+        reader = ApiClient.stringReader(readSize);
+    }
+
+    @Benchmark
+    public String read() throws IOException {
+        return reader.read(new ByteArrayInputStream(body));
+    }
+}
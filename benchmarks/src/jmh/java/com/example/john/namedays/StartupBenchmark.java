@@ -0,0 +1,98 @@
+package com.example.john.namedays;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Time to the first answer after a start: from nothing loaded to the names of one date.
+ *
+ * Without a local dataset, the app's first answer is a response of the NameDays API, which costs
+ * a round trip and then the parse of its body (only the parse is measured here). With a full
+ * year's dataset stored as a snapshot, the answer costs loading the snapshot and one lookup:
+ * either reading it whole into memory, or mapping it and decoding only what is looked up.
+ */
+@State(Scope.Benchmark)
+public class StartupBenchmark {
+
+    private static final String PAYLOAD = "payloads/namedays-06-24.json";
+    private static final String COUNTRY = "name_cz";
+
+    private byte[] body;
+    private File snapshot;
+
+    @Setup
+    public void setUp() throws IOException {
+        body = Payloads.load(PAYLOAD);
+
+        // A full year, from the recorded days, with names distinct for each day as they are
+        String[][] rows = new String[Payloads.NAMES.length][];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = allCountries(Payloads.load(Payloads.NAMES[i]));
+        }
+        NameDayIndex index = new NameDayIndex();
+        for (int dayOfYear = 0; dayOfYear < NameDayIndex.DAYS_IN_YEAR; dayOfYear++) {
+            String[] row = rows[dayOfYear % rows.length];
+            for (int id = 0; id < Countries.COUNT; id++) {
+                if (row[id] != null) {
+                    index.put(NameDayIndex.dayOf(dayOfYear), NameDayIndex.monthOf(dayOfYear),
+                            Countries.apiKey(id), row[id] + " " + dayOfYear);
+                }
+            }
+        }
+
+        snapshot = File.createTempFile("namedays", ".idx");
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(snapshot));
+        try {
+            index.writeTo(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        //noinspection ResultOfMethodCallIgnored
+        snapshot.delete();
+    }
+
+    @Benchmark
+    public String parseResponse() throws IOException {
+        return allCountries(body)[Countries.idOfApiKey(COUNTRY)];
+    }
+
+    @Benchmark
+    public String readSnapshot() throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(snapshot));
+        try {
+            return NameDayIndex.readFrom(in).get(24, 6, COUNTRY);
+        } finally {
+            in.close();
+        }
+    }
+
+    @Benchmark
+    public String mapSnapshot() throws IOException {
+        return NameDayIndex.map(snapshot).get(24, 6, COUNTRY);
+    }
+
+    /**
+     * @return The names of every country in the body, by country id, as the parser of the app
+     * reads them
+     */
+    private static String[] allCountries(byte[] body) throws IOException {
+        return new GsonNameDaysParser(null).read(new ByteArrayInputStream(body)).allCountries;
+    }
+}
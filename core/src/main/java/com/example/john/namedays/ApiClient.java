@@ -0,0 +1,410 @@
+package com.example.john.namedays;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * A client of the NameDays API, or of any server that stands in for it at another base URL.
+ *
+ * Connections are kept alive and returned to the pool of {@link HttpURLConnection} after each
+ * request, by reading the body to its end and closing it rather than disconnecting. Responses are
+ * asked for gzipped, and decompressed as they stream in. Every request has connect and read
+ * timeouts, so that a stalled socket fails instead of hanging. A request made on a
+ * {@link CancellableThread} is aborted, and its connection closed, when the thread is interrupted.
+ */
+final class ApiClient {
+
+    /**
+     * Reads the body of a response, as it streams in
+     */
+    interface BodyReader<T> {
+        T read(InputStream body) throws IOException;
+    }
+
+    /**
+     * How long each phase of a request took
+     */
+    static final class Timing {
+        /**
+         * Opening the connection: DNS, TCP and the TLS handshake, or close to nothing when a
+         * pooled connection is reused
+         */
+        long connectNanos;
+        /**
+         * From sending the request to receiving the status line and headers
+         */
+        long firstByteNanos;
+        /**
+         * Waiting for the body to arrive, and decompressing it
+         */
+        long bodyNanos;
+        /**
+         * Consuming the body in the reader, apart from the time spent waiting for it
+         */
+        long parseNanos;
+        /**
+         * Bytes of the body, as sent over the wire
+         */
+        long bodyBytes;
+        boolean gzipped;
+        /**
+         * The response was 304 Not Modified, and had no body
+         */
+        boolean notModified;
+
+        long totalNanos() {
+            return connectNanos + firstByteNanos + bodyNanos + parseNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "connect=" + connectNanos / 1000 + "us, firstByte=" + firstByteNanos / 1000
+                    + "us, body=" + bodyNanos / 1000 + "us, parse=" + parseNanos / 1000
+                    + "us, bytes=" + bodyBytes
+                    + (gzipped ? " (gzip)" : "") + (notModified ? " (not modified)" : "");
+        }
+    }
+
+    /**
+     * The server answered with a status other than 200
+     */
+    static final class StatusException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+        /**
+         * How long the server asked to wait before the next request, or 0 if it did not say
+         */
+        final long retryAfterMillis;
+
+        StatusException(int status, String message) {
+            this(status, message, 0);
+        }
+
+        StatusException(int status, String message, long retryAfterMillis) {
+            super("Unexpected response: " + status + " " + message);
+            this.status = status;
+            this.retryAfterMillis = retryAfterMillis;
+        }
+
+        /**
+         * @return True if the same request may succeed later: the server failed, timed out or
+         * asked to slow down
+         */
+        boolean isTransient() {
+            return status >= 500 || status == 408 || status == 429;
+        }
+    }
+
+    static final class Response<T> {
+        /**
+         * Null if the response was 304 Not Modified
+         */
+        final T body;
+        final Timing timing;
+        final Validators validators;
+
+        Response(T body, Timing timing, Validators validators) {
+            this.body = body;
+            this.timing = timing;
+            this.validators = validators;
+        }
+
+        boolean isNotModified() {
+            return timing.notModified;
+        }
+    }
+
+    /**
+     * Reads the whole body into a string
+     */
+    static final BodyReader<String> STRING_READER = stringReader(128);
+
+    /**
+     * @param readSize The number of chars to read at a time
+     *
+     * @return A reader of the whole body into a string
+     */
+    static BodyReader<String> stringReader(final int readSize) {
+        return new BodyReader<String>() {
+            @Override
+            public String read(InputStream body) throws IOException {
+                InputStreamReader reader = new InputStreamReader(body, "UTF-8");
+                char[] buffer = new char[readSize];
+                StringBuilder builder = new StringBuilder();
+
+                int charsRead = reader.read(buffer);
+                while (charsRead != -1) {
+                    builder.append(buffer, 0, charsRead);
+                    charsRead = reader.read(buffer);
+                }
+                return builder.toString();
+            }
+        };
+    }
+
+    static final int DEFAULT_CONNECT_TIMEOUT = 10000;
+    static final int DEFAULT_READ_TIMEOUT = 15000;
+
+    private final String baseUrl;
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+
+    /**
+     * @param baseUrl The URL that the paths of requests are relative to, ending in '/'
+     */
+    ApiClient(String baseUrl, int connectTimeoutMillis, int readTimeoutMillis) {
+        this.baseUrl = baseUrl;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+    }
+
+    /**
+     * Sizes the pool of idle connections that {@link HttpURLConnection} keeps alive for reuse.
+     * Takes effect for connections opened afterwards, so call it before the first request
+     */
+    static void configureConnectionPool(int maxIdleConnections, long keepAliveMillis) {
+        System.setProperty("http.keepAlive", "true");
+        System.setProperty("http.maxConnections", String.valueOf(maxIdleConnections));
+        System.setProperty("http.keepAliveDuration", String.valueOf(keepAliveMillis));
+    }
+
+    String getBaseUrl() {
+        return baseUrl;
+    }
+
+    /**
+     * Makes a GET request, and reads the body of the response with the reader
+     *
+     * @param path The path and query of the request, relative to the base URL
+     *
+     * @throws IOException If the request fails or times out
+     * @throws StatusException If the response has a status other than 200
+     */
+    <T> Response<T> get(String path, BodyReader<T> reader) throws IOException {
+        return get(path, reader, null);
+    }
+
+    /**
+     * Makes a GET request, conditional on the validators of a response to it held already, and
+     * reads the body of the response with the reader. A response of 304 Not Modified has no body
+     *
+     * @param validators The validators of the response held, or null to make the request
+     * unconditional
+     *
+     * @throws IOException If the request fails or times out
+     * @throws InterruptedIOException If the thread is interrupted
+     * @throws StatusException If the response has a status other than 200 or 304
+     */
+    <T> Response<T> get(String path, BodyReader<T> reader, Validators validators)
+            throws IOException {
+        Timing timing = new Timing();
+        final HttpURLConnection connection =
+                (HttpURLConnection) new URL(baseUrl + path).openConnection();
+
+        connection.setRequestMethod("GET");
+        connection.setDoInput(true);
+        connection.setConnectTimeout(connectTimeoutMillis);
+        connection.setReadTimeout(readTimeoutMillis);
+        // Asking explicitly means the body arrives as sent, and is decompressed below
+        connection.setRequestProperty("Accept-Encoding", "gzip");
+        if (validators != null && validators.etag != null) {
+            connection.setRequestProperty("If-None-Match", validators.etag);
+        }
+        if (validators != null && validators.lastModified != null) {
+            connection.setRequestProperty("If-Modified-Since", validators.lastModified);
+        }
+
+        boolean reusable = false;
+        CancellableThread.onInterrupt(new CancellableThread.Abort() {
+            @Override
+            public void abort() {
+                // Closes the socket, which fails the read blocked on it
+                connection.disconnect();
+            }
+        });
+        try {
+            long start = System.nanoTime();
+            connection.connect();
+            long connected = System.nanoTime();
+            int status = connection.getResponseCode();
+            long firstByte = System.nanoTime();
+
+            timing.connectNanos = connected - start;
+            timing.firstByteNanos = firstByte - connected;
+
+            Validators received = Validators.of(connection.getHeaderField("ETag"),
+                    connection.getHeaderField("Last-Modified"),
+                    connection.getHeaderField("Cache-Control"));
+
+            if (status == HttpURLConnection.HTTP_NOT_MODIFIED && validators != null) {
+                drain(connection.getErrorStream());
+                reusable = true;
+                timing.notModified = true;
+                return new Response<>(null, timing, received);
+            }
+            if (status != HttpURLConnection.HTTP_OK) {
+                drain(connection.getErrorStream());
+                reusable = true;
+                throw new StatusException(status, connection.getResponseMessage(),
+                        retryAfterMillis(connection.getHeaderField("Retry-After")));
+            }
+
+            CountingInputStream counted =
+                    new CountingInputStream(new BufferedInputStream(connection.getInputStream()));
+            InputStream body = counted;
+            timing.gzipped = "gzip".equalsIgnoreCase(connection.getContentEncoding());
+            if (timing.gzipped) {
+                body = new GZIPInputStream(counted);
+            }
+            // The reader parses as the body streams in, so the time spent in reads of the body
+            // is told apart from the rest by timing the reads themselves
+            TimingInputStream timed = new TimingInputStream(body);
+
+            try {
+                T result = reader.read(timed);
+                // Finish the body, so that the connection can go back to the pool
+                drain(timed);
+                reusable = true;
+
+                timing.bodyNanos = timed.nanos;
+                timing.parseNanos = System.nanoTime() - firstByte - timing.bodyNanos;
+                timing.bodyBytes = counted.count;
+                return new Response<>(result, timing, received);
+            } finally {
+                timed.close();
+            }
+        } catch (IOException e) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Cancelled");
+            }
+            throw e;
+        } finally {
+            CancellableThread.onInterrupt(null);
+            if (!reusable) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    /**
+     * @param retryAfter A Retry-After header, in seconds or as an HTTP date, or null
+     *
+     * @return How long the header asks to wait, or 0 if it is missing or malformed
+     */
+    static long retryAfterMillis(String retryAfter) {
+        if (retryAfter == null) {
+            return 0;
+        }
+        retryAfter = retryAfter.trim();
+        try {
+            return Math.max(0, TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter)));
+        } catch (NumberFormatException e) {
+            // Not seconds, so a date
+        }
+        SimpleDateFormat httpDate = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz",
+                Locale.US);
+        httpDate.setTimeZone(TimeZone.getTimeZone("GMT"));
+        try {
+            return Math.max(0, httpDate.parse(retryAfter).getTime() - System.currentTimeMillis());
+        } catch (java.text.ParseException e) {
+            return 0;
+        }
+    }
+
+    private static void drain(InputStream inputStream) throws IOException {
+        if (inputStream == null) {
+            return;
+        }
+        byte[] skip = new byte[512];
+        try {
+            //noinspection StatementWithEmptyBody
+            while (inputStream.read(skip) != -1) {
+            }
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    private static final class TimingInputStream extends FilterInputStream {
+        long nanos;
+
+        TimingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            long start = System.nanoTime();
+            try {
+                return super.read();
+            } finally {
+                nanos += System.nanoTime() - start;
+            }
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            long start = System.nanoTime();
+            try {
+                return super.read(buffer, offset, length);
+            } finally {
+                nanos += System.nanoTime() - start;
+            }
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long start = System.nanoTime();
+            try {
+                return super.skip(n);
+            } finally {
+                nanos += System.nanoTime() - start;
+            }
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
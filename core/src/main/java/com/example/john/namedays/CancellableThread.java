@@ -0,0 +1,59 @@
+package com.example.john.namedays;
+
+/**
+ * A thread whose interruption also aborts the blocking I/O it is in. Interruption alone does not
+ * wake a thread blocked on a socket, so a cancelled request would otherwise hold its thread and
+ * its connection until the response arrived, or timed out.
+ *
+ * Code about to block registers how to abort it with {@link #onInterrupt}; threads of other
+ * kinds ignore it, and are left to their timeouts.
+ */
+final class CancellableThread extends Thread {
+
+    interface Abort {
+        /**
+         * Called on the interrupting thread
+         */
+        void abort();
+    }
+
+    private Abort abort;
+
+    CancellableThread(Runnable runnable, String name) {
+        super(runnable, name);
+    }
+
+    /**
+     * Registers how to abort the I/O that the current thread is about to block in, if it is a
+     * cancellable thread. Aborts at once if the thread is already interrupted
+     *
+     * @param abort Called if the thread is interrupted, or null once the I/O is over
+     */
+    static void onInterrupt(Abort abort) {
+        Thread current = Thread.currentThread();
+
+        if (!(current instanceof CancellableThread)) {
+            return;
+        }
+        CancellableThread thread = (CancellableThread) current;
+        synchronized (thread) {
+            thread.abort = abort;
+        }
+        if (abort != null && thread.isInterrupted()) {
+            abort.abort();
+        }
+    }
+
+    @Override
+    public void interrupt() {
+        super.interrupt();
+
+        Abort abort;
+        synchronized (this) {
+            abort = this.abort;
+        }
+        if (abort != null) {
+            abort.abort();
+        }
+    }
+}
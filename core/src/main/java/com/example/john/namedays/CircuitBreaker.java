@@ -0,0 +1,128 @@
+package com.example.john.namedays;
+
+/**
+ * Stops calls to an endpoint that keeps failing, so that it is given time to recover instead of
+ * being hammered, and callers fail at once instead of waiting on timeouts.
+ *
+ * Closed, calls go through. After a run of failures in a row the breaker opens, and calls are
+ * refused for a while. Then it is half open: one trial call goes through, and closes the breaker
+ * if it succeeds, or opens it again if it fails.
+ */
+final class CircuitBreaker {
+
+    enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    interface Listener {
+        /**
+         * Called on the thread whose call changed the state, outside of the lock of the breaker
+         */
+        void onStateChange(State from, State to);
+    }
+
+    private final int failureThreshold;
+    private final long openMillis;
+    private final Listener listener;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean trialInFlight;
+
+    private long successes, failures, refused, opened;
+
+    /**
+     * @param failureThreshold The failures in a row that open the breaker
+     * @param openMillis How long the breaker refuses calls, once open
+     * @param listener Told of every change of state, or null
+     */
+    CircuitBreaker(int failureThreshold, long openMillis, Listener listener) {
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+        this.listener = listener;
+    }
+
+    /**
+     * Asks to make a call. A call that is allowed must be followed by {@link #onSuccess()} or
+     * {@link #onFailure()}
+     *
+     * @return False if the call must not be made, since the breaker is open
+     */
+    boolean allow() {
+        State from;
+        synchronized (this) {
+            from = state;
+
+            if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openMillis) {
+                state = State.HALF_OPEN;
+                trialInFlight = false;
+            }
+            if (state == State.CLOSED) {
+                return true;
+            }
+            if (state == State.HALF_OPEN && !trialInFlight) {
+                trialInFlight = true;
+            } else {
+                refused++;
+                return false;
+            }
+        }
+        changed(from, State.HALF_OPEN);
+        return true;
+    }
+
+    void onSuccess() {
+        State from;
+        synchronized (this) {
+            from = state;
+            successes++;
+            consecutiveFailures = 0;
+            trialInFlight = false;
+            state = State.CLOSED;
+        }
+        changed(from, State.CLOSED);
+    }
+
+    void onFailure() {
+        State from, to;
+        synchronized (this) {
+            from = state;
+            failures++;
+            consecutiveFailures++;
+            trialInFlight = false;
+
+            if (state == State.HALF_OPEN
+                    || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+                state = State.OPEN;
+                openedAt = System.currentTimeMillis();
+                opened++;
+            }
+            to = state;
+        }
+        changed(from, to);
+    }
+
+    /**
+     * Ends a call that was allowed, but gave up without telling whether the endpoint works
+     */
+    synchronized void release() {
+        trialInFlight = false;
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+
+    private void changed(State from, State to) {
+        if (from != to && listener != null) {
+            listener.onStateChange(from, to);
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "CircuitBreaker[" + state + ", successes=" + successes + ", failures=" + failures
+                + ", refused=" + refused + ", opened=" + opened + "]";
+    }
+}
@@ -0,0 +1,240 @@
+package com.example.john.namedays;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Looks up name days in several sources, such as the local index, data packs and the API, so that
+ * a country is answered by whichever sources cover it.
+ *
+ * Each lookup goes to the sources that cover its country, fastest first, by their mean latency so
+ * far, and on to the next when one does not have the names or fails. Sources not yet measured
+ * come first, in the order given, so that each is measured once it is needed. The latency, hits,
+ * misses and failures of each source are kept, for the metrics dump.
+ *
+ * Thread safe, so long as the sources are.
+ */
+final class CompositeSource implements NameDaySource {
+
+    /**
+     * What lookups in one source cost, and found
+     */
+    static final class Stats {
+        final NameDaySource source;
+        final LatencyHistogram latencies = new LatencyHistogram();
+        private long lookups;
+        private long hits;
+        private long failures;
+        private long totalNanos;
+
+        private Stats(NameDaySource source) {
+            this.source = source;
+        }
+
+        /**
+         * Records a lookup in the source, made outside of the composite
+         *
+         * @param names The names found, or null
+         * @param failed True if the source failed to answer
+         */
+        void record(long nanos, String names, boolean failed) {
+            latencies.recordNanos(nanos);
+            synchronized (this) {
+                lookups++;
+                totalNanos += nanos;
+                if (failed) {
+                    failures++;
+                } else if (names != null) {
+                    hits++;
+                }
+            }
+        }
+
+        /**
+         * @return The mean latency of lookups so far, or 0 if there were none
+         */
+        synchronized long meanNanos() {
+            return lookups == 0 ? 0 : totalNanos / lookups;
+        }
+
+        synchronized long lookupCount() {
+            return lookups;
+        }
+
+        synchronized long hitCount() {
+            return hits;
+        }
+
+        synchronized long missCount() {
+            return lookups - hits - failures;
+        }
+
+        synchronized long failureCount() {
+            return failures;
+        }
+
+        @Override
+        public String toString() {
+            LatencyHistogram.Snapshot snapshot = latencies.snapshot();
+            synchronized (this) {
+                return source.name() + ": lookups=" + lookups + ", hits=" + hits + ", misses="
+                        + (lookups - hits - failures) + ", failures=" + failures + ", p50="
+                        + snapshot.percentileMicros(50) + "us, p99="
+                        + snapshot.percentileMicros(99) + "us";
+            }
+        }
+    }
+
+    private static final Comparator<Stats> FASTEST_FIRST = new Comparator<Stats>() {
+        @Override
+        public int compare(Stats a, Stats b) {
+            long meanA = a.meanNanos();
+            long meanB = b.meanNanos();
+            return meanA < meanB ? -1 : meanA > meanB ? 1 : 0;
+        }
+    };
+
+    private final List<Stats> stats = new ArrayList<>();
+
+    /**
+     * @param sources The sources, in the order they are tried until each is measured
+     */
+    CompositeSource(List<? extends NameDaySource> sources) {
+        for (NameDaySource source : sources) {
+            stats.add(new Stats(source));
+        }
+    }
+
+    @Override
+    public String name() {
+        return "Composite";
+    }
+
+    @Override
+    public boolean covers(String countryCode) {
+        for (Stats s : stats) {
+            if (s.source.covers(countryCode)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return True if the country is covered by a remote source
+     */
+    boolean coversRemotely(String countryCode) {
+        for (Stats s : stats) {
+            if (s.source.isRemote() && s.source.covers(countryCode)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return True if any source is remote, since a lookup may then block for a request
+     */
+    @Override
+    public boolean isRemote() {
+        for (Stats s : stats) {
+            if (s.source.isRemote()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String lookup(int day, int month, String countryCode) throws IOException {
+        return lookup(day, month, countryCode, true);
+    }
+
+    /**
+     * Looks up the names in the local sources only, without blocking on the network, such as on
+     * the main thread
+     *
+     * @return The names, or null if no local source has them, or they all failed
+     */
+    String lookupLocal(int day, int month, String countryCode) {
+        try {
+            return lookup(day, month, countryCode, false);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param allowRemote False to skip the remote sources
+     *
+     * @return The names from the first source to have them, or null if none has them
+     *
+     * @throws IOException If no source had the names, and one failed; the last failure
+     */
+    String lookup(int day, int month, String countryCode, boolean allowRemote)
+            throws IOException {
+        List<Stats> candidates = new ArrayList<>(stats.size());
+        for (Stats s : stats) {
+            if ((allowRemote || !s.source.isRemote()) && s.source.covers(countryCode)) {
+                candidates.add(s);
+            }
+        }
+        // Stable, so that ties, such as sources not yet measured, keep the order given
+        Collections.sort(candidates, FASTEST_FIRST);
+
+        IOException failure = null;
+        for (Stats s : candidates) {
+            long start = System.nanoTime();
+            try {
+                String names = s.source.lookup(day, month, countryCode);
+                s.record(System.nanoTime() - start, names, false);
+
+                if (names != null) {
+                    return names;
+                }
+            } catch (IOException e) {
+                s.record(System.nanoTime() - start, null, true);
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return null;
+    }
+
+    /**
+     * @return The stats of the source, or null if it is not one of the composite
+     */
+    Stats statsOf(NameDaySource source) {
+        for (Stats s : stats) {
+            if (s.source == source) {
+                return s;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The sources, in the order given
+     */
+    List<NameDaySource> sources() {
+        List<NameDaySource> sources = new ArrayList<>(stats.size());
+        for (Stats s : stats) {
+            sources.add(s.source);
+        }
+        return sources;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("CompositeSource[");
+        for (int i = 0; i < stats.size(); i++) {
+            builder.append(i > 0 ? "; " : "").append(stats.get(i));
+        }
+        return builder.append("]").toString();
+    }
+}
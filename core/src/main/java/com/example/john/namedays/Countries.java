@@ -0,0 +1,172 @@
+package com.example.john.namedays;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * The set of countries supported by the NameDays API, in a fixed order. The position of a
+ * country in {@link #CODES} is its id, which is used to index the local name-day tables.
+ *
+ * Codes and API keys map to ids through a table built once, addressed directly by the characters
+ * of the code: a perfect hash, since no two codes share a slot. Lookups take constant time and
+ * allocate nothing.
+ */
+final class Countries {
+
+    /**
+     * ISO 3166 alpha-2 country codes, in id order
+     */
+    static final String[] CODES =
+            {"US", "CZ", "SK", "PL", "FR", "HU", "HR", "SE", "AT", "IT", "ES"};
+
+    /**
+     * UN M.49 numeric-3 area codes, in id order
+     */
+    static final String[] NUMERIC_CODES =
+            {"840", "203", "703", "616", "250", "348", "191", "752", "040", "380", "724"};
+
+    static final int COUNT = CODES.length;
+
+    /**
+     * The country of codes that are not supported
+     */
+    static final int DEFAULT_ID = 0;
+
+    private static final String API_PREFIX = "name_";
+
+    private static final String[] API_KEYS = new String[COUNT];
+
+    /**
+     * One slot for every pair of letters, then one for every three digits
+     */
+    private static final int ALPHA_SLOTS = 26 * 26;
+    private static final byte[] IDS = new byte[ALPHA_SLOTS + 1000];
+
+    static {
+        Arrays.fill(IDS, (byte) -1);
+
+        for (int i = 0; i < COUNT; i++) {
+            API_KEYS[i] = API_PREFIX + CODES[i].toLowerCase(Locale.US);
+            IDS[slotOf(CODES[i], 0, 2)] = (byte) i;
+            IDS[slotOf(NUMERIC_CODES[i], 0, 3)] = (byte) i;
+        }
+    }
+
+    private Countries() {
+    }
+
+    /**
+     * @return The slot of the code in {@link #IDS}, or -1 if it cannot be a code
+     */
+    private static int slotOf(String s, int start, int length) {
+        if (length == 2) {
+            int first = letterOf(s.charAt(start));
+            int second = letterOf(s.charAt(start + 1));
+            return first == -1 || second == -1 ? -1 : first * 26 + second;
+        }
+        if (length == 3) {
+            int slot = 0;
+            for (int i = start; i < start + 3; i++) {
+                char c = s.charAt(i);
+                if (c < '0' || c > '9') {
+                    return -1;
+                }
+                slot = slot * 10 + (c - '0');
+            }
+            return ALPHA_SLOTS + slot;
+        }
+        return -1;
+    }
+
+    private static int letterOf(char c) {
+        if (c >= 'A' && c <= 'Z') {
+            return c - 'A';
+        }
+        if (c >= 'a' && c <= 'z') {
+            return c - 'a';
+        }
+        return -1;
+    }
+
+    /**
+     * @param countryCode An ISO 3166 alpha-2 country code, in either case, or a UN M.49 numeric-3
+     * area code
+     *
+     * @return The id of the country, or -1 if the code is not supported
+     */
+    static int idOfCountryCode(String countryCode) {
+        if (countryCode == null) {
+            return -1;
+        }
+        int slot = slotOf(countryCode, 0, countryCode.length());
+        return slot == -1 ? -1 : IDS[slot];
+    }
+
+    /**
+     * @param apiKey A country key as used by the NameDays API, such as 'name_cz'
+     *
+     * @return The id of the country, or -1 if the key is not supported
+     */
+    static int idOfApiKey(String apiKey) {
+        if (apiKey == null || apiKey.length() != API_PREFIX.length() + 2
+                || !apiKey.startsWith(API_PREFIX)) {
+            return -1;
+        }
+        int slot = slotOf(apiKey, API_PREFIX.length(), 2);
+        int id = slot == -1 ? -1 : IDS[slot];
+
+        // The table folds case, but API keys are lower case only
+        return id != -1 && API_KEYS[id].equals(apiKey) ? id : -1;
+    }
+
+    /**
+     * @param countryCode An ISO 3166 alpha-2 country code or a UN M.49 numeric-3 area code
+     *
+     * @return A string that denotes country to the namedays API: name_{country code, in lowercase},
+     * for some accepted set of country codes = {CZ, SK, PL, FR, HU, HR, SE, AT, IT, ES, US}, or
+     * name_us for any other code
+     */
+    static String apiKeyForCountryCode(String countryCode) {
+        int id = idOfCountryCode(countryCode);
+        return API_KEYS[id != -1 ? id : DEFAULT_ID];
+    }
+
+    /**
+     * @return The NameDays API key of the country of the locale, or of the US if the locale has
+     * no country
+     */
+    static String apiKeyForLocale(Locale locale) {
+        // Country code is either 'ISO 3166 alpha-2 country code or UN M.49 numeric-3 area code'
+        return apiKeyForCountryCode(locale != null ? locale.getCountry() : null);
+    }
+
+    /**
+     * @return The NameDays API key of the country with this id, such as 'name_cz'
+     */
+    static String apiKey(int id) {
+        return API_KEYS[id];
+    }
+
+    /**
+     * @param countryCode An ISO 3166 alpha-2 country code, whether or not the API supports it
+     *
+     * @return A key in the form of those of the API, such as 'name_de' for a country of a data
+     * pack, or the API key of a supported country
+     */
+    static String keyOfCountryCode(String countryCode) {
+        int id = idOfCountryCode(countryCode);
+        return id != -1 ? API_KEYS[id] : API_PREFIX + countryCode.toLowerCase(Locale.US);
+    }
+
+    /**
+     * @return The ISO 3166 alpha-2 code, in upper case, of a key in the form of those of the API,
+     * or null if it is not one
+     */
+    static String countryCodeOfKey(String key) {
+        if (key == null || key.length() != API_PREFIX.length() + 2 || !key.startsWith(API_PREFIX)
+                || slotOf(key, API_PREFIX.length(), 2) == -1) {
+            return null;
+        }
+        return key.substring(API_PREFIX.length()).toUpperCase(Locale.US);
+    }
+}
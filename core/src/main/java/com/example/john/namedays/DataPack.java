@@ -0,0 +1,171 @@
+package com.example.john.namedays;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Names of one or more countries from a data file rather than the API, so that a country is added
+ * by dropping in a pack. A pack is UTF-8 text, with a line per date and country:
+ *
+ * <pre>
+ *     # Comments and blank lines are skipped
+ *     DE	06-24	Johannes, Johann
+ * </pre>
+ *
+ * that is, the ISO 3166 alpha-2 code of the country, the month and day, and the names, apart by
+ * tabs. A later line for the same date and country replaces an earlier one.
+ *
+ * A pack is read whole into memory, with each distinct name held once, in a
+ * {@link NameDictionary}, and is not changed afterwards, so lookups may be made on any thread.
+ */
+final class DataPack implements NameDaySource {
+
+    private final String name;
+    /**
+     * The numbers of the names of each day of the year, in the dictionary, by country code; null
+     * for days without names
+     */
+    private final Map<String, int[][]> countries;
+    private final NameDictionary dictionary;
+    private final int size;
+
+    private DataPack(String name, Map<String, int[][]> countries, NameDictionary dictionary,
+                     int size) {
+        this.name = name;
+        this.countries = countries;
+        this.dictionary = dictionary;
+        this.size = size;
+    }
+
+    /**
+     * Reads a pack, and closes the stream
+     *
+     * @param name What the pack is called, such as the name of its file
+     *
+     * @throws ParseException If a line is not a date, country and names, apart by tabs
+     */
+    static DataPack read(String name, InputStream inputStream) throws IOException {
+        Map<String, int[][]> countries = new HashMap<>();
+        NameDictionary dictionary = new NameDictionary();
+        int size = 0;
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, "UTF-8"));
+        try {
+            String line;
+            int number = 0;
+            while ((line = reader.readLine()) != null) {
+                number++;
+                if (line.trim().isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+
+                String[] fields = line.split("\t", -1);
+                int dayOfYear = fields.length == 3 ? dayOfYearOf(fields[1]) : -1;
+                String country = fields[0].trim();
+                String names = fields.length == 3 ? fields[2].trim() : "";
+
+                if (dayOfYear == -1 || !isCountryCode(country) || names.isEmpty()) {
+                    throw new ParseException("Not a line of a data pack, at " + name + ":"
+                            + number);
+                }
+                country = country.toUpperCase(Locale.US);
+
+                int[][] days = countries.get(country);
+                if (days == null) {
+                    days = new int[NameDayIndex.DAYS_IN_YEAR][];
+                    countries.put(country, days);
+                }
+                if (days[dayOfYear] == null) {
+                    size++;
+                }
+                days[dayOfYear] = dictionary.encode(names);
+            }
+        } finally {
+            reader.close();
+        }
+        return new DataPack(name, countries, dictionary, size);
+    }
+
+    /**
+     * @param date The month and day, as MM-DD
+     *
+     * @return The day of the year of the date, or -1 if it is not a date
+     */
+    private static int dayOfYearOf(String date) {
+        String[] monthAndDay = date.trim().split("-");
+        if (monthAndDay.length != 2) {
+            return -1;
+        }
+        try {
+            return NameDayIndex.dayOfYear(Integer.parseInt(monthAndDay[1]),
+                    Integer.parseInt(monthAndDay[0]));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return True if the string is two ASCII letters, in either case
+     */
+    private static boolean isCountryCode(String s) {
+        return s.length() == 2 && isAsciiLetter(s.charAt(0)) && isAsciiLetter(s.charAt(1));
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z');
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public boolean covers(String countryCode) {
+        return countries.containsKey(countryCode);
+    }
+
+    @Override
+    public boolean isRemote() {
+        return false;
+    }
+
+    @Override
+    public String lookup(int day, int month, String countryCode) {
+        int[][] days = countries.get(countryCode);
+        int dayOfYear = NameDayIndex.dayOfYear(day, month);
+
+        if (days == null || dayOfYear == -1 || days[dayOfYear] == null) {
+            return null;
+        }
+        int[] ids = days[dayOfYear];
+        return dictionary.decode(ids, 0, ids.length);
+    }
+
+    /**
+     * @return The codes of the countries in the pack
+     */
+    Set<String> countries() {
+        return Collections.unmodifiableSet(countries.keySet());
+    }
+
+    /**
+     * @return How many (date, country) entries the pack has
+     */
+    int size() {
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return "DataPack[" + name + ", countries=" + countries.keySet() + ", entries=" + size
+                + "]";
+    }
+}
@@ -0,0 +1,219 @@
+package com.example.john.namedays;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fetches the names of every day of the year into local storage, so that lookups made later are
+ * answered without the network.
+ *
+ * Each response holds the names of every country, so one request is made per day. A full sync
+ * fetches every day; otherwise only the days the store lacks are fetched. Days are fetched in
+ * batches, a few at a time, and each response is stored as it arrives; the store is made durable
+ * after each batch, so that a sync that is stopped keeps what it fetched.
+ */
+final class DatasetSync {
+
+    /**
+     * Where synced names go
+     */
+    interface Store {
+        /**
+         * @return True if the names of every country for the day of the year are at hand
+         */
+        boolean has(int dayOfYear);
+
+        /**
+         * Called on a sync thread, with each response as it arrives
+         */
+        void store(ResponseCache.Key key, NameDays nameDays);
+
+        /**
+         * Makes what was stored so far durable. Called on the thread running the sync, after
+         * each batch
+         */
+        void checkpoint() throws IOException;
+    }
+
+    interface Progress {
+        /**
+         * Called on the thread running the sync, after each batch
+         *
+         * @param done The days fetched, or failed, so far
+         * @param total The days to fetch in all
+         */
+        void onProgress(int done, int total);
+    }
+
+    static final class Result {
+        /**
+         * The days there were to fetch
+         */
+        final int total;
+        final int fetched;
+        final int failed;
+        final long durationMillis;
+        /**
+         * The sync stopped before every day was tried: it was cancelled, or a whole batch failed
+         */
+        final boolean stopped;
+
+        Result(int total, int fetched, int failed, long durationMillis, boolean stopped) {
+            this.total = total;
+            this.fetched = fetched;
+            this.failed = failed;
+            this.durationMillis = durationMillis;
+            this.stopped = stopped;
+        }
+
+        boolean isComplete() {
+            return !stopped && fetched == total;
+        }
+
+        @Override
+        public String toString() {
+            return "DatasetSync.Result[total=" + total + ", fetched=" + fetched + ", failed="
+                    + failed + ", duration=" + durationMillis + "ms"
+                    + (stopped ? ", stopped" : "") + "]";
+        }
+    }
+
+    private final RequestExecutor.Fetcher fetcher;
+    private final Store store;
+    private final String country;
+    private final int batchSize;
+    private final int parallelism;
+
+    private volatile boolean cancelled;
+
+    /**
+     * @param country The NameDays API key that requests are made with; responses hold every
+     * country anyway
+     * @param batchSize The days fetched between two checkpoints of the store
+     * @param parallelism The most days fetched at the same time
+     */
+    DatasetSync(RequestExecutor.Fetcher fetcher, Store store, String country, int batchSize,
+                int parallelism) {
+        this.fetcher = fetcher;
+        this.store = store;
+        this.country = country;
+        this.batchSize = batchSize;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Runs the sync on the calling thread, until every day was tried, a whole batch failed, or
+     * the sync is cancelled
+     *
+     * @param full True to fetch every day, even those the store has
+     *
+     * @throws IOException If the store cannot be made durable
+     */
+    Result run(boolean full, Progress progress) throws IOException {
+        long start = System.nanoTime();
+
+        List<Integer> days = new ArrayList<>(NameDayIndex.DAYS_IN_YEAR);
+        for (int dayOfYear = 0; dayOfYear < NameDayIndex.DAYS_IN_YEAR; dayOfYear++) {
+            if (full || !store.has(dayOfYear)) {
+                days.add(dayOfYear);
+            }
+        }
+
+        final AtomicInteger count = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new CancellableThread(runnable,
+                        "Sync Thread " + count.incrementAndGet());
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+
+        int fetched = 0, failed = 0;
+        boolean stopped = false;
+        try {
+            for (int from = 0; from < days.size(); from += batchSize) {
+                if (cancelled) {
+                    stopped = true;
+                    break;
+                }
+                List<Future<Boolean>> batch = new ArrayList<>(batchSize);
+                for (int i = from; i < Math.min(from + batchSize, days.size()); i++) {
+                    batch.add(executor.submit(fetchDay(days.get(i))));
+                }
+
+                int batchFailed = 0;
+                for (Future<Boolean> future : batch) {
+                    if (waitFor(future)) {
+                        fetched++;
+                    } else {
+                        batchFailed++;
+                    }
+                }
+                failed += batchFailed;
+
+                store.checkpoint();
+                if (progress != null) {
+                    progress.onProgress(fetched + failed, days.size());
+                }
+                if (batchFailed == batch.size()) {
+                    // The API is down, or unreachable: no use in trying the rest now
+                    stopped = true;
+                    break;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        long durationMillis = (System.nanoTime() - start) / 1000000;
+        return new Result(days.size(), fetched, failed, durationMillis, stopped);
+    }
+
+    /**
+     * Stops the sync after the batch in progress
+     */
+    void cancel() {
+        cancelled = true;
+    }
+
+    private Callable<Boolean> fetchDay(int dayOfYear) {
+        final ResponseCache.Key key = new ResponseCache.Key("namedays",
+                NameDayIndex.dayOf(dayOfYear), NameDayIndex.monthOf(dayOfYear), country);
+
+        return new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                if (cancelled) {
+                    return false;
+                }
+                try {
+                    store.store(key, fetcher.fetch(key));
+                    return true;
+                } catch (IOException e) {
+                    return false;
+                }
+            }
+        };
+    }
+
+    private static boolean waitFor(Future<Boolean> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.john.namedays;
+
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Fetches responses from NameDays API, or a server that stands in for it, and records how long
+ * each phase took, or why it failed.
+ *
+ * The parser is left to the platform: android.util.JsonReader on a device, anything else with
+ * the same behavior on the JVM.
+ *
+ * When the response cache holds an earlier response to the request, however old, the request is
+ * made conditional on its validators. A 304 Not Modified answers with the earlier names, without
+ * a body to download or parse.
+ */
+final class HttpFetcher implements RequestExecutor.Fetcher {
+
+    interface ParserFactory {
+        /**
+         * @param country The NameDays API key of the country that must be in the response
+         */
+        ApiClient.BodyReader<NameDays> parserFor(String country);
+    }
+
+    private final ApiClient apiClient;
+    private final ParserFactory parserFactory;
+    private final Metrics metrics;
+    private final ResponseCache revalidated;
+
+    HttpFetcher(ApiClient apiClient, ParserFactory parserFactory, Metrics metrics) {
+        this(apiClient, parserFactory, metrics, null);
+    }
+
+    /**
+     * @param revalidated The cache whose entries requests are made conditional on, or null
+     */
+    HttpFetcher(ApiClient apiClient, ParserFactory parserFactory, Metrics metrics,
+                ResponseCache revalidated) {
+        this.apiClient = apiClient;
+        this.parserFactory = parserFactory;
+        this.metrics = metrics;
+        this.revalidated = revalidated;
+    }
+
+    /**
+     * @return The path and query of the request for the key, relative to the base URL
+     */
+    static String pathOf(ResponseCache.Key key) {
+        return key.isRelative() ? key.endpoint
+                : String.format(Locale.US, "%s?day=%d&month=%d", key.endpoint, key.day, key.month);
+    }
+
+    @Override
+    public NameDays fetch(ResponseCache.Key key) throws IOException {
+        NameDays held = revalidated != null ? revalidated.peek(key) : null;
+        Validators validators =
+                held != null && held.validators.canRevalidate() ? held.validators : null;
+
+        ApiClient.Response<NameDays> response;
+        try {
+            response = apiClient.get(pathOf(key), parserFactory.parserFor(key.country),
+                    validators);
+        } catch (IOException e) {
+            // A request that was cancelled did not fail
+            if (!Thread.currentThread().isInterrupted()) {
+                metrics.recordError(e);
+            }
+            throw e;
+        }
+        metrics.recordRequest(response.timing);
+
+        if (response.isNotModified()) {
+            return held.withValidators(validators.updatedBy(response.validators));
+        }
+        return response.body.withValidators(response.validators);
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.john.namedays;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies, recorded without locks from any number of threads.
+ *
+ * Latencies are kept in microseconds, in log-linear buckets: exact below 16us, and 8 buckets per
+ * power of two above that, so that any percentile read back is within 12.5% of the true value.
+ * Recording is a few shifts and one atomic increment, cheap enough to leave on in release builds.
+ */
+final class LatencyHistogram {
+
+    private static final int LINEAR_BUCKETS = 16;
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /**
+     * Covers up to 2^40us, about 12 days; anything longer goes in the last bucket
+     */
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKETS =
+            LINEAR_BUCKETS + (MAX_EXPONENT - 4 + 1) * SUB_BUCKETS;
+
+    /**
+     * A copy of the counts of a histogram, at one moment
+     */
+    static final class Snapshot {
+        final long count;
+        final long sumMicros;
+        final long maxMicros;
+        private final long[] buckets;
+
+        private Snapshot(long count, long sumMicros, long maxMicros, long[] buckets) {
+            this.count = count;
+            this.sumMicros = sumMicros;
+            this.maxMicros = maxMicros;
+            this.buckets = buckets;
+        }
+
+        long meanMicros() {
+            return count == 0 ? 0 : sumMicros / count;
+        }
+
+        /**
+         * @param percentile Between 0 and 100
+         *
+         * @return The latency in microseconds that the percentile of recordings did not exceed,
+         * or 0 if nothing was recorded
+         */
+        long percentileMicros(double percentile) {
+            long total = 0;
+            for (long bucket : buckets) {
+                total += bucket;
+            }
+            if (total == 0) {
+                return 0;
+            }
+
+            long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+            long seen = 0;
+
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank) {
+                    return Math.min(upperBoundOf(i), maxMicros);
+                }
+            }
+            return maxMicros;
+        }
+
+        @Override
+        public String toString() {
+            return "n=" + count + ", p50=" + percentileMicros(50) + "us, p90="
+                    + percentileMicros(90) + "us, p99=" + percentileMicros(99) + "us, max="
+                    + maxMicros + "us, mean=" + meanMicros() + "us";
+        }
+    }
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sumMicros = new AtomicLong();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    void recordNanos(long nanos) {
+        recordMicros(nanos / 1000);
+    }
+
+    void recordMicros(long micros) {
+        if (micros < 0) {
+            micros = 0;
+        }
+        buckets.incrementAndGet(bucketOf(micros));
+        count.incrementAndGet();
+        sumMicros.addAndGet(micros);
+
+        long max = maxMicros.get();
+        while (micros > max && !maxMicros.compareAndSet(max, micros)) {
+            max = maxMicros.get();
+        }
+    }
+
+    long count() {
+        return count.get();
+    }
+
+    /**
+     * The counts are read one at a time, while recording goes on, so the snapshot may be off by
+     * the few recordings made while it was taken
+     */
+    Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = buckets.get(i);
+        }
+        return new Snapshot(count.get(), sumMicros.get(), maxMicros.get(), copy);
+    }
+
+    static int bucketOf(long micros) {
+        if (micros < LINEAR_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_BUCKETS + (exponent - 4) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return The largest latency, in microseconds, that falls in the bucket
+     */
+    static long upperBoundOf(int bucket) {
+        if (bucket < LINEAR_BUCKETS) {
+            return bucket;
+        }
+        int exponent = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + 4;
+        int subBucket = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return (1L << exponent) + (subBucket + 1) * width - 1;
+    }
+}
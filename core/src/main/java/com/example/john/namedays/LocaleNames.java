@@ -0,0 +1,49 @@
+package com.example.john.namedays;
+
+import java.util.Locale;
+
+/**
+ * The names of the supported countries and of the months, as shown in one locale. Resolved once
+ * per locale, and shared until the locale changes.
+ *
+ * The arrays are shared by every caller, and must not be changed.
+ */
+final class LocaleNames {
+
+    private static volatile LocaleNames current;
+
+    final Locale locale;
+    /**
+     * Indexed by country id
+     */
+    final String[] countries;
+    /**
+     * Indexed from 0 for January
+     */
+    final String[] months;
+
+    private LocaleNames(Locale locale) {
+        this.locale = locale;
+
+        String language = locale.getLanguage();
+        countries = new String[Countries.COUNT];
+        for (int id = 0; id < Countries.COUNT; id++) {
+            countries[id] = new Locale(language, Countries.CODES[id]).getDisplayCountry(locale);
+        }
+        months = Messages.findDisplayMonths(locale);
+    }
+
+    /**
+     * @return The names in the locale; resolved again only if the locale differs from the one
+     * asked for last
+     */
+    static LocaleNames of(Locale locale) {
+        LocaleNames names = current;
+
+        if (names == null || !names.locale.equals(locale)) {
+            names = new LocaleNames(locale);
+            current = names;
+        }
+        return names;
+    }
+}
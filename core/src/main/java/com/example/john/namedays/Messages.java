@@ -0,0 +1,89 @@
+package com.example.john.namedays;
+
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Formats the messages shown for name days, and finds the names of the months to show in them
+ */
+final class Messages {
+
+    private Messages() {
+    }
+
+    /**
+     * @param when A day relative to today, such as 'today' or 'tomorrow'
+     */
+    static String nameDaysFor(String when, String nameDays) {
+        return String.format("Name day(s) for %s : \n\n%s", when, nameDays);
+    }
+
+    static String nameDaysFor(String monthName, int day, String nameDays) {
+        return String.format(Locale.getDefault(), "Name day(s) for %s %d : \n\n%s",
+                monthName, day, nameDays);
+    }
+
+    /**
+     * @return The heading of a list of names, such as those of a month or of a name search
+     */
+    static String title(String what) {
+        return String.format("Name day(s) for %s : ", what);
+    }
+
+    static String title(String monthName, int day) {
+        return String.format(Locale.getDefault(), "Name day(s) for %s %d : ", monthName, day);
+    }
+
+    static String noNameDays(String prefix) {
+        return String.format("No name day(s) known for %s", prefix);
+    }
+
+    /**
+     * @param countries How many countries the data pack has names for
+     * @param entries How many dates and countries the data pack has names for
+     */
+    static String imported(String pack, int countries, int entries) {
+        return String.format(Locale.getDefault(),
+                "Imported %s : %d country(ies), %d name day(s)", pack, countries, entries);
+    }
+
+    /**
+     * @param label What the names are for, such as a day of the month or a country
+     */
+    static String row(String label, String names) {
+        return label + " : " + names;
+    }
+
+    /**
+     * @param displayMonths The names of the months, indexed from 0 for January
+     *
+     * @return The dates of the days of the year, such as "June 24, July 1"
+     */
+    static String dates(int[] daysOfYear, String[] displayMonths) {
+        StringBuilder dates = new StringBuilder();
+
+        for (int i = 0; i < daysOfYear.length; i++) {
+            dates.append(String.format(Locale.getDefault(), i == 0 ? "%s %d" : ", %s %d",
+                    displayMonths[NameDayIndex.monthOf(daysOfYear[i]) - 1],
+                    NameDayIndex.dayOf(daysOfYear[i])));
+        }
+        return dates.toString();
+    }
+
+    /**
+     * @return The long names of the months in the locale, indexed from 0 for January
+     */
+    static String[] findDisplayMonths(Locale locale) {
+        Calendar calendar = Calendar.getInstance(locale);
+        Set<Map.Entry<String, Integer>> months = calendar.getDisplayNames(Calendar.MONTH, Calendar.LONG, locale).entrySet();
+
+        String[] displayMonths = new String[months.size()];
+
+        for (Map.Entry<String, Integer> entry : months) {
+            displayMonths[entry.getValue()] = entry.getKey();
+        }
+        return displayMonths;
+    }
+}
@@ -0,0 +1,214 @@
+package com.example.john.namedays;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latencies, bytes and errors of requests to the NameDays API, by phase and by category.
+ *
+ * Every recording is lock free, so that it can be made on the request threads without slowing
+ * them. Read it back with {@link #snapshot()}, or have it written out now and then with
+ * {@link #startDump(long, Sink)}.
+ */
+final class Metrics {
+
+    /**
+     * Waiting in the queue of the request executor for a thread
+     */
+    static final int QUEUE_WAIT = 0;
+    /**
+     * Opening the connection, or taking one from the pool
+     */
+    static final int CONNECT = 1;
+    /**
+     * From sending the request to receiving the status line and headers
+     */
+    static final int FIRST_BYTE = 2;
+    /**
+     * Waiting for and decompressing the body
+     */
+    static final int BODY = 3;
+    /**
+     * Parsing the body, apart from the time spent waiting for it
+     */
+    static final int PARSE = 4;
+    /**
+     * From posting a result to the main thread until it runs there
+     */
+    static final int UI_POST = 5;
+
+    static final String[] PHASES =
+            {"queueWait", "connect", "firstByte", "body", "parse", "uiPost"};
+
+    static final int IO_ERROR = 0;
+    static final int PARSE_ERROR = 1;
+    static final int MISSING_COUNTRY = 2;
+
+    static final String[] ERRORS = {"io", "parse", "missingCountry"};
+
+    /**
+     * Writes out a snapshot, on the dump thread
+     */
+    interface Sink {
+        void write(Snapshot snapshot);
+    }
+
+    static final class Snapshot {
+        /**
+         * Indexed by phase, such as {@link #CONNECT}
+         */
+        final LatencyHistogram.Snapshot[] phases;
+        /**
+         * Indexed by category, such as {@link #IO_ERROR}
+         */
+        final long[] errors;
+        final long requests;
+        /**
+         * Requests answered with 304 Not Modified
+         */
+        final long notModified;
+        final long bytes;
+
+        private Snapshot(LatencyHistogram.Snapshot[] phases, long[] errors, long requests,
+                         long notModified, long bytes) {
+            this.phases = phases;
+            this.errors = errors;
+            this.requests = requests;
+            this.notModified = notModified;
+            this.bytes = bytes;
+        }
+
+        LatencyHistogram.Snapshot phase(int phase) {
+            return phases[phase];
+        }
+
+        long errors(int category) {
+            return errors[category];
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder("requests=").append(requests)
+                    .append(", notModified=").append(notModified).append(", bytes=").append(bytes);
+
+            for (int i = 0; i < ERRORS.length; i++) {
+                builder.append(", ").append(ERRORS[i]).append("Errors=").append(errors[i]);
+            }
+            for (int i = 0; i < PHASES.length; i++) {
+                builder.append('\n').append(PHASES[i]).append(": ").append(phases[i]);
+            }
+            return builder.toString();
+        }
+    }
+
+    private final LatencyHistogram[] phases = new LatencyHistogram[PHASES.length];
+    private final AtomicLong[] errors = new AtomicLong[ERRORS.length];
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong notModified = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+
+    private Thread dumpThread;
+
+    Metrics() {
+        for (int i = 0; i < phases.length; i++) {
+            phases[i] = new LatencyHistogram();
+        }
+        for (int i = 0; i < errors.length; i++) {
+            errors[i] = new AtomicLong();
+        }
+    }
+
+    void recordNanos(int phase, long nanos) {
+        phases[phase].recordNanos(nanos);
+    }
+
+    /**
+     * Records the phases of a request that completed. A response of 304 Not Modified has no body
+     * to record
+     */
+    void recordRequest(ApiClient.Timing timing) {
+        requests.incrementAndGet();
+        phases[CONNECT].recordNanos(timing.connectNanos);
+        phases[FIRST_BYTE].recordNanos(timing.firstByteNanos);
+
+        if (timing.notModified) {
+            notModified.incrementAndGet();
+            return;
+        }
+        bytes.addAndGet(timing.bodyBytes);
+        phases[BODY].recordNanos(timing.bodyNanos);
+        phases[PARSE].recordNanos(timing.parseNanos);
+    }
+
+    /**
+     * Counts a failed request, in the category of the error
+     */
+    void recordError(IOException e) {
+        requests.incrementAndGet();
+        if (e instanceof MissingCountryException) {
+            errors[MISSING_COUNTRY].incrementAndGet();
+        } else if (e instanceof ParseException) {
+            errors[PARSE_ERROR].incrementAndGet();
+        } else {
+            errors[IO_ERROR].incrementAndGet();
+        }
+    }
+
+    Snapshot snapshot() {
+        LatencyHistogram.Snapshot[] phaseSnapshots = new LatencyHistogram.Snapshot[phases.length];
+        for (int i = 0; i < phases.length; i++) {
+            phaseSnapshots[i] = phases[i].snapshot();
+        }
+        long[] errorCounts = new long[errors.length];
+        for (int i = 0; i < errors.length; i++) {
+            errorCounts[i] = errors[i].get();
+        }
+        return new Snapshot(phaseSnapshots, errorCounts, requests.get(), notModified.get(),
+                bytes.get());
+    }
+
+    /**
+     * Writes a snapshot to the sink every period, on a background thread, skipping periods in
+     * which nothing was recorded. Replaces the dump started before, if any
+     */
+    synchronized void startDump(final long periodMillis, final Sink sink) {
+        stopDump();
+
+        dumpThread = new Thread("Metrics Dump") {
+            @Override
+            public void run() {
+                long dumped = 0;
+                try {
+                    while (!isInterrupted()) {
+                        Thread.sleep(periodMillis);
+
+                        long recorded = recorded();
+                        if (recorded != dumped) {
+                            dumped = recorded;
+                            sink.write(snapshot());
+                        }
+                    }
+                } catch (InterruptedException ignore) {
+                }
+            }
+        };
+        dumpThread.setDaemon(true);
+        dumpThread.setPriority(Thread.MIN_PRIORITY);
+        dumpThread.start();
+    }
+
+    synchronized void stopDump() {
+        if (dumpThread != null) {
+            dumpThread.interrupt();
+            dumpThread = null;
+        }
+    }
+
+    private long recorded() {
+        long recorded = requests.get();
+        for (LatencyHistogram phase : phases) {
+            recorded += phase.count();
+        }
+        return recorded;
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.john.namedays;
+
+/**
+ * The response has no names for the country that was asked for
+ */
+final class MissingCountryException extends ParseException {
+    private static final long serialVersionUID = 1L;
+
+    MissingCountryException(String message) {
+        super(message);
+    }
+}
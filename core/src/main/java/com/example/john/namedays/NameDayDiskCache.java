@@ -0,0 +1,434 @@
+package com.example.john.namedays;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UTFDataFormatException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * A disk cache of parsed name day records, which survives the process.
+ *
+ * Records are only ever appended to one binary file, and read back through a memory mapping of
+ * that file. Records appended since the file was last mapped are also held in memory, and read
+ * from there, so that the file is mapped again only once they add up, rather than on every
+ * append. A small index holds the offset of the latest record for each (day of year, country),
+ * so that a lookup is one array read and the decoding of one record.
+ *
+ * The file starts with a header of a magic number and the format version; it is the format, not
+ * the app, that is versioned, so the cache outlives app upgrades. Each record is:
+ *
+ * <pre>
+ *     int    length of the payload
+ *     int    CRC32 of the payload
+ *     byte   day
+ *     byte   month
+ *     long   time written, in millis
+ *     UTF    NameDays API country key, such as 'name_cz'
+ *     UTF    names
+ * </pre>
+ *
+ * A record that is truncated or fails its checksum ends the file: it and anything after it are
+ * cut off when the cache is opened. Once the file grows past a threshold, and most of it is
+ * superseded records, it is compacted into a new file holding only the latest records.
+ */
+final class NameDayDiskCache {
+
+    private static final int MAGIC = 0x4E445243; // "NDRC"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 8;
+    /**
+     * The most bytes of records held in memory before the file is mapped again
+     */
+    private static final int MAX_TAIL_SIZE = 64 * 1024;
+
+    private static final int SLOTS = NameDayIndex.DAYS_IN_YEAR * Countries.COUNT;
+
+    private final File file;
+    private final long compactThreshold;
+
+    private RandomAccessFile randomAccessFile;
+    private FileChannel channel;
+    private MappedByteBuffer mapped;
+    private long mappedSize;
+    /**
+     * The records appended past the end of the mapping, up to its position
+     */
+    private ByteBuffer tail = ByteBuffer.allocate(4096);
+
+    /**
+     * Offset of the latest record for each slot, or -1
+     */
+    private final int[] offsets = new int[SLOTS];
+    private long fileSize;
+    private long liveBytes;
+
+    private NameDayDiskCache(File file, long compactThreshold) {
+        this.file = file;
+        this.compactThreshold = compactThreshold;
+    }
+
+    /**
+     * Opens the cache in the file, creating the file if it does not exist, and discarding it if
+     * it is not a cache of this format version
+     *
+     * @param compactThreshold The file size in bytes above which the file may be compacted
+     */
+    static NameDayDiskCache open(File file, long compactThreshold) throws IOException {
+        NameDayDiskCache cache = new NameDayDiskCache(file, compactThreshold);
+        cache.load();
+        return cache;
+    }
+
+    private void load() throws IOException {
+        Arrays.fill(offsets, -1);
+        liveBytes = 0;
+
+        randomAccessFile = new RandomAccessFile(file, "rw");
+        channel = randomAccessFile.getChannel();
+
+        if (channel.size() < HEADER_SIZE || !hasValidHeader()) {
+            resetFile();
+        }
+
+        fileSize = channel.size();
+        remap();
+        scan();
+    }
+
+    private boolean hasValidHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        channel.read(header, 0);
+        header.flip();
+        return header.getInt() == MAGIC && header.getInt() == VERSION;
+    }
+
+    private void resetFile() throws IOException {
+        channel.truncate(0);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).flip();
+        channel.write(header, 0);
+        channel.force(false);
+    }
+
+    private void remap() throws IOException {
+        mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+        mappedSize = fileSize;
+        tail.clear();
+    }
+
+    /**
+     * @return The bytes of the file at the offset, from the mapping, or from the records
+     * appended since; a record is always wholly in one or the other
+     */
+    private ByteBuffer bytes(int offset, int length) {
+        ByteBuffer source;
+        int at;
+        if (offset < mappedSize) {
+            source = mapped.duplicate();
+            at = offset;
+        } else {
+            source = tail.duplicate();
+            at = (int) (offset - mappedSize);
+        }
+        source.limit(at + length);
+        source.position(at);
+        return source.slice();
+    }
+
+    private int lengthAt(int position) {
+        return bytes(position, 4).getInt(0);
+    }
+
+    /**
+     * Walks the records from the start of the file, indexing the valid ones, and cuts the file
+     * off at the first record that is not
+     */
+    private void scan() throws IOException {
+        int position = HEADER_SIZE;
+        int[] sizes = new int[SLOTS];
+
+        while (position < fileSize) {
+            int slot = checkRecord(position);
+
+            if (slot == -1) {
+                break;
+            }
+            int size = RECORD_HEADER_SIZE + lengthAt(position);
+
+            if (offsets[slot] != -1) {
+                liveBytes -= sizes[slot];
+            }
+            offsets[slot] = position;
+            sizes[slot] = size;
+            liveBytes += size;
+
+            position += size;
+        }
+
+        if (position < fileSize) {
+            channel.truncate(position);
+            fileSize = position;
+            remap();
+        }
+    }
+
+    /**
+     * @return The slot of the record at the position, or -1 if it is truncated, corrupt or
+     * not for a supported date and country
+     */
+    private int checkRecord(int position) {
+        if (position + RECORD_HEADER_SIZE > fileSize) {
+            return -1;
+        }
+        int length = lengthAt(position);
+        int checksum = bytes(position + 4, 4).getInt(0);
+
+        if (length <= 0 || position + RECORD_HEADER_SIZE + (long) length > fileSize) {
+            return -1;
+        }
+
+        ByteBuffer payload = payload(position, length);
+        CRC32 crc = new CRC32();
+        for (int i = 0; i < length; i++) {
+            crc.update(payload.get(i));
+        }
+        if ((int) crc.getValue() != checksum) {
+            return -1;
+        }
+
+        try {
+            int day = payload.get();
+            int month = payload.get();
+            payload.getLong();
+            return slot(day, month, readUTF(payload));
+        } catch (BufferUnderflowException | UTFDataFormatException e) {
+            return -1;
+        }
+    }
+
+    private ByteBuffer payload(int position, int length) {
+        return bytes(position + RECORD_HEADER_SIZE, length);
+    }
+
+    private static int slot(int day, int month, String country) {
+        int dayOfYear = NameDayIndex.dayOfYear(day, month);
+        int countryId = Countries.idOfApiKey(country);
+
+        if (dayOfYear == -1 || countryId == -1) {
+            return -1;
+        }
+        return dayOfYear * Countries.COUNT + countryId;
+    }
+
+    /**
+     * @return The last names written for the day, month and country, or null if there are none
+     */
+    synchronized NameDays get(int day, int month, String country) {
+        int slot = slot(day, month, country);
+
+        // Closed, if it could not be reopened after a compaction
+        if (slot == -1 || mapped == null || offsets[slot] == -1) {
+            return null;
+        }
+
+        int position = offsets[slot];
+        ByteBuffer payload = payload(position, lengthAt(position));
+        try {
+            payload.position(2 + 8);
+            readUTF(payload);
+            return new NameDays(readUTF(payload), day, month);
+        } catch (BufferUnderflowException | UTFDataFormatException e) {
+            // Checked when the record was indexed, so the mapping has gone bad under us
+            return null;
+        }
+    }
+
+    /**
+     * @return When the last names for the day, month and country were written, in millis, or -1
+     * if there are none
+     */
+    synchronized long writtenAt(int day, int month, String country) {
+        int slot = slot(day, month, country);
+
+        if (slot == -1 || mapped == null || offsets[slot] == -1) {
+            return -1;
+        }
+
+        int position = offsets[slot];
+        try {
+            return payload(position, lengthAt(position)).getLong(2);
+        } catch (IndexOutOfBoundsException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Appends the names for the day, month and country to the file
+     */
+    synchronized void put(int day, int month, String country, String names) throws IOException {
+        int slot = slot(day, month, country);
+
+        if (slot == -1 || names == null) {
+            return;
+        }
+        if (channel == null) {
+            throw new IOException("The disk cache is closed");
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0);
+        out.writeInt(0);
+        out.writeByte(day);
+        out.writeByte(month);
+        out.writeLong(System.currentTimeMillis());
+        out.writeUTF(country);
+        out.writeUTF(names);
+        out.flush();
+
+        ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+        int length = record.capacity() - RECORD_HEADER_SIZE;
+
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), RECORD_HEADER_SIZE, length);
+        record.putInt(0, length);
+        record.putInt(4, (int) crc.getValue());
+
+        int position = (int) fileSize;
+        channel.write(record, position);
+        record.rewind();
+
+        if (offsets[slot] != -1) {
+            liveBytes -= RECORD_HEADER_SIZE + lengthAt(offsets[slot]);
+        }
+        fileSize += record.capacity();
+        liveBytes += record.capacity();
+
+        if (tail.position() + record.capacity() > MAX_TAIL_SIZE) {
+            remap();
+        } else {
+            if (tail.remaining() < record.capacity()) {
+                ByteBuffer grown = ByteBuffer.allocate(
+                        Math.max(tail.capacity() * 2, tail.position() + record.capacity()));
+                tail.flip();
+                grown.put(tail);
+                tail = grown;
+            }
+            tail.put(record);
+        }
+        offsets[slot] = position;
+
+        if (fileSize > compactThreshold && liveBytes < fileSize / 2) {
+            compact();
+        }
+    }
+
+    /**
+     * Rewrites the file with only the latest record for each slot
+     */
+    synchronized void compact() throws IOException {
+        if (channel == null) {
+            throw new IOException("The disk cache is closed");
+        }
+        File compacted = new File(file.getPath() + ".compact");
+        RandomAccessFile out = new RandomAccessFile(compacted, "rw");
+
+        try {
+            FileChannel outChannel = out.getChannel();
+            outChannel.truncate(0);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).flip();
+            outChannel.write(header);
+
+            for (int position : offsets) {
+                if (position != -1) {
+                    outChannel.write(bytes(position, RECORD_HEADER_SIZE + lengthAt(position)));
+                }
+            }
+            outChannel.force(false);
+        } finally {
+            out.close();
+        }
+
+        close();
+        try {
+            if (!compacted.renameTo(file)) {
+                throw new IOException("Unable to replace " + file + " with its compacted copy");
+            }
+            load();
+        } catch (IOException e) {
+            // Reopened as it is, compacted or not, so that the cache stays usable; or else left
+            // closed, so that lookups miss rather than fail
+            close();
+            compacted.delete();
+            try {
+                load();
+            } catch (IOException ignore) {
+                close();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return The size of the file, in bytes
+     */
+    synchronized long size() {
+        return fileSize;
+    }
+
+    synchronized void close() throws IOException {
+        mapped = null;
+        mappedSize = 0;
+        tail.clear();
+        Arrays.fill(offsets, -1);
+        if (randomAccessFile != null) {
+            randomAccessFile.close();
+            randomAccessFile = null;
+            channel = null;
+        }
+    }
+
+    /**
+     * Reads a string in the modified UTF-8 form that {@link DataOutputStream#writeUTF} writes
+     */
+    private static String readUTF(ByteBuffer buffer) throws UTFDataFormatException {
+        int length = buffer.getShort() & 0xFFFF;
+        char[] chars = new char[length];
+        int count = 0;
+        int end = buffer.position() + length;
+
+        if (end > buffer.limit()) {
+            throw new BufferUnderflowException();
+        }
+
+        while (buffer.position() < end) {
+            int a = buffer.get() & 0xFF;
+
+            if (a < 0x80) {
+                chars[count++] = (char) a;
+            } else if ((a & 0xE0) == 0xC0 && buffer.position() < end) {
+                int b = buffer.get() & 0xFF;
+                chars[count++] = (char) (((a & 0x1F) << 6) | (b & 0x3F));
+            } else if ((a & 0xF0) == 0xE0 && buffer.position() + 1 < end) {
+                int b = buffer.get() & 0xFF;
+                int c = buffer.get() & 0xFF;
+                chars[count++] = (char) (((a & 0x0F) << 12) | ((b & 0x3F) << 6) | (c & 0x3F));
+            } else {
+                throw new UTFDataFormatException("Malformed input around byte " + buffer.position());
+            }
+        }
+        return new String(chars, 0, count);
+    }
+}
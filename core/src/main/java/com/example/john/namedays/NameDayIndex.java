@@ -0,0 +1,285 @@
+package com.example.john.namedays;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Calendar;
+
+/**
+ * A local (day, month, country) -> names table covering a whole (leap) year.
+ *
+ * The names are held in one flat array, indexed by {@code dayOfYear * Countries.COUNT + countryId},
+ * so that a lookup is a couple of integer operations and an array read. Names repeat across
+ * countries and days, so rather than a string of its own, each entry is the numbers of its names
+ * in a {@link NameDictionary}, which holds every distinct name once; and the entries lie back to
+ * back in one array of ints, rather than an array each.
+ *
+ * The index is either prebuilt and bundled with the app, or filled in from responses of the
+ * NameDays API as they arrive. It is stored as a {@link NameDaySnapshot}, which is mapped when the
+ * index is loaded, and read only as lookups miss the names put in the index since.
+ */
+final class NameDayIndex {
+
+    /**
+     * Visits the entries of an index
+     */
+    interface Visitor {
+        void visit(int dayOfYear, int countryId, String names);
+    }
+
+    static final int DAYS_IN_YEAR = 366;
+
+    /**
+     * Offset of the first day of each month, into a leap year
+     */
+    private static final int[] MONTH_OFFSETS = {0, 31, 60, 91, 121, 152, 182, 213, 244, 274, 305, 335};
+    private static final int[] MONTH_LENGTHS = {31, 29, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+
+    /**
+     * The entry of each slot: 1 plus its offset into refs, or 0 for slots without names
+     */
+    private final int[] entries = new int[DAYS_IN_YEAR * Countries.COUNT];
+    /**
+     * Entries back to back, each the count of its names, then the number of each in the
+     * dictionary. The room of an entry replaced by a longer one is not reused, since entries are
+     * rarely replaced
+     */
+    private int[] refs = new int[1024];
+    private int refsSize;
+    private final NameDictionary dictionary = new NameDictionary();
+    /**
+     * The names the index was loaded with, under those put since; or null
+     */
+    private final NameDaySnapshot base;
+    private int size;
+    private long builtAt;
+
+    NameDayIndex() {
+        base = null;
+        builtAt = System.currentTimeMillis();
+    }
+
+    private NameDayIndex(NameDaySnapshot base) {
+        this.base = base;
+        builtAt = base.builtAt();
+        size = base.size();
+    }
+
+    /**
+     * @param day The day of the month, starting at 1
+     * @param month The month, starting at 1
+     *
+     * @return The zero-based day of a leap year, or -1 if day and month do not denote a date
+     */
+    static int dayOfYear(int day, int month) {
+        if (month < 1 || month > 12 || day < 1 || day > MONTH_LENGTHS[month - 1]) {
+            return -1;
+        }
+        return MONTH_OFFSETS[month - 1] + day - 1;
+    }
+
+    /**
+     * @param dayOfYear The zero-based day of a leap year
+     *
+     * @return The month of the day, starting at 1
+     */
+    static int monthOf(int dayOfYear) {
+        int month = MONTH_OFFSETS.length;
+        while (month > 1 && MONTH_OFFSETS[month - 1] > dayOfYear) {
+            month--;
+        }
+        return month;
+    }
+
+    /**
+     * @param dayOfYear The zero-based day of a leap year
+     *
+     * @return The day of the month of the day, starting at 1
+     */
+    static int dayOf(int dayOfYear) {
+        return dayOfYear - MONTH_OFFSETS[monthOf(dayOfYear) - 1] + 1;
+    }
+
+    /**
+     * @return The names for the date in the calendar, or null if they are not in the index
+     */
+    String get(Calendar calendar, String country) {
+        return get(calendar.get(Calendar.DAY_OF_MONTH), calendar.get(Calendar.MONTH) + 1, country);
+    }
+
+    /**
+     * @param country A country key as used by the NameDays API, such as 'name_cz'
+     *
+     * @return The names for the day, month and country, or null if they are not in the index
+     */
+    synchronized String get(int day, int month, String country) {
+        int slot = slot(day, month, country);
+        return slot != -1 ? at(slot) : null;
+    }
+
+    private String at(int slot) {
+        int entry = entries[slot] - 1;
+        if (entry != -1) {
+            return dictionary.decode(refs, entry + 1, refs[entry]);
+        }
+        return base != null ? base.get(slot) : null;
+    }
+
+    /**
+     * @return The names of every country for the date, indexed by country id, with null for
+     * countries not known; or null if the date is not valid
+     */
+    synchronized String[] getAll(int day, int month) {
+        int dayOfYear = dayOfYear(day, month);
+
+        if (dayOfYear == -1) {
+            return null;
+        }
+        String[] row = new String[Countries.COUNT];
+        for (int id = 0; id < Countries.COUNT; id++) {
+            row[id] = at(dayOfYear * Countries.COUNT + id);
+        }
+        return row;
+    }
+
+    /**
+     * @return True if the names were stored
+     */
+    synchronized boolean put(int day, int month, String country, String nameDays) {
+        int slot = slot(day, month, country);
+
+        if (slot == -1 || nameDays == null) {
+            return false;
+        }
+        if (entries[slot] == 0 && (base == null || !base.has(slot))) {
+            size++;
+        }
+
+        int[] ids = dictionary.encode(nameDays);
+        int entry = entries[slot] - 1;
+        if (entry == -1 || refs[entry] < ids.length) {
+            entry = refsSize;
+            refsSize += 1 + ids.length;
+            if (refsSize > refs.length) {
+                refs = Arrays.copyOf(refs, Math.max(refs.length * 2, refsSize));
+            }
+            entries[slot] = entry + 1;
+        }
+        refs[entry] = ids.length;
+        System.arraycopy(ids, 0, refs, entry + 1, ids.length);
+        return true;
+    }
+
+    /**
+     * Visits every entry of the index, in order of day and then country
+     */
+    synchronized void forEach(Visitor visitor) {
+        for (int i = 0; i < entries.length; i++) {
+            String s = at(i);
+            if (s != null) {
+                visitor.visit(i / Countries.COUNT, i % Countries.COUNT, s);
+            }
+        }
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return How many distinct names have been put in the index since it was loaded
+     */
+    synchronized int distinctNames() {
+        return dictionary.size();
+    }
+
+    /**
+     * @return True if the index holds the names of every country for the day of the year
+     */
+    synchronized boolean hasDay(int dayOfYear) {
+        for (int i = dayOfYear * Countries.COUNT; i < (dayOfYear + 1) * Countries.COUNT; i++) {
+            if (at(i) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Marks the content of the index as fetched anew, at the time now
+     */
+    synchronized void markBuilt(long now) {
+        builtAt = now;
+    }
+
+    /**
+     * @return True if the index holds every day of the year for every country
+     */
+    synchronized boolean isComplete() {
+        return size == entries.length;
+    }
+
+    /**
+     * @param maxAgeMillis The age after which the content of the index is no longer trusted
+     */
+    synchronized boolean isStale(long now, long maxAgeMillis) {
+        return now - builtAt > maxAgeMillis;
+    }
+
+    private static int slot(int day, int month, String country) {
+        int dayOfYear = dayOfYear(day, month);
+        int countryId = Countries.idOfApiKey(country);
+
+        if (dayOfYear == -1 || countryId == -1) {
+            return -1;
+        }
+        return dayOfYear * Countries.COUNT + countryId;
+    }
+
+    /**
+     * Writes the index as a snapshot
+     */
+    synchronized void writeTo(OutputStream outputStream) throws IOException {
+        String[] all = new String[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            all[i] = at(i);
+        }
+        NameDaySnapshot.write(all, builtAt, outputStream);
+    }
+
+    /**
+     * Reads the whole snapshot in the stream into memory; mapping it with {@link #map} is
+     * cheaper, where there is a file
+     *
+     * @throws IOException If the stream does not hold a snapshot of this version and shape
+     */
+    static NameDayIndex readFrom(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * 1024);
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = inputStream.read(buffer)) != -1) {
+            bytes.write(buffer, 0, n);
+        }
+        return new NameDayIndex(NameDaySnapshot.wrap(ByteBuffer.wrap(bytes.toByteArray())));
+    }
+
+    /**
+     * Maps the snapshot in the file, which is decoded lazily, as it is looked up
+     *
+     * @throws IOException If the file does not hold a snapshot of this version and shape
+     */
+    static NameDayIndex map(File file) throws IOException {
+        return new NameDayIndex(NameDaySnapshot.map(file));
+    }
+
+    /**
+     * @return An index over the snapshot, such as one mapped from an asset
+     */
+    static NameDayIndex of(NameDaySnapshot snapshot) {
+        return new NameDayIndex(snapshot);
+    }
+}
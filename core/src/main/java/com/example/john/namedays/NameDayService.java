@@ -0,0 +1,267 @@
+package com.example.john.namedays;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Looks up name days asynchronously: from the cache when it has them, or else with a request
+ * through the transport, on the threads of a bounded request executor.
+ *
+ * Names that are out of date, but not too far, are answered at once, and refreshed in the
+ * background (stale while revalidate), so that the next lookup of them is up to date.
+ *
+ * The transport, the parser inside it and the cache are all supplied by the caller, so that the
+ * same engine runs in the app, against the NameDays API, and on a plain JVM, against a stub.
+ */
+final class NameDayService {
+
+    /**
+     * Names at hand, without a request. Called from any thread
+     */
+    interface Cache {
+        /**
+         * @return The names for the key, or null if there are none
+         */
+        NameDays get(ResponseCache.Key key);
+
+        /**
+         * @return The names for the key if they are out of date, but may be used while they are
+         * refreshed; null otherwise. Asked only when {@link #get} has none
+         */
+        NameDays getStale(ResponseCache.Key key);
+
+        /**
+         * Called on a request thread, with each response as it arrives, before any listener
+         */
+        void put(ResponseCache.Key key, NameDays nameDays);
+
+        /**
+         * Looks up the names in storage too slow to read on the thread of the lookup, such as on
+         * disk. Called on a request thread, before a request is made
+         *
+         * @return The names for the key, if they are stored and still fresh; null otherwise
+         */
+        NameDays load(ResponseCache.Key key);
+    }
+
+    /**
+     * A lookup in progress, which the listener may withdraw from
+     */
+    final class Lookup {
+        final ResponseCache.Key key;
+        private final RequestExecutor.Listener listener;
+
+        private Lookup(ResponseCache.Key key, RequestExecutor.Listener listener) {
+            this.key = key;
+            this.listener = listener;
+        }
+
+        /**
+         * The listener is not called for the lookup afterwards
+         */
+        void cancel() {
+            requestExecutor.cancel(key, listener);
+        }
+    }
+
+    private final class LookupFuture implements Future<NameDays>, RequestExecutor.Listener {
+        private final ResponseCache.Key key;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile NameDays result;
+        private volatile IOException error;
+        private volatile boolean cancelled;
+
+        LookupFuture(ResponseCache.Key key) {
+            this.key = key;
+        }
+
+        @Override
+        public void onResponse(ResponseCache.Key key, NameDays nameDays) {
+            result = nameDays;
+            done.countDown();
+        }
+
+        @Override
+        public void onFailure(ResponseCache.Key key, IOException e) {
+            error = e;
+            done.countDown();
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            if (isDone()) {
+                return false;
+            }
+            cancelled = true;
+            requestExecutor.cancel(key, this);
+            done.countDown();
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public boolean isDone() {
+            return done.getCount() == 0;
+        }
+
+        @Override
+        public NameDays get() throws InterruptedException, ExecutionException {
+            done.await();
+            return report();
+        }
+
+        @Override
+        public NameDays get(long timeout, TimeUnit unit)
+                throws InterruptedException, ExecutionException, TimeoutException {
+            if (!done.await(timeout, unit)) {
+                throw new TimeoutException("No response to " + key + " in " + timeout + " " + unit);
+            }
+            return report();
+        }
+
+        private NameDays report() throws ExecutionException {
+            if (cancelled) {
+                throw new CancellationException();
+            }
+            if (error != null) {
+                throw new ExecutionException(error);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Waits for refreshes, which no one else waits for
+     */
+    private static final RequestExecutor.Listener REFRESH_LISTENER =
+            new RequestExecutor.Listener() {
+                @Override
+                public void onResponse(ResponseCache.Key key, NameDays nameDays) {
+                }
+
+                @Override
+                public void onFailure(ResponseCache.Key key, IOException e) {
+                }
+            };
+
+    private final Cache cache;
+    private final RequestExecutor requestExecutor;
+    private final AtomicLong refreshes = new AtomicLong();
+
+    /**
+     * @param transport Fetches and parses the response to a request
+     * @param threads The most requests to run at the same time
+     * @param queueCapacity The most requests to hold, waiting for a thread, before rejecting more
+     */
+    NameDayService(final RequestExecutor.Fetcher transport, final Cache cache, int threads,
+                   int queueCapacity, Metrics metrics) {
+        this.cache = cache;
+        this.requestExecutor = new RequestExecutor(new RequestExecutor.Fetcher() {
+            @Override
+            public NameDays fetch(ResponseCache.Key key) throws IOException {
+                NameDays loaded = cache.load(key);
+                if (loaded != null) {
+                    return loaded;
+                }
+
+                NameDays nameDays = transport.fetch(key);
+                // Once, for every listener that shares the request; names fallen back to are
+                // older than the cache may already hold, and are not kept
+                if (!nameDays.fallback) {
+                    cache.put(key, nameDays);
+                }
+                return nameDays;
+            }
+        }, threads, queueCapacity, metrics);
+    }
+
+    /**
+     * Looks up the names for the key. If the cache has them, the listener is called before this
+     * returns, on the calling thread; otherwise it is called later, on a request thread
+     *
+     * @return The lookup, which may be cancelled while the request is in flight
+     *
+     * @throws RejectedExecutionException If too many requests are already waiting
+     */
+    Lookup lookup(ResponseCache.Key key, RequestExecutor.Listener listener) {
+        Lookup lookup = new Lookup(key, listener);
+        NameDays cached = cache.get(key);
+
+        if (cached != null) {
+            listener.onResponse(key, cached);
+            return lookup;
+        }
+
+        cached = cache.getStale(key);
+        if (cached != null) {
+            listener.onResponse(key, cached);
+            refresh(key);
+            return lookup;
+        }
+
+        requestExecutor.submit(key, listener);
+        return lookup;
+    }
+
+    /**
+     * Fetches the names for the key into the cache, in the background, unless they are already
+     * being fetched
+     */
+    private void refresh(ResponseCache.Key key) {
+        if (requestExecutor.isInFlight(key)) {
+            return;
+        }
+        try {
+            requestExecutor.submit(key, REFRESH_LISTENER);
+            refreshes.incrementAndGet();
+        } catch (RejectedExecutionException e) {
+            // The names will be refreshed by a later lookup
+        }
+    }
+
+    /**
+     * Looks up the names for the key, as a future that fails with the IOException of the request
+     *
+     * @throws RejectedExecutionException If too many requests are already waiting
+     */
+    Future<NameDays> lookup(ResponseCache.Key key) {
+        LookupFuture future = new LookupFuture(key);
+        lookup(key, future);
+        return future;
+    }
+
+    /**
+     * Joins the request for the key in flight, if there is one, so that the names are not fetched
+     * twice
+     *
+     * @return The names of the request, as a future that fails with its IOException; null if no
+     * request for the key is in flight
+     */
+    Future<NameDays> join(ResponseCache.Key key) {
+        LookupFuture future = new LookupFuture(key);
+        return requestExecutor.join(key, future) ? future : null;
+    }
+
+    /**
+     * @return True if no request is in flight
+     */
+    boolean isIdle() {
+        return requestExecutor.isIdle();
+    }
+
+    @Override
+    public String toString() {
+        return "NameDayService[refreshes=" + refreshes + ", " + requestExecutor + "]";
+    }
+}
@@ -0,0 +1,269 @@
+package com.example.john.namedays;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A read-only name day dataset in a compact binary format, which is mapped rather than read, and
+ * decoded lazily: opening one costs a check of its header, whatever its size, and a lookup
+ * decodes only the names it returns.
+ *
+ * Names repeat across countries and days, so each distinct name is stored once, in a string
+ * table, and every (day of year, country) slot is a list of the numbers of its names. The format
+ * is:
+ *
+ * <pre>
+ *     int    magic, "NDSS"
+ *     int    version
+ *     long   time the dataset was built, in millis
+ *     int    days (366)
+ *     int    countries, in the order of {@link Countries#CODES}
+ *     int    slots with names
+ *     int    names in the table
+ *     int[]  offset of each name, and of the end of the last, into the name data
+ *     int[]  offset of each row of references, and of the end of the last, into the references
+ *     byte[] name data: the UTF-8 bytes of every name, back to back
+ *     byte[] references: a row per day of year, holding per country a varint count of its
+ *            names, 0 for none, and a varint number of each
+ * </pre>
+ *
+ * The names of a slot are joined with ", " when it is read, as the NameDays API sends them. A row
+ * is at most a few bytes per name, so finding a slot is a read of the row offset and a short scan
+ * of its varints.
+ */
+final class NameDaySnapshot {
+
+    private static final int MAGIC = 0x4E445353; // "NDSS"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 32;
+
+    private final ByteBuffer buffer;
+    private final long builtAt;
+    private final int size;
+    private final int stringCount;
+    private final int stringOffsetsAt;
+    private final int rowOffsetsAt;
+    private final int stringsAt;
+    private final int refsAt;
+
+    private NameDaySnapshot(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+
+        try {
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("Not a name day snapshot, or an unsupported version");
+            }
+            builtAt = buffer.getLong(8);
+            if (buffer.getInt(16) != NameDayIndex.DAYS_IN_YEAR
+                    || buffer.getInt(20) != Countries.COUNT) {
+                throw new IOException("Name day snapshot does not match the supported countries");
+            }
+            size = buffer.getInt(24);
+            stringCount = buffer.getInt(28);
+            stringOffsetsAt = HEADER_SIZE;
+            rowOffsetsAt = stringOffsetsAt + 4 * (stringCount + 1);
+            stringsAt = rowOffsetsAt + 4 * (NameDayIndex.DAYS_IN_YEAR + 1);
+            refsAt = stringsAt + buffer.getInt(stringOffsetsAt + 4 * stringCount);
+
+            if (stringCount < 0 || refsAt + buffer.getInt(stringsAt - 4) != buffer.limit()) {
+                throw new IOException("Name day snapshot is truncated");
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Name day snapshot is truncated");
+        }
+    }
+
+    /**
+     * @param buffer The whole snapshot, from position 0 to its limit
+     *
+     * @throws IOException If the buffer does not hold a snapshot of this version and shape
+     */
+    static NameDaySnapshot wrap(ByteBuffer buffer) throws IOException {
+        return new NameDaySnapshot(buffer);
+    }
+
+    /**
+     * Maps the snapshot in the file. The mapping outlives the file, which may be replaced
+     */
+    static NameDaySnapshot map(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            return map(randomAccessFile.getChannel(), 0, randomAccessFile.length());
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Maps the snapshot at the offset into the channel, such as that of an uncompressed asset
+     */
+    static NameDaySnapshot map(FileChannel channel, long offset, long length) throws IOException {
+        return new NameDaySnapshot(channel.map(FileChannel.MapMode.READ_ONLY, offset, length));
+    }
+
+    long builtAt() {
+        return builtAt;
+    }
+
+    /**
+     * @param slot {@code dayOfYear * Countries.COUNT + countryId}
+     *
+     * @return The names in the slot, or null if there are none
+     */
+    String get(int slot) {
+        int[] at = {positionOf(slot)};
+        int count = readVarint(at);
+
+        if (count <= 1) {
+            return count == 0 ? null : name(readVarint(at));
+        }
+        StringBuilder names = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                names.append(NameDictionary.SEPARATOR);
+            }
+            names.append(name(readVarint(at)));
+        }
+        return names.toString();
+    }
+
+    /**
+     * @return True if the slot has names, without decoding them
+     */
+    boolean has(int slot) {
+        // A count of 0 is the single byte 0
+        return buffer.get(positionOf(slot)) != 0;
+    }
+
+    /**
+     * @return How many slots have names
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return Where the count of the names of the slot is in the buffer
+     */
+    private int positionOf(int slot) {
+        int dayOfYear = slot / Countries.COUNT;
+        int[] at = {refsAt + buffer.getInt(rowOffsetsAt + 4 * dayOfYear)};
+
+        for (int country = 0; country < slot % Countries.COUNT; country++) {
+            for (int count = readVarint(at); count > 0; count--) {
+                readVarint(at);
+            }
+        }
+        return at[0];
+    }
+
+    /**
+     * Reads the varint at the position, absolutely, so that lookups on several threads do not
+     * share one, and moves the position past it
+     */
+    private int readVarint(int[] at) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get(at[0]++);
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    /**
+     * Decodes the name anew on every lookup; the snapshot keeps no strings, since names kept for
+     * longer are kept by the search index
+     */
+    private String name(int number) {
+        int from = buffer.getInt(stringOffsetsAt + 4 * number);
+        int to = buffer.getInt(stringOffsetsAt + 4 * (number + 1));
+        byte[] bytes = new byte[to - from];
+
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(stringsAt + from + i);
+        }
+        try {
+            return new String(bytes, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Writes the names as a snapshot
+     *
+     * @param names The names of every slot, indexed by {@code dayOfYear * Countries.COUNT +
+     * countryId}; null for slots without names
+     */
+    static void write(String[] names, long builtAt, OutputStream outputStream) throws IOException {
+        if (names.length != NameDayIndex.DAYS_IN_YEAR * Countries.COUNT) {
+            throw new IllegalArgumentException("Not a slot for every day and country");
+        }
+
+        int size = 0;
+        NameDictionary dictionary = new NameDictionary();
+        ByteArrayOutputStream refs = new ByteArrayOutputStream(names.length * 2);
+        int[] rowOffsets = new int[NameDayIndex.DAYS_IN_YEAR + 1];
+
+        for (int slot = 0; slot < names.length; slot++) {
+            if (slot % Countries.COUNT == 0) {
+                rowOffsets[slot / Countries.COUNT] = refs.size();
+            }
+            if (names[slot] == null) {
+                writeVarint(refs, 0);
+                continue;
+            }
+            int[] ids = dictionary.encode(names[slot]);
+            writeVarint(refs, ids.length);
+            for (int id : ids) {
+                writeVarint(refs, id);
+            }
+            size++;
+        }
+        rowOffsets[NameDayIndex.DAYS_IN_YEAR] = refs.size();
+
+        DataOutputStream out = new DataOutputStream(outputStream);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(builtAt);
+        out.writeInt(NameDayIndex.DAYS_IN_YEAR);
+        out.writeInt(Countries.COUNT);
+        out.writeInt(size);
+        out.writeInt(dictionary.size());
+
+        byte[][] strings = new byte[dictionary.size()][];
+        int offset = 0;
+        for (int id = 0; id < strings.length; id++) {
+            strings[id] = dictionary.name(id).getBytes("UTF-8");
+            out.writeInt(offset);
+            offset += strings[id].length;
+        }
+        out.writeInt(offset);
+        for (int rowOffset : rowOffsets) {
+            out.writeInt(rowOffset);
+        }
+        for (byte[] string : strings) {
+            out.write(string);
+        }
+        refs.writeTo(out);
+        out.flush();
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+}
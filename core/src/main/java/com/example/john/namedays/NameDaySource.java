@@ -0,0 +1,36 @@
+package com.example.john.namedays;
+
+import java.io.IOException;
+
+/**
+ * A provider of name days: the NameDays API, the local index of it, or a data pack of names from
+ * elsewhere. Countries are ISO 3166 alpha-2 codes, in upper case, whatever the provider calls
+ * them, so that a provider is not tied to the countries of the API.
+ */
+interface NameDaySource {
+
+    /**
+     * @return A short name of the source, for stats and logs
+     */
+    String name();
+
+    /**
+     * @return True if the source may have names for the country; answered without a lookup
+     */
+    boolean covers(String countryCode);
+
+    /**
+     * @return True if lookups go to the network, and may block for as long as a request
+     */
+    boolean isRemote();
+
+    /**
+     * @param day The day of the month, starting at 1
+     * @param month The month, starting at 1
+     *
+     * @return The names for the date and country, or null if the source does not have them
+     *
+     * @throws IOException If the source failed to answer
+     */
+    String lookup(int day, int month, String countryCode) throws IOException;
+}
@@ -0,0 +1,57 @@
+package com.example.john.namedays;
+
+/**
+ * The names celebrated in one country, on one day of the year, as parsed from the NameDays API
+ */
+final class NameDays {
+    final String names;
+    final int day;
+    final int month;
+
+    /**
+     * The names celebrated on the same day in every country that the response held, indexed by
+     * country id; null if only the one country is known
+     */
+    final String[] allCountries;
+
+    /**
+     * What the response that the names came from said about its freshness; never null
+     */
+    final Validators validators;
+
+    /**
+     * True if the names were not fetched, but are older names that a failed fetch fell back to,
+     * which are not to be cached as fresh
+     */
+    final boolean fallback;
+
+    NameDays(String names, int day, int month) {
+        this(names, day, month, null);
+    }
+
+    NameDays(String names, int day, int month, String[] allCountries) {
+        this(names, day, month, allCountries, Validators.NONE);
+    }
+
+    NameDays(String names, int day, int month, String[] allCountries, Validators validators) {
+        this(names, day, month, allCountries, validators, false);
+    }
+
+    private NameDays(String names, int day, int month, String[] allCountries,
+                     Validators validators, boolean fallback) {
+        this.names = names;
+        this.day = day;
+        this.month = month;
+        this.allCountries = allCountries;
+        this.validators = validators;
+        this.fallback = fallback;
+    }
+
+    NameDays withValidators(Validators validators) {
+        return new NameDays(names, day, month, allCountries, validators, fallback);
+    }
+
+    NameDays asFallback() {
+        return new NameDays(names, day, month, allCountries, validators, true);
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.john.namedays;
+
+import java.io.IOException;
+
+/**
+ * Reads a response of the NameDays API as it streams in, reading only the names of the supported
+ * countries and the day and month out of the 'data' object, and skipping everything else. Neither
+ * the whole body nor a tree of it is ever held in memory.
+ *
+ * The JSON is read through {@link Json}, which android.util.JsonReader in the app, and Gson's
+ * JsonReader on the JVM, are adapted to; they share their API, so the parsing is the same
+ * wherever it runs, and is tested on the JVM.
+ */
+final class NameDaysReader {
+
+    enum Token {
+        BEGIN_OBJECT,
+        STRING,
+        NULL,
+        /**
+         * Any other token, which the reader only skips
+         */
+        OTHER
+    }
+
+    /**
+     * The methods of a streaming JSON reader that the reader uses. Each may throw
+     * IllegalStateException where the JSON is not shaped as the method expects
+     */
+    interface Json {
+        void beginObject() throws IOException;
+
+        boolean hasNext() throws IOException;
+
+        String nextName() throws IOException;
+
+        Token peek() throws IOException;
+
+        String nextString() throws IOException;
+
+        /**
+         * @throws NumberFormatException If the value is not a number
+         */
+        int nextInt() throws IOException;
+
+        void skipValue() throws IOException;
+    }
+
+    private NameDaysReader() {
+    }
+
+    /**
+     * @param country The NameDays API key of the country that must be in the response, such as
+     * 'name_cz'; or null to answer with the names of every country only
+     *
+     * @throws ParseException If the response is not shaped as a response of the API
+     * @throws MissingCountryException If it has no names for the country
+     */
+    static NameDays read(Json json, String country) throws IOException {
+        try {
+            json.beginObject();
+            while (json.hasNext()) {
+                if ("data".equals(json.nextName())) {
+                    if (json.peek() != Token.BEGIN_OBJECT) {
+                        break;
+                    }
+                    return readData(json, country);
+                }
+                json.skipValue();
+            }
+            throw new ParseException("Value corresponding to key: 'data' is not a JSON object");
+
+        } catch (IllegalStateException e) {
+            // Thrown by the reader when the body is not shaped as expected
+            throw new ParseException("Unable to make json object");
+        }
+    }
+
+    private static NameDays readData(Json json, String country) throws IOException {
+        String[] allCountries = new String[Countries.COUNT];
+        int day = -1, month = -1;
+
+        json.beginObject();
+        while (json.hasNext()) {
+            String name = json.nextName();
+            int countryId = Countries.idOfApiKey(name);
+
+            if (countryId != -1 && json.peek() == Token.STRING) {
+                allCountries[countryId] = json.nextString();
+            } else if (name.equals("day") && json.peek() != Token.NULL) {
+                day = readInt(json);
+            } else if (name.equals("month") && json.peek() != Token.NULL) {
+                month = readInt(json);
+            } else {
+                json.skipValue();
+            }
+        }
+
+        if (NameDayIndex.dayOfYear(day, month) == -1) {
+            throw new ParseException("Unable to read days or months fields");
+        }
+        if (country == null) {
+            return new NameDays(null, day, month, allCountries);
+        }
+        int countryId = Countries.idOfApiKey(country);
+        if (countryId == -1 || allCountries[countryId] == null) {
+            throw new MissingCountryException("No name days for country: '" + country + "'");
+        }
+        return new NameDays(allCountries[countryId], day, month, allCountries);
+    }
+
+    private static int readInt(Json json) throws IOException {
+        try {
+            return json.nextInt();
+        } catch (NumberFormatException e) {
+            throw new ParseException("Unable to read days or months fields");
+        }
+    }
+}
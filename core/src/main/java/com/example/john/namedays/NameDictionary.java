@@ -0,0 +1,178 @@
+package com.example.john.namedays;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+
+/**
+ * Every distinct name held in memory, stored once, and numbered, so that the names of a day are
+ * a small array of numbers rather than a string of their own.
+ *
+ * The names are UTF-8 bytes, back to back in one pool, with the offset of each in another array;
+ * there is no object per name. A hash table of numbers, probed linearly, finds the number of a
+ * name already in the pool. Names are never removed, since they are few and mostly reused.
+ *
+ * Not thread safe; guarded by its owner.
+ */
+final class NameDictionary {
+
+    /**
+     * Between the names of an entry, as the NameDays API sends them
+     */
+    static final String SEPARATOR = ", ";
+
+    private byte[] pool = new byte[4096];
+    private int poolSize;
+    /**
+     * Offset of each name into the pool, and of the end of the last
+     */
+    private int[] offsets = new int[257];
+    private int count;
+    /**
+     * Number of each name plus one, at its hash; 0 for empty
+     */
+    private int[] table = new int[512];
+
+    /**
+     * @return The numbers of the names in the entry, such as "Aune, Oona"
+     */
+    int[] encode(String names) {
+        int count = 1;
+        for (int at = names.indexOf(SEPARATOR); at != -1;
+             at = names.indexOf(SEPARATOR, at + SEPARATOR.length())) {
+            count++;
+        }
+
+        int[] ids = new int[count];
+        int from = 0;
+        for (int i = 0; i < count; i++) {
+            int to = i < count - 1 ? names.indexOf(SEPARATOR, from) : names.length();
+            ids[i] = intern(names.substring(from, to));
+            from = to + SEPARATOR.length();
+        }
+        return ids;
+    }
+
+    /**
+     * @param from Where the numbers of the names start in the array
+     * @param count How many names there are
+     *
+     * @return The entry whose names have the numbers, exactly as it was encoded
+     */
+    String decode(int[] ids, int from, int count) {
+        if (count == 1) {
+            return name(ids[from]);
+        }
+        StringBuilder names = new StringBuilder();
+        for (int i = from; i < from + count; i++) {
+            if (i > from) {
+                names.append(SEPARATOR);
+            }
+            names.append(name(ids[i]));
+        }
+        return names.toString();
+    }
+
+    /**
+     * @return The number of the name, which is added if it is new
+     */
+    int intern(String name) {
+        byte[] bytes = utf8(name);
+        int mask = table.length - 1;
+
+        for (int at = hash(bytes) & mask; ; at = (at + 1) & mask) {
+            int id = table[at] - 1;
+
+            if (id == -1) {
+                id = add(bytes);
+                table[at] = id + 1;
+                // At most three quarters full, so that probes stay short
+                if (count * 4 > table.length * 3) {
+                    rehash();
+                }
+                return id;
+            }
+            if (equals(id, bytes)) {
+                return id;
+            }
+        }
+    }
+
+    String name(int id) {
+        try {
+            return new String(pool, offsets[id], offsets[id + 1] - offsets[id], "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * @return How many distinct names are held
+     */
+    int size() {
+        return count;
+    }
+
+    private int add(byte[] bytes) {
+        if (poolSize + bytes.length > pool.length) {
+            pool = Arrays.copyOf(pool, Math.max(pool.length * 2, poolSize + bytes.length));
+        }
+        System.arraycopy(bytes, 0, pool, poolSize, bytes.length);
+        poolSize += bytes.length;
+
+        if (count + 2 > offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        offsets[count + 1] = poolSize;
+        return count++;
+    }
+
+    private boolean equals(int id, byte[] bytes) {
+        int from = offsets[id];
+        if (offsets[id + 1] - from != bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (pool[from + i] != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rehash() {
+        int[] rehashed = new int[table.length * 2];
+        int mask = rehashed.length - 1;
+
+        for (int id = 0; id < count; id++) {
+            int at = hash(pool, offsets[id], offsets[id + 1]) & mask;
+            while (rehashed[at] != 0) {
+                at = (at + 1) & mask;
+            }
+            rehashed[at] = id + 1;
+        }
+        table = rehashed;
+    }
+
+    private static int hash(byte[] bytes) {
+        return hash(bytes, 0, bytes.length);
+    }
+
+    /**
+     * FNV-1a, which spreads short strings well enough for a table indexed by its low bits
+     */
+    private static int hash(byte[] bytes, int from, int to) {
+        int hash = 0x811C9DC5;
+        for (int i = from; i < to; i++) {
+            hash = (hash ^ (bytes[i] & 0xFF)) * 0x01000193;
+        }
+        return hash;
+    }
+
+    private static byte[] utf8(String s) {
+        try {
+            return s.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
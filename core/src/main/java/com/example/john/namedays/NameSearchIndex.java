@@ -0,0 +1,190 @@
+package com.example.john.namedays;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * An inverted index from names to the days of the year they are celebrated on, per country.
+ *
+ * Names are folded into tokens: lower case, without diacritics, so that 'Šárka' is found by
+ * 'sarka' and 'Łukasz' by 'lukasz'. Each distinct token is interned once, and maps to one sorted
+ * array of (zero-based) days of a leap year per country. Tokens are kept in order, so that a
+ * prefix query is a range of the sorted map rather than a scan.
+ *
+ * The index is filled in as names arrive, a day and a country at a time.
+ */
+final class NameSearchIndex {
+
+    /**
+     * A name, and the days it is celebrated on in one country
+     */
+    static final class Match {
+        /**
+         * The name as first seen, with its diacritics
+         */
+        final String name;
+        /**
+         * Zero-based days of a leap year, in order
+         */
+        final int[] daysOfYear;
+
+        Match(String name, int[] daysOfYear) {
+            this.name = name;
+            this.daysOfYear = daysOfYear;
+        }
+    }
+
+    private static final int[] NO_DAYS = new int[0];
+
+    private static final class Postings {
+        final String displayName;
+        final int[][] days = new int[Countries.COUNT][];
+        final int[] sizes = new int[Countries.COUNT];
+
+        Postings(String displayName) {
+            this.displayName = displayName;
+        }
+
+        /**
+         * Inserts the day in order, once
+         */
+        void add(int countryId, int dayOfYear) {
+            int[] list = days[countryId];
+            int size = sizes[countryId];
+
+            if (list == null) {
+                list = days[countryId] = new int[2];
+            }
+            int at = Arrays.binarySearch(list, 0, size, dayOfYear);
+            if (at >= 0) {
+                return;
+            }
+            at = -at - 1;
+
+            if (size == list.length) {
+                list = days[countryId] = Arrays.copyOf(list, size * 2);
+            }
+            System.arraycopy(list, at, list, at + 1, size - at);
+            list[at] = dayOfYear;
+            sizes[countryId] = size + 1;
+        }
+
+        int[] get(int countryId) {
+            return days[countryId] != null ? Arrays.copyOf(days[countryId], sizes[countryId]) : NO_DAYS;
+        }
+    }
+
+    private final TreeMap<String, Postings> tokens = new TreeMap<>();
+
+    /**
+     * Folded forms of names seen before, so that each is folded once
+     */
+    private final Map<String, String> folded = new HashMap<>();
+
+    /**
+     * Adds the names celebrated on a day in a country
+     *
+     * @param names The names, separated by commas, as sent by the NameDays API
+     */
+    synchronized void add(int dayOfYear, int countryId, String names) {
+        if (dayOfYear < 0 || countryId < 0 || names == null) {
+            return;
+        }
+
+        for (String name : names.split(",")) {
+            name = name.trim();
+            if (name.isEmpty() || name.equals("-")) {
+                continue;
+            }
+
+            String token = folded.get(name);
+            if (token == null) {
+                token = fold(name).intern();
+                folded.put(name.intern(), token);
+            }
+
+            Postings postings = tokens.get(token);
+            if (postings == null) {
+                postings = new Postings(name);
+                tokens.put(token, postings);
+            }
+            postings.add(countryId, dayOfYear);
+        }
+    }
+
+    /**
+     * @return The names starting with the prefix that are celebrated in the country, in
+     * alphabetical order of their folded form
+     */
+    synchronized List<Match> search(String prefix, int countryId, int limit) {
+        List<Match> matches = new ArrayList<>();
+        String from = fold(prefix.trim());
+
+        if (from.isEmpty() || countryId < 0) {
+            return matches;
+        }
+
+        SortedMap<String, Postings> range = tokens.tailMap(from);
+        for (Map.Entry<String, Postings> entry : range.entrySet()) {
+            if (!entry.getKey().startsWith(from) || matches.size() >= limit) {
+                break;
+            }
+            int[] days = entry.getValue().get(countryId);
+            if (days.length > 0) {
+                matches.add(new Match(entry.getValue().displayName, days));
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * @return The number of distinct names
+     */
+    synchronized int size() {
+        return tokens.size();
+    }
+
+    /**
+     * Folds the name to lower case, without diacritics
+     */
+    static String fold(String name) {
+        String decomposed = Normalizer.normalize(name.toLowerCase(Locale.ROOT), Normalizer.Form.NFD);
+        StringBuilder token = new StringBuilder(decomposed.length());
+
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            // Letters with strokes do not decompose
+            switch (c) {
+                case '\u0142': // ł
+                    token.append('l');
+                    break;
+                case '\u0111': // đ
+                    token.append('d');
+                    break;
+                case '\u00F8': // ø
+                    token.append('o');
+                    break;
+                case '\u00DF': // ß
+                    token.append("ss");
+                    break;
+                case '\u00E6': // æ
+                    token.append("ae");
+                    break;
+                default:
+                    token.append(c);
+            }
+        }
+        return token.toString();
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.john.namedays;
+
+import java.io.IOException;
+
+/**
+ * The body of a response is not what the NameDays API sends
+ */
+class ParseException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    ParseException(String message) {
+        super(message);
+    }
+}
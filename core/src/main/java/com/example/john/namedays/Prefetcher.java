@@ -0,0 +1,158 @@
+package com.example.john.namedays;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Calendar;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Fetches the days around the last one looked up, in the background, so that stepping to a
+ * nearby date is answered locally.
+ *
+ * Prefetches run one at a time on a single low priority thread, no faster than a minimum interval
+ * apart, and only while no request made by the user is in flight. Scheduling around a new date
+ * cancels the prefetches still planned around the old one.
+ */
+final class Prefetcher {
+
+    /**
+     * Where prefetched names come from and go to
+     */
+    interface Store {
+        /**
+         * @return True if the names for the key are already at hand, and need not be fetched
+         */
+        boolean contains(ResponseCache.Key key);
+
+        /**
+         * Called on the prefetch thread
+         */
+        void store(ResponseCache.Key key, NameDays nameDays);
+    }
+
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    private final RequestExecutor.Fetcher fetcher;
+    private final NameDayService service;
+    private final Store store;
+    private final int radiusDays;
+    private final long minIntervalMillis;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            // Cancelling a prefetch also closes its connection, rather than waiting for its read
+            // to time out
+            Thread thread = new CancellableThread(runnable, "Prefetch Thread");
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    });
+
+    private Future<?> plan;
+    private long prefetched, failed;
+
+    /**
+     * @param service The service of lookups made by the user, which prefetches yield to
+     * @param radiusDays How many days to prefetch before and after the day looked up
+     * @param minIntervalMillis The least time between the starts of two prefetches
+     */
+    Prefetcher(RequestExecutor.Fetcher fetcher, NameDayService service, Store store,
+               int radiusDays, long minIntervalMillis) {
+        this.fetcher = fetcher;
+        this.service = service;
+        this.store = store;
+        this.radiusDays = radiusDays;
+        this.minIntervalMillis = minIntervalMillis;
+    }
+
+    /**
+     * Plans prefetches of the days around the day and month, nearest first, in place of any
+     * prefetches still planned
+     */
+    synchronized void schedule(final int day, final int month, final String country) {
+        cancel();
+
+        plan = executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                prefetchAround(day, month, country);
+            }
+        });
+    }
+
+    synchronized void cancel() {
+        if (plan != null) {
+            plan.cancel(true);
+            plan = null;
+        }
+    }
+
+    private void prefetchAround(int day, int month, String country) {
+        Calendar calendar = Calendar.getInstance();
+        // A leap year, so that the 29th of February has neighbours
+        calendar.clear();
+        calendar.set(2000, month - 1, day);
+        long last = 0;
+
+        for (int distance = 1; distance <= radiusDays; distance++) {
+            for (int sign = 1; sign >= -1; sign -= 2) {
+                Calendar date = (Calendar) calendar.clone();
+                date.add(Calendar.DAY_OF_MONTH, sign * distance);
+
+                ResponseCache.Key key = new ResponseCache.Key("namedays",
+                        date.get(Calendar.DAY_OF_MONTH), date.get(Calendar.MONTH) + 1, country);
+
+                if (store.contains(key)) {
+                    continue;
+                }
+
+                try {
+                    last = awaitTurn(last);
+                    store.store(key, fetcher.fetch(key));
+                    countPrefetch(true);
+                } catch (InterruptedException | InterruptedIOException e) {
+                    return;
+                } catch (IOException e) {
+                    countPrefetch(false);
+                }
+
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits out the minimum interval since the last prefetch, and for the user's requests to finish
+     *
+     * @return The time the next prefetch starts
+     */
+    private long awaitTurn(long last) throws InterruptedException {
+        long wait = last + minIntervalMillis - System.currentTimeMillis();
+        if (wait > 0) {
+            Thread.sleep(wait);
+        }
+        while (!service.isIdle()) {
+            Thread.sleep(IDLE_POLL_MILLIS);
+        }
+        return System.currentTimeMillis();
+    }
+
+    private synchronized void countPrefetch(boolean succeeded) {
+        if (succeeded) {
+            prefetched++;
+        } else {
+            failed++;
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "Prefetcher[prefetched=" + prefetched + ", failed=" + failed + "]";
+    }
+}
@@ -0,0 +1,255 @@
+package com.example.john.namedays;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Looks up the name days of every date in a range, for a set of countries.
+ *
+ * Dates already known locally, for all of the countries, are answered without a request. The
+ * rest are fetched on a pool of a bounded number of threads; since one response of the NameDays
+ * API holds every country, each date costs at most one request. A date the user is already
+ * looking up joins that request, rather than making its own. Results are passed to the
+ * listener as they arrive, in no particular order, and a failure of one date does not stop the
+ * others.
+ */
+final class RangeQuery {
+
+    /**
+     * Answers lookups from what is already known locally, and keeps what is fetched
+     */
+    interface Lookup {
+        /**
+         * @return The names for the day, month and country, or null if they are not known
+         */
+        String find(int day, int month, String country);
+
+        /**
+         * Called on the threads of the query
+         */
+        void store(ResponseCache.Key key, NameDays nameDays);
+    }
+
+    /**
+     * Called on the threads of the query
+     */
+    interface Listener {
+        /**
+         * @param names The names for each of the countries asked for, in the same order
+         */
+        void onResult(int day, int month, String[] names);
+
+        void onFailure(int day, int month, IOException e);
+
+        /**
+         * Called once, after every date has either a result or a failure, unless cancelled
+         */
+        void onComplete(int succeeded, int failed);
+    }
+
+    /**
+     * A query in progress
+     */
+    static final class Handle {
+        private final List<Future<?>> futures = new ArrayList<>();
+        private volatile boolean cancelled;
+
+        /**
+         * Stops fetching the dates not yet fetched. The listener is not called afterwards
+         */
+        synchronized void cancel() {
+            cancelled = true;
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+        }
+
+        boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    private final RequestExecutor.Fetcher fetcher;
+    private final NameDayService service;
+    private final Lookup lookup;
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * @param fetcher Fetches the dates, at the priority of work in the background
+     * @param service The service of lookups made by the user, whose requests in flight are joined
+     * @param parallelism The most requests to make at the same time, across all queries
+     */
+    RangeQuery(RequestExecutor.Fetcher fetcher, NameDayService service, Lookup lookup,
+               int parallelism) {
+        this.fetcher = fetcher;
+        this.service = service;
+        this.lookup = lookup;
+
+        final AtomicInteger count = new AtomicInteger();
+        executor = new ThreadPoolExecutor(parallelism, parallelism, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        return new CancellableThread(runnable,
+                                "Range Thread " + count.incrementAndGet());
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Looks up every day of the month, in a leap year
+     */
+    Handle month(int month, String[] countries, Listener listener) {
+        Calendar from = Calendar.getInstance();
+        from.clear();
+        from.set(2000, month - 1, 1);
+
+        Calendar to = (Calendar) from.clone();
+        to.set(Calendar.DAY_OF_MONTH, from.getActualMaximum(Calendar.DAY_OF_MONTH));
+
+        return range(from, to, countries, listener);
+    }
+
+    /**
+     * Looks up the seven days starting on the day and month
+     */
+    Handle week(int day, int month, String[] countries, Listener listener) {
+        Calendar from = Calendar.getInstance();
+        from.clear();
+        from.set(2000, month - 1, day);
+
+        Calendar to = (Calendar) from.clone();
+        to.add(Calendar.DAY_OF_MONTH, 6);
+
+        return range(from, to, countries, listener);
+    }
+
+    /**
+     * Looks up every date from one to the other, both included. Only the day and month of the
+     * dates are used, so a range may not be more than a year long
+     *
+     * @param countries NameDays API country keys, such as 'name_cz'
+     */
+    Handle range(Calendar from, Calendar to, final String[] countries, final Listener listener) {
+        final Handle handle = new Handle();
+
+        List<int[]> dates = new ArrayList<>();
+        Calendar date = (Calendar) from.clone();
+        while (!date.after(to) && dates.size() < NameDayIndex.DAYS_IN_YEAR) {
+            dates.add(new int[]{date.get(Calendar.DAY_OF_MONTH), date.get(Calendar.MONTH) + 1});
+            date.add(Calendar.DAY_OF_MONTH, 1);
+        }
+
+        final AtomicInteger remaining = new AtomicInteger(dates.size());
+        final AtomicInteger succeeded = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+
+        if (dates.isEmpty()) {
+            listener.onComplete(0, 0);
+            return handle;
+        }
+
+        synchronized (handle) {
+            for (final int[] dayAndMonth : dates) {
+                handle.futures.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (handle.isCancelled()) {
+                            return;
+                        }
+                        if (lookUp(dayAndMonth[0], dayAndMonth[1], countries, handle, listener)) {
+                            succeeded.incrementAndGet();
+                        } else {
+                            failed.incrementAndGet();
+                        }
+                        if (remaining.decrementAndGet() == 0 && !handle.isCancelled()) {
+                            listener.onComplete(succeeded.get(), failed.get());
+                        }
+                    }
+                }));
+            }
+        }
+        return handle;
+    }
+
+    /**
+     * @return False if the date failed
+     */
+    private boolean lookUp(int day, int month, String[] countries, Handle handle,
+                           Listener listener) {
+        String[] names = new String[countries.length];
+        boolean known = true;
+
+        for (int i = 0; i < countries.length; i++) {
+            names[i] = lookup.find(day, month, countries[i]);
+            known &= names[i] != null;
+        }
+
+        if (!known) {
+            try {
+                ResponseCache.Key key = new ResponseCache.Key("namedays", day, month, countries[0]);
+                NameDays fetched = fetch(key);
+
+                for (int i = 0; i < countries.length; i++) {
+                    int id = Countries.idOfApiKey(countries[i]);
+                    if (fetched.allCountries != null && id != -1) {
+                        names[i] = fetched.allCountries[id];
+                    } else if (i == 0) {
+                        names[i] = fetched.names;
+                    }
+                }
+            } catch (IOException e) {
+                if (!handle.isCancelled()) {
+                    listener.onFailure(day, month, e);
+                }
+                return false;
+            }
+        }
+
+        if (!handle.isCancelled()) {
+            listener.onResult(day, month, names);
+        }
+        return true;
+    }
+
+    /**
+     * Joins the lookup of the key in flight in the service, if there is one, or else fetches it
+     *
+     * @throws InterruptedIOException If the query is cancelled while it waits
+     */
+    private NameDays fetch(ResponseCache.Key key) throws IOException {
+        Future<NameDays> inFlight = service.join(key);
+
+        if (inFlight == null) {
+            NameDays nameDays = fetcher.fetch(key);
+            lookup.store(key, nameDays);
+            return nameDays;
+        }
+
+        // The service keeps what it fetches
+        try {
+            return inFlight.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            inFlight.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Cancelled");
+        }
+    }
+}
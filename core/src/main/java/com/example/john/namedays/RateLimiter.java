@@ -0,0 +1,266 @@
+package com.example.john.namedays;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the requests of the app to the NameDays API within a budget, so that bursts of taps,
+ * prefetches and syncs do not get it throttled by an API shared with every other client.
+ *
+ * Interactive and background requests each have a token bucket: a request takes a token, and
+ * tokens are refilled at a steady rate, up to a burst. Interactive requests may borrow from the
+ * background budget once their own is spent; background requests never borrow. Requests that find
+ * no token wait in line for one, interactive ones first, and each class in order of arrival, or
+ * are rejected at once if they would wait longer than the most allowed for their class.
+ *
+ * When the API answers 429 Too Many Requests, or with a Retry-After, every request waits for as
+ * long as it asks, before the next is made.
+ */
+final class RateLimiter {
+
+    enum Priority {
+        /**
+         * Lookups that the user waits for
+         */
+        INTERACTIVE,
+        /**
+         * Prefetches, months and syncs, which no one waits for
+         */
+        BACKGROUND
+    }
+
+    /**
+     * The request was not made, since it would wait too long for the budget
+     */
+    static final class RateLimitedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        RateLimitedException() {
+            super("Too many requests to NameDays API, please try again shortly");
+        }
+    }
+
+    private static final class Bucket {
+        final double tokensPerNano;
+        final double burst;
+        double tokens;
+        long refilledAt;
+
+        Bucket(double tokensPerSecond, int burst) {
+            this.tokensPerNano = tokensPerSecond / TimeUnit.SECONDS.toNanos(1);
+            this.burst = burst;
+            this.tokens = burst;
+            this.refilledAt = System.nanoTime();
+        }
+
+        void refill(long now) {
+            tokens = Math.min(burst, tokens + (now - refilledAt) * tokensPerNano);
+            refilledAt = now;
+        }
+
+        long nanosUntilToken() {
+            return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / tokensPerNano);
+        }
+    }
+
+    /**
+     * How long requests wait after a 429 that does not say
+     */
+    static final long DEFAULT_RETRY_AFTER_MILLIS = 1000;
+
+    /**
+     * Returned by {@link #nanosUntilTurn} while a request is behind others in line
+     */
+    private static final long BEHIND = -1;
+
+    private final Bucket interactive;
+    private final Bucket background;
+    private final long interactiveMaxWaitNanos;
+    private final long backgroundMaxWaitNanos;
+
+    /**
+     * Tickets of the requests waiting, in order of arrival
+     */
+    private final ArrayDeque<Object> interactiveLine = new ArrayDeque<>();
+    private final ArrayDeque<Object> backgroundLine = new ArrayDeque<>();
+
+    /**
+     * No request is made before this time, in nanos, after the API asked to slow down
+     */
+    private long pausedUntil = System.nanoTime();
+
+    private final long[] allowed = new long[2];
+    private final long[] delayed = new long[2];
+    private final long[] rejected = new long[2];
+    private long throttled;
+
+    /**
+     * @param interactivePerSecond The steady rate of interactive requests
+     * @param interactiveBurst The most interactive requests made at once, after a quiet spell
+     * @param interactiveMaxWaitMillis The most time an interactive request waits for the budget
+     * @param backgroundPerSecond The steady rate of background requests
+     * @param backgroundBurst The most background requests made at once, after a quiet spell
+     * @param backgroundMaxWaitMillis The most time a background request waits for the budget
+     */
+    RateLimiter(double interactivePerSecond, int interactiveBurst, long interactiveMaxWaitMillis,
+                double backgroundPerSecond, int backgroundBurst, long backgroundMaxWaitMillis) {
+        interactive = new Bucket(interactivePerSecond, interactiveBurst);
+        background = new Bucket(backgroundPerSecond, backgroundBurst);
+        interactiveMaxWaitNanos = TimeUnit.MILLISECONDS.toNanos(interactiveMaxWaitMillis);
+        backgroundMaxWaitNanos = TimeUnit.MILLISECONDS.toNanos(backgroundMaxWaitMillis);
+    }
+
+    /**
+     * @return A fetcher that makes each request through the delegate within the budget of the
+     * priority, and pauses every request when the API asks to slow down
+     */
+    RequestExecutor.Fetcher limit(final RequestExecutor.Fetcher delegate,
+                                  final Priority priority) {
+        return new RequestExecutor.Fetcher() {
+            @Override
+            public NameDays fetch(ResponseCache.Key key) throws IOException {
+                acquire(priority);
+                try {
+                    return delegate.fetch(key);
+                } catch (ApiClient.StatusException e) {
+                    if (e.status == 429 || e.retryAfterMillis > 0) {
+                        pause(e.retryAfterMillis > 0 ? e.retryAfterMillis
+                                : DEFAULT_RETRY_AFTER_MILLIS);
+                    }
+                    throw e;
+                }
+            }
+        };
+    }
+
+    /**
+     * Waits for the budget of the priority to allow a request, and takes it
+     *
+     * @throws RateLimitedException If the request would wait longer than allowed
+     * @throws InterruptedIOException If the thread is interrupted while it waits
+     */
+    void acquire(Priority priority) throws IOException {
+        Object ticket = new Object();
+        ArrayDeque<Object> line = priority == Priority.INTERACTIVE ? interactiveLine
+                : backgroundLine;
+        int p = priority.ordinal();
+        long deadline = System.nanoTime() + (priority == Priority.INTERACTIVE
+                ? interactiveMaxWaitNanos : backgroundMaxWaitNanos);
+        boolean waited = false;
+
+        synchronized (this) {
+            line.add(ticket);
+            try {
+                while (true) {
+                    long now = System.nanoTime();
+                    long waitNanos = nanosUntilTurn(priority, ticket, now);
+
+                    if (waitNanos == 0) {
+                        take(priority);
+                        allowed[p]++;
+                        if (waited) {
+                            delayed[p]++;
+                        }
+                        return;
+                    }
+                    // Known to be too long, or too long already
+                    long left = deadline - now;
+                    if (left <= 0 || waitNanos > left) {
+                        rejected[p]++;
+                        throw new RateLimitedException();
+                    }
+
+                    waited = true;
+                    // Behind others, it waits to be woken when the one ahead is done
+                    TimeUnit.NANOSECONDS.timedWait(this, waitNanos == BEHIND ? left : waitNanos);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Cancelled");
+            } finally {
+                line.remove(ticket);
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * @return 0 if the request may be made now, the time until it may be if it is first in line,
+     * or {@link #BEHIND}
+     */
+    private long nanosUntilTurn(Priority priority, Object ticket, long now) {
+        if (priority == Priority.INTERACTIVE) {
+            if (interactiveLine.peek() != ticket) {
+                return BEHIND;
+            }
+        } else if (backgroundLine.peek() != ticket || !interactiveLine.isEmpty()) {
+            return BEHIND;
+        }
+
+        interactive.refill(now);
+        background.refill(now);
+        long tokenNanos = priority == Priority.INTERACTIVE
+                ? Math.min(interactive.nanosUntilToken(), background.nanosUntilToken())
+                : background.nanosUntilToken();
+        return Math.max(tokenNanos, Math.max(0, pausedUntil - now));
+    }
+
+    private void take(Priority priority) {
+        if (priority == Priority.INTERACTIVE && interactive.tokens >= 1) {
+            interactive.tokens--;
+        } else {
+            background.tokens--;
+        }
+    }
+
+    /**
+     * Holds back every request for a while, as the API asked
+     */
+    synchronized void pause(long millis) {
+        throttled++;
+        long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        if (until - pausedUntil > 0) {
+            pausedUntil = until;
+        }
+        // Waiters work out their waits again, and give up if they are now too long
+        notifyAll();
+    }
+
+    /**
+     * @return Requests of the priority made, whether or not they waited
+     */
+    synchronized long allowedCount(Priority priority) {
+        return allowed[priority.ordinal()];
+    }
+
+    /**
+     * @return Requests of the priority made after waiting for the budget
+     */
+    synchronized long delayedCount(Priority priority) {
+        return delayed[priority.ordinal()];
+    }
+
+    /**
+     * @return Requests of the priority not made, since they would have waited too long
+     */
+    synchronized long rejectedCount(Priority priority) {
+        return rejected[priority.ordinal()];
+    }
+
+    /**
+     * @return Times the API asked to slow down
+     */
+    synchronized long throttledCount() {
+        return throttled;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "RateLimiter[interactive: allowed=" + allowed[0] + ", delayed=" + delayed[0]
+                + ", rejected=" + rejected[0] + "; background: allowed=" + allowed[1]
+                + ", delayed=" + delayed[1] + ", rejected=" + rejected[1] + "; throttled="
+                + throttled + "]";
+    }
+}
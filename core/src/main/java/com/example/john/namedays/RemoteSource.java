@@ -0,0 +1,71 @@
+package com.example.john.namedays;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The NameDays API, as a source of name days for the countries it supports, looked up through the
+ * service, and so through its cache, and waited for.
+ */
+final class RemoteSource implements NameDaySource {
+
+    private final NameDayService service;
+    private final long timeoutMillis;
+
+    /**
+     * @param timeoutMillis The most time a lookup waits for its answer
+     */
+    RemoteSource(NameDayService service, long timeoutMillis) {
+        this.service = service;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    @Override
+    public String name() {
+        return "NameDays API";
+    }
+
+    @Override
+    public boolean covers(String countryCode) {
+        return Countries.idOfCountryCode(countryCode) != -1;
+    }
+
+    @Override
+    public boolean isRemote() {
+        return true;
+    }
+
+    @Override
+    public String lookup(int day, int month, String countryCode) throws IOException {
+        ResponseCache.Key key = new ResponseCache.Key("namedays", day, month,
+                Countries.apiKeyForCountryCode(countryCode));
+        Future<NameDays> future;
+        try {
+            future = service.lookup(key);
+        } catch (RejectedExecutionException e) {
+            throw new IOException("Too many requests in progress", e);
+        }
+
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS).names;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new InterruptedIOException("No answer from NameDays API in " + timeoutMillis
+                    + "ms");
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Cancelled");
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.example.john.namedays;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs requests to the NameDays API on a small, shared pool of threads with a bounded queue.
+ *
+ * Requests for the same key that are in flight at the same time share one fetch (single flight):
+ * every listener of the key is told of its one result. A listener may withdraw from a request it
+ * no longer wants; once no listener is left, the request is cancelled.
+ */
+final class RequestExecutor {
+
+    interface Fetcher {
+        /**
+         * Fetches and parses the response to the request. Called on a pool thread
+         */
+        NameDays fetch(ResponseCache.Key key) throws IOException;
+    }
+
+    interface Listener {
+        /**
+         * Called on a pool thread
+         */
+        void onResponse(ResponseCache.Key key, NameDays nameDays);
+
+        /**
+         * Called on a pool thread
+         */
+        void onFailure(ResponseCache.Key key, IOException e);
+    }
+
+    private final class Flight implements Runnable {
+        final ResponseCache.Key key;
+        final List<Listener> listeners = new ArrayList<>(2);
+        final long submittedAt = System.nanoTime();
+        Future<?> future;
+
+        Flight(ResponseCache.Key key) {
+            this.key = key;
+        }
+
+        @Override
+        public void run() {
+            metrics.recordNanos(Metrics.QUEUE_WAIT, System.nanoTime() - submittedAt);
+
+            NameDays nameDays = null;
+            IOException error = null;
+
+            try {
+                nameDays = fetcher.fetch(key);
+            } catch (IOException e) {
+                error = e;
+            } catch (RuntimeException | Error e) {
+                // A bug of the fetcher, which must not leave the key in flight for good
+                error = new IOException("Unexpected failure: " + e, e);
+                throw e;
+            } finally {
+                complete(nameDays, error);
+            }
+        }
+
+        /**
+         * Takes the flight off the keys in flight, and tells its listeners of the result
+         */
+        private void complete(NameDays nameDays, IOException error) {
+            List<Listener> waiting;
+            synchronized (RequestExecutor.this) {
+                if (flights.get(key) == this) {
+                    flights.remove(key);
+                }
+                waiting = new ArrayList<>(listeners);
+                listeners.clear();
+            }
+
+            for (Listener listener : waiting) {
+                if (error != null) {
+                    listener.onFailure(key, error);
+                } else {
+                    listener.onResponse(key, nameDays);
+                }
+            }
+        }
+    }
+
+    private final Fetcher fetcher;
+    private final Metrics metrics;
+    private final ThreadPoolExecutor executor;
+    private final Map<ResponseCache.Key, Flight> flights = new HashMap<>();
+
+    private long submitted, coalesced, cancelled, rejected;
+
+    /**
+     * @param threads The most requests to run at the same time
+     * @param queueCapacity The most requests to hold, waiting for a thread, before rejecting more
+     * @param metrics Where the time requests wait in the queue is recorded
+     */
+    RequestExecutor(Fetcher fetcher, int threads, int queueCapacity, Metrics metrics) {
+        this.fetcher = fetcher;
+        this.metrics = metrics;
+
+        final AtomicInteger count = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        return new CancellableThread(runnable,
+                                "Connection Thread " + count.incrementAndGet());
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Requests the key, on behalf of the listener, joining the request for it in flight if there
+     * is one
+     *
+     * @throws RejectedExecutionException If too many requests are already waiting
+     */
+    synchronized void submit(ResponseCache.Key key, Listener listener) {
+        Flight flight = flights.get(key);
+
+        if (flight == null) {
+            flight = new Flight(key);
+            try {
+                flight.future = executor.submit(flight);
+            } catch (RejectedExecutionException e) {
+                rejected++;
+                throw e;
+            }
+            flights.put(key, flight);
+            submitted++;
+        } else {
+            coalesced++;
+        }
+        flight.listeners.add(listener);
+    }
+
+    /**
+     * Adds the listener to the request for the key in flight, if there is one, without making a
+     * request otherwise
+     *
+     * @return False if no request for the key is in flight; the listener is not called then
+     */
+    synchronized boolean join(ResponseCache.Key key, Listener listener) {
+        Flight flight = flights.get(key);
+
+        if (flight == null) {
+            return false;
+        }
+        coalesced++;
+        flight.listeners.add(listener);
+        return true;
+    }
+
+    /**
+     * Withdraws the listener from the request for the key, which is cancelled if no other
+     * listener waits for it. The listener is not called for the key afterwards
+     */
+    synchronized void cancel(ResponseCache.Key key, Listener listener) {
+        Flight flight = flights.get(key);
+
+        if (flight != null && flight.listeners.remove(listener) && flight.listeners.isEmpty()) {
+            flights.remove(key);
+            flight.future.cancel(true);
+            executor.purge();
+            cancelled++;
+        }
+    }
+
+    /**
+     * @return True if a request for the key is in flight
+     */
+    synchronized boolean isInFlight(ResponseCache.Key key) {
+        return flights.containsKey(key);
+    }
+
+    /**
+     * @return True if no request is in flight
+     */
+    synchronized boolean isIdle() {
+        return flights.isEmpty();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "RequestExecutor[inFlight=" + flights.size() + ", submitted=" + submitted
+                + ", coalesced=" + coalesced + ", cancelled=" + cancelled
+                + ", rejected=" + rejected + "]";
+    }
+}
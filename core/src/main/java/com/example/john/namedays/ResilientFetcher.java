@@ -0,0 +1,317 @@
+package com.example.john.namedays;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Makes fetches through another fetcher resilient to a slow or failing API.
+ *
+ * Transient failures are retried, after a backoff that grows exponentially and is fully
+ * jittered, so that clients that failed together do not retry together. An attempt that takes
+ * longer than most (the 95th percentile of recent attempts) may be hedged: a second attempt is
+ * fired, and whichever answers first is used. All of it sits behind a circuit breaker, which
+ * fails fetches at once while the API is down; failed fetches fall back to older names at hand,
+ * if there are any. A retry waits at least as long as the Retry-After of the failure asks.
+ *
+ * Every request to the NameDays API is an idempotent GET, so repeating one is always safe.
+ */
+final class ResilientFetcher implements RequestExecutor.Fetcher {
+
+    /**
+     * Names to answer with when a fetch fails, however old. They are marked as a fallback, so
+     * that they are not cached as fresh
+     */
+    interface Fallback {
+        /**
+         * Called on a request thread
+         *
+         * @return The names for the key, or null if there are none
+         */
+        NameDays fallback(ResponseCache.Key key);
+    }
+
+    /**
+     * The fetch was not made, since the circuit breaker is open
+     */
+    static final class CircuitOpenException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        CircuitOpenException() {
+            super("NameDays API is unavailable, please try again later");
+        }
+    }
+
+    /**
+     * Attempts made before there are enough to take a percentile of are hedged after the least
+     * hedge delay
+     */
+    private static final int MIN_HEDGE_SAMPLES = 20;
+
+    private final RequestExecutor.Fetcher delegate;
+    private final int maxAttempts;
+    private final long baseBackoffMillis;
+    private final long maxBackoffMillis;
+    private final long minHedgeDelayMillis;
+    private final CircuitBreaker breaker;
+    private final Fallback fallback;
+
+    private final ExecutorService hedgeExecutor;
+    private final LatencyHistogram attemptLatencies = new LatencyHistogram();
+    private final Random random = new Random();
+
+    private final AtomicLong attempts = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong hedges = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+
+    /**
+     * @param maxAttempts The most attempts of one fetch, counting the first
+     * @param baseBackoffMillis The most time to wait before the first retry, doubled for each
+     * retry after it
+     * @param maxBackoffMillis The most time to wait before any retry
+     * @param minHedgeDelayMillis The least time an attempt is given before it is hedged, or 0 to
+     * never hedge
+     * @param fallback Where failed fetches fall back to, or null
+     */
+    ResilientFetcher(RequestExecutor.Fetcher delegate, int maxAttempts, long baseBackoffMillis,
+                     long maxBackoffMillis, long minHedgeDelayMillis, CircuitBreaker breaker,
+                     Fallback fallback) {
+        this.delegate = delegate;
+        this.maxAttempts = maxAttempts;
+        this.baseBackoffMillis = baseBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.minHedgeDelayMillis = minHedgeDelayMillis;
+        this.breaker = breaker;
+        this.fallback = fallback;
+
+        if (minHedgeDelayMillis > 0) {
+            final AtomicInteger count = new AtomicInteger();
+            hedgeExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new CancellableThread(runnable,
+                            "Hedge Thread " + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        } else {
+            hedgeExecutor = null;
+        }
+    }
+
+    @Override
+    public NameDays fetch(ResponseCache.Key key) throws IOException {
+        if (!breaker.allow()) {
+            return fallBack(key, new CircuitOpenException());
+        }
+
+        try {
+            NameDays nameDays = fetchWithRetries(key);
+            breaker.onSuccess();
+            return nameDays;
+        } catch (IOException e) {
+            if (Thread.currentThread().isInterrupted()) {
+                // Cancelled, which says nothing about the API, and leaves no one to fall back for
+                breaker.release();
+                throw e;
+            }
+            if (e instanceof RateLimiter.RateLimitedException) {
+                // Never made, which says nothing about the API
+                breaker.release();
+            } else if (isTransient(e)) {
+                breaker.onFailure();
+            } else {
+                // The API answered, if not as hoped
+                breaker.onSuccess();
+            }
+            return fallBack(key, e);
+        }
+    }
+
+    private NameDays fallBack(ResponseCache.Key key, IOException e) throws IOException {
+        NameDays nameDays = fallback != null ? fallback.fallback(key) : null;
+
+        if (nameDays == null) {
+            throw e;
+        }
+        fallbacks.incrementAndGet();
+        return nameDays.asFallback();
+    }
+
+    private NameDays fetchWithRetries(ResponseCache.Key key) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            long retryAfterMillis = 0;
+            try {
+                return hedgeExecutor != null ? attemptHedged(key) : attempt(key);
+            } catch (IOException e) {
+                if (e instanceof ApiClient.StatusException) {
+                    retryAfterMillis = ((ApiClient.StatusException) e).retryAfterMillis;
+                }
+                // A server that asks for a longer wait than any backoff is not kept waiting on
+                if (attempt >= maxAttempts || !isTransient(e) || retryAfterMillis > maxBackoffMillis
+                        || Thread.currentThread().isInterrupted()) {
+                    throw e;
+                }
+            }
+            retries.incrementAndGet();
+            sleep(Math.max(backoffMillis(attempt), retryAfterMillis));
+        }
+    }
+
+    /**
+     * @return A time up to the base backoff doubled for each retry before, chosen at random
+     */
+    long backoffMillis(int attempt) {
+        long ceiling = Math.min(maxBackoffMillis, baseBackoffMillis << Math.min(attempt - 1, 20));
+        return (long) (random.nextDouble() * ceiling);
+    }
+
+    private NameDays attempt(ResponseCache.Key key) throws IOException {
+        attempts.incrementAndGet();
+        long start = System.nanoTime();
+        NameDays nameDays = delegate.fetch(key);
+        attemptLatencies.recordNanos(System.nanoTime() - start);
+        return nameDays;
+    }
+
+    /**
+     * Makes an attempt, and a second one if the first is slow to answer, and returns the answer
+     * of whichever succeeds first
+     */
+    private NameDays attemptHedged(final ResponseCache.Key key) throws IOException {
+        CompletionService<NameDays> completion = new ExecutorCompletionService<>(hedgeExecutor);
+        Callable<NameDays> attempt = new Callable<NameDays>() {
+            @Override
+            public NameDays call() throws IOException {
+                return attempt(key);
+            }
+        };
+
+        Future<NameDays> primary = completion.submit(attempt);
+        Future<NameDays> hedge = null;
+        try {
+            Future<NameDays> first = completion.poll(hedgeDelayMillis(), TimeUnit.MILLISECONDS);
+            if (first == null) {
+                hedges.incrementAndGet();
+                hedge = completion.submit(attempt);
+                first = completion.take();
+            }
+
+            try {
+                return answerOf(first, hedge);
+            } catch (IOException e) {
+                if (hedge == null) {
+                    throw e;
+                }
+                // The other attempt may yet succeed
+                return answerOf(completion.take(), hedge);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Cancelled");
+        } finally {
+            primary.cancel(true);
+            if (hedge != null) {
+                hedge.cancel(true);
+            }
+        }
+    }
+
+    private NameDays answerOf(Future<NameDays> attempt, Future<NameDays> hedge)
+            throws IOException, InterruptedException {
+        try {
+            NameDays nameDays = attempt.get();
+            if (attempt == hedge) {
+                hedgeWins.incrementAndGet();
+            }
+            return nameDays;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * @return How long an attempt is given before it is hedged: as long as 95% of recent
+     * attempts took, but no less than the least hedge delay
+     */
+    long hedgeDelayMillis() {
+        if (attemptLatencies.count() < MIN_HEDGE_SAMPLES) {
+            return minHedgeDelayMillis;
+        }
+        long p95 = attemptLatencies.snapshot().percentileMicros(95) / 1000;
+        return Math.max(minHedgeDelayMillis, p95);
+    }
+
+    /**
+     * @return True if the same fetch may succeed if repeated
+     */
+    static boolean isTransient(IOException e) {
+        if (e instanceof ParseException || e instanceof CircuitOpenException
+                || e instanceof RateLimiter.RateLimitedException) {
+            return false;
+        }
+        return !(e instanceof ApiClient.StatusException)
+                || ((ApiClient.StatusException) e).isTransient();
+    }
+
+    private static void sleep(long millis) throws InterruptedIOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Cancelled");
+        }
+    }
+
+    CircuitBreaker getBreaker() {
+        return breaker;
+    }
+
+    long attemptCount() {
+        return attempts.get();
+    }
+
+    long retryCount() {
+        return retries.get();
+    }
+
+    long hedgeCount() {
+        return hedges.get();
+    }
+
+    long hedgeWinCount() {
+        return hedgeWins.get();
+    }
+
+    long fallbackCount() {
+        return fallbacks.get();
+    }
+
+    @Override
+    public String toString() {
+        return "ResilientFetcher[attempts=" + attempts + ", retries=" + retries + ", hedges="
+                + hedges + ", hedgeWins=" + hedgeWins + ", fallbacks=" + fallbacks + ", "
+                + breaker + "]";
+    }
+}
@@ -0,0 +1,287 @@
+package com.example.john.namedays;
+
+import java.util.Calendar;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded, in-memory cache of parsed NameDays API responses, keyed by the normalized request.
+ *
+ * Entries are evicted in least recently used order once the cache is full, and expire after a
+ * time to live, or the max-age the response gave. Entries for the relative endpoints (today,
+ * yesterday, tomorrow) also expire at the next local midnight, when the day they refer to changes.
+ *
+ * Expired entries are kept until evicted, since their validators still make conditional requests
+ * for them cheap. For a while after they expire, they may also be served stale, while they are
+ * revalidated in the background.
+ */
+final class ResponseCache {
+
+    /**
+     * A normalized request: the endpoint, the day and month (0 for the relative endpoints) and
+     * the NameDays API country key
+     */
+    static final class Key {
+        final String endpoint;
+        final int day;
+        final int month;
+        final String country;
+
+        Key(String endpoint, int day, int month, String country) {
+            this.endpoint = endpoint;
+            this.day = day;
+            this.month = month;
+            this.country = country;
+        }
+
+        /**
+         * @return True if the endpoint is relative to the current date, such as 'today'
+         */
+        boolean isRelative() {
+            return day == 0 && month == 0;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return day == key.day && month == key.month && endpoint.equals(key.endpoint)
+                    && country.equals(key.country);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = endpoint.hashCode();
+            result = 31 * result + day;
+            result = 31 * result + month;
+            result = 31 * result + country.hashCode();
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return endpoint + "?day=" + day + "&month=" + month + "&" + country;
+        }
+    }
+
+    private static final class Entry {
+        final NameDays nameDays;
+        final long expiresAt;
+        /**
+         * Until when the entry may be served stale, while it is revalidated
+         */
+        final long staleUntil;
+        /**
+         * When the day the entry refers to changes, and its names and validators are of no use
+         */
+        final long rolloverAt;
+
+        Entry(NameDays nameDays, long expiresAt, long staleUntil, long rolloverAt) {
+            this.nameDays = nameDays;
+            this.expiresAt = expiresAt;
+            this.staleUntil = staleUntil;
+            this.rolloverAt = rolloverAt;
+        }
+    }
+
+    private final int maxEntries;
+    private final long timeToLiveMillis;
+    private final long staleWhileRevalidateMillis;
+    private final LinkedHashMap<Key, Entry> entries;
+
+    private long hits, misses, evictions, expirations, staleHits;
+
+    /**
+     * @param maxEntries The most entries to hold before the least recently used one is evicted
+     * @param timeToLiveMillis How long an entry is served after it is put, unless the response
+     * said otherwise
+     */
+    ResponseCache(int maxEntries, long timeToLiveMillis) {
+        this(maxEntries, timeToLiveMillis, 0);
+    }
+
+    /**
+     * @param staleWhileRevalidateMillis How long after it expires an entry may be served stale,
+     * unless the response said otherwise
+     */
+    ResponseCache(int maxEntries, long timeToLiveMillis, long staleWhileRevalidateMillis) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries < 1");
+        }
+        this.maxEntries = maxEntries;
+        this.timeToLiveMillis = timeToLiveMillis;
+        this.staleWhileRevalidateMillis = staleWhileRevalidateMillis;
+        // Access order makes iteration run from least to most recently used
+        entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * @return The cached names, or null if there is no live entry for the key
+     */
+    NameDays get(Key key) {
+        return get(key, System.currentTimeMillis());
+    }
+
+    /**
+     * @param now The time of the lookup, in millis
+     */
+    synchronized NameDays get(Key key, long now) {
+        Entry entry = entries.get(key);
+
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        if (now >= entry.expiresAt) {
+            expirations++;
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.nameDays;
+    }
+
+    /**
+     * @return The cached names if they have expired, but may still be served while they are
+     * revalidated; null otherwise
+     */
+    NameDays getStale(Key key) {
+        return getStale(key, System.currentTimeMillis());
+    }
+
+    synchronized NameDays getStale(Key key, long now) {
+        Entry entry = entries.get(key);
+
+        if (entry == null || now < entry.expiresAt || now >= entry.staleUntil) {
+            return null;
+        }
+        staleHits++;
+        return entry.nameDays;
+    }
+
+    /**
+     * @return The cached names, however old, or null if there are none, or they are of a day
+     * other than the key now refers to; not counted as a hit or a miss
+     */
+    NameDays peek(Key key) {
+        return peek(key, System.currentTimeMillis());
+    }
+
+    synchronized NameDays peek(Key key, long now) {
+        Entry entry = entries.get(key);
+
+        if (entry == null) {
+            return null;
+        }
+        if (now >= entry.rolloverAt) {
+            // Revalidating yesterday's names would have today's confirmed as unchanged
+            entries.remove(key);
+            return null;
+        }
+        return entry.nameDays;
+    }
+
+    void put(Key key, NameDays nameDays) {
+        put(key, nameDays, System.currentTimeMillis());
+    }
+
+    /**
+     * @param now The time the names were fetched, in millis
+     */
+    synchronized void put(Key key, NameDays nameDays, long now) {
+        Validators validators = nameDays.validators;
+
+        long expiresAt = now + (validators.maxAgeSeconds != -1
+                ? validators.maxAgeSeconds * 1000 : timeToLiveMillis);
+        long staleUntil = expiresAt + (validators.staleWhileRevalidateSeconds != -1
+                ? validators.staleWhileRevalidateSeconds * 1000 : staleWhileRevalidateMillis);
+
+        long rolloverAt = Long.MAX_VALUE;
+        if (key.isRelative()) {
+            // After midnight the names are of another day, which is worse than stale
+            rolloverAt = nextMidnight(now);
+            expiresAt = Math.min(expiresAt, rolloverAt);
+            staleUntil = Math.min(staleUntil, rolloverAt);
+        }
+        entries.put(key, new Entry(nameDays, expiresAt, staleUntil, rolloverAt));
+
+        if (entries.size() > maxEntries) {
+            removeStale(now);
+
+            Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+            while (entries.size() > maxEntries && eldest.hasNext()) {
+                eldest.next();
+                eldest.remove();
+                evictions++;
+            }
+        }
+    }
+
+    /**
+     * Removes the entries that can no longer be served, even stale, before any that can
+     */
+    private void removeStale(long now) {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (entries.size() > maxEntries && iterator.hasNext()) {
+            if (now >= iterator.next().staleUntil) {
+                iterator.remove();
+                evictions++;
+            }
+        }
+    }
+
+    synchronized void clear() {
+        entries.clear();
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized long hitCount() {
+        return hits;
+    }
+
+    synchronized long missCount() {
+        return misses;
+    }
+
+    synchronized long evictionCount() {
+        return evictions;
+    }
+
+    synchronized long expirationCount() {
+        return expirations;
+    }
+
+    synchronized long staleHitCount() {
+        return staleHits;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ResponseCache[size=" + entries.size() + ", hits=" + hits + ", misses=" + misses
+                + ", evictions=" + evictions + ", expirations=" + expirations
+                + ", staleHits=" + staleHits + "]";
+    }
+
+    /**
+     * @return The time of the next local midnight after the time now
+     */
+    static long nextMidnight(long now) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(now);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        calendar.add(Calendar.DAY_OF_MONTH, 1);
+        return calendar.getTimeInMillis();
+    }
+}
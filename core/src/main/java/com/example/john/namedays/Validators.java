@@ -0,0 +1,91 @@
+package com.example.john.namedays;
+
+import java.util.Locale;
+
+/**
+ * What a response said about its own freshness: the validators to make a conditional request for
+ * it with (ETag and Last-Modified), and how long it may be used without one (Cache-Control).
+ */
+final class Validators {
+
+    /**
+     * Neither validators nor a freshness lifetime
+     */
+    static final Validators NONE = new Validators(null, null, -1, -1);
+
+    final String etag;
+    final String lastModified;
+    /**
+     * Cache-Control max-age, or -1 if the response did not say
+     */
+    final long maxAgeSeconds;
+    /**
+     * Cache-Control stale-while-revalidate, or -1 if the response did not say
+     */
+    final long staleWhileRevalidateSeconds;
+
+    Validators(String etag, String lastModified, long maxAgeSeconds,
+               long staleWhileRevalidateSeconds) {
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.maxAgeSeconds = maxAgeSeconds;
+        this.staleWhileRevalidateSeconds = staleWhileRevalidateSeconds;
+    }
+
+    /**
+     * @param cacheControl The Cache-Control header of the response, or null
+     */
+    static Validators of(String etag, String lastModified, String cacheControl) {
+        long maxAge = -1, staleWhileRevalidate = -1;
+
+        if (cacheControl != null) {
+            for (String directive : cacheControl.split(",")) {
+                directive = directive.trim().toLowerCase(Locale.US);
+
+                if (directive.equals("no-cache") || directive.equals("no-store")) {
+                    maxAge = 0;
+                } else if (directive.startsWith("max-age=") && maxAge != 0) {
+                    maxAge = secondsOf(directive.substring("max-age=".length()));
+                } else if (directive.startsWith("stale-while-revalidate=")) {
+                    staleWhileRevalidate =
+                            secondsOf(directive.substring("stale-while-revalidate=".length()));
+                }
+            }
+        }
+        return new Validators(etag, lastModified, maxAge, staleWhileRevalidate);
+    }
+
+    private static long secondsOf(String value) {
+        try {
+            return Math.max(0, Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return True if a conditional request can be made with these
+     */
+    boolean canRevalidate() {
+        return etag != null || lastModified != null;
+    }
+
+    /**
+     * @return These, updated with what a 304 response said; a 304 may leave out validators that
+     * still hold
+     */
+    Validators updatedBy(Validators notModified) {
+        return new Validators(
+                notModified.etag != null ? notModified.etag : etag,
+                notModified.lastModified != null ? notModified.lastModified : lastModified,
+                notModified.maxAgeSeconds != -1 ? notModified.maxAgeSeconds : maxAgeSeconds,
+                notModified.staleWhileRevalidateSeconds != -1
+                        ? notModified.staleWhileRevalidateSeconds : staleWhileRevalidateSeconds);
+    }
+
+    @Override
+    public String toString() {
+        return "Validators[etag=" + etag + ", lastModified=" + lastModified + ", maxAge="
+                + maxAgeSeconds + ", staleWhileRevalidate=" + staleWhileRevalidateSeconds + "]";
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.john.namedays;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the API client against a local server that stands in for the NameDays API.
+ */
+public class ApiClientTest {
+    private static final String BODY =
+            "{\"data\":{\"day\":2,\"month\":2,\"name_us\":\"Candace\",\"name_cz\":\"Nela\"}}";
+
+    private HttpServer server;
+    private volatile long delayMillis;
+    private String baseUrl;
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/get/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException ignore) {
+                }
+
+                if (exchange.getRequestURI().getPath().endsWith("missing")) {
+                    exchange.sendResponseHeaders(404, -1);
+                    exchange.close();
+                    return;
+                }
+
+                byte[] body = BODY.getBytes("UTF-8");
+                String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+                if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+                    gzip.write(body);
+                    gzip.close();
+                    body = bytes.toByteArray();
+                    exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+                }
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/get/";
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void get_decompressesGzippedBody() throws Exception {
+        ApiClient client = new ApiClient(baseUrl, 1000, 1000);
+
+        ApiClient.Response<String> response = client.get("today", ApiClient.STRING_READER);
+
+        assertEquals(BODY, response.body);
+        assertTrue(response.timing.gzipped);
+        assertTrue(response.timing.bodyBytes > 0);
+    }
+
+    @Test
+    public void get_reusesConnectionForRepeatRequests() throws Exception {
+        ApiClient client = new ApiClient(baseUrl, 1000, 1000);
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(BODY, client.get("today", ApiClient.STRING_READER).body);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void get_failsOnErrorStatus() throws Exception {
+        new ApiClient(baseUrl, 1000, 1000).get("missing", ApiClient.STRING_READER);
+    }
+
+    @Test(expected = SocketTimeoutException.class)
+    public void get_timesOutOnStalledServer() throws Exception {
+        delayMillis = 1000;
+        new ApiClient(baseUrl, 1000, 100).get("today", ApiClient.STRING_READER);
+    }
+
+    @Test
+    public void get_abortsWhenCancellableThreadIsInterrupted() throws Exception {
+        delayMillis = 3000;
+        final ApiClient client = new ApiClient(baseUrl, 1000, 10000);
+        final AtomicReference<IOException> error = new AtomicReference<>();
+
+        Thread thread = new CancellableThread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    client.get("today", ApiClient.STRING_READER);
+                } catch (IOException e) {
+                    error.set(e);
+                }
+            }
+        }, "Request");
+        thread.start();
+        Thread.sleep(200);
+
+        long start = System.nanoTime();
+        thread.interrupt();
+        thread.join(2000);
+
+        assertFalse(thread.isAlive());
+        assertTrue((System.nanoTime() - start) / 1000000 < 1000);
+        assertTrue(error.get() instanceof InterruptedIOException);
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.john.namedays;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Reads data packs, and routes lookups between sources that stand in for the index, packs and API.
+ */
+public class CompositeSourceTest {
+
+    /**
+     * Has names for every date of one country, after a delay, or fails
+     */
+    private static final class FakeSource implements NameDaySource {
+        final String countryCode;
+        final String names;
+        final long delayMillis;
+        final boolean remote;
+        final List<String> lookups = new ArrayList<>();
+        boolean failing;
+
+        FakeSource(String countryCode, String names, long delayMillis, boolean remote) {
+            this.countryCode = countryCode;
+            this.names = names;
+            this.delayMillis = delayMillis;
+            this.remote = remote;
+        }
+
+        @Override
+        public String name() {
+            return String.valueOf(names);
+        }
+
+        @Override
+        public boolean covers(String countryCode) {
+            return this.countryCode.equals(countryCode);
+        }
+
+        @Override
+        public boolean isRemote() {
+            return remote;
+        }
+
+        @Override
+        public String lookup(int day, int month, String countryCode) throws IOException {
+            lookups.add(day + "." + month);
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+            if (failing) {
+                throw new IOException("Failed");
+            }
+            return names;
+        }
+    }
+
+    private static DataPack pack(String text) throws IOException {
+        return DataPack.read("test.tsv", new ByteArrayInputStream(text.getBytes("UTF-8")));
+    }
+
+    @Test
+    public void dataPack_readsNamesByDateAndCountry() throws Exception {
+        DataPack pack = pack("# Test pack\n"
+                + "DE\t06-24\tJohannes, Johann\n"
+                + "\n"
+                + "at\t02-29\tOswald\n"
+                + "DE\t06-24\tJohannes\n");
+
+        assertEquals("Johannes", pack.lookup(24, 6, "DE"));
+        assertEquals("Oswald", pack.lookup(29, 2, "AT"));
+        assertNull(pack.lookup(25, 6, "DE"));
+        assertNull(pack.lookup(24, 6, "CZ"));
+        assertTrue(pack.covers("AT"));
+        assertFalse(pack.covers("US"));
+        assertEquals(2, pack.size());
+    }
+
+    @Test
+    public void dataPack_rejectsMalformedLines() throws Exception {
+        String[] malformed = {"DE\t06-24", "DE\t13-01\tJan", "DE\t06-31\tJan", "DEU\t06-24\tJan",
+                "DE\tJune 24\tJan", "DE\t06-24\t ", "DÉ\t06-24\tJan", "Дe\t06-24\tJan",
+                "ß\t06-24\tJan", "D1\t06-24\tJan"};
+
+        for (String line : malformed) {
+            try {
+                pack("# Fine\n" + line + "\n");
+                fail("Read " + line);
+            } catch (ParseException e) {
+                assertTrue(e.getMessage().endsWith("test.tsv:2"));
+            }
+        }
+    }
+
+    @Test
+    public void lookup_prefersTheFastestSourceOnceMeasured() throws Exception {
+        FakeSource slow = new FakeSource("DE", "Slow", 20, false);
+        FakeSource fast = new FakeSource("DE", "Fast", 0, false);
+        CompositeSource sources = new CompositeSource(Arrays.asList(slow, fast));
+
+        // In the order given, until measured; then the one not yet measured
+        assertEquals("Slow", sources.lookup(1, 1, "DE"));
+        assertEquals("Fast", sources.lookup(2, 1, "DE"));
+
+        slow.failing = true;
+        fast.failing = true;
+        try {
+            sources.lookup(3, 1, "DE");
+            fail();
+        } catch (IOException expected) {
+        }
+        fast.failing = false;
+
+        assertEquals("Fast", sources.lookup(4, 1, "DE"));
+        assertEquals(Arrays.asList("1.1", "3.1"), slow.lookups);
+        assertEquals(Arrays.asList("2.1", "3.1", "4.1"), fast.lookups);
+        assertEquals(2, sources.statsOf(fast).hitCount());
+        assertEquals(1, sources.statsOf(slow).failureCount());
+    }
+
+    @Test
+    public void lookup_fallsBackOnMissesAndFailures() throws Exception {
+        FakeSource index = new FakeSource("CZ", null, 0, false);
+        FakeSource pack = new FakeSource("DE", "Pack", 0, false);
+        FakeSource api = new FakeSource("CZ", "Api", 0, true);
+        CompositeSource sources = new CompositeSource(Arrays.asList(index, pack, api));
+
+        assertEquals("Api", sources.lookup(1, 1, "CZ"));
+        assertNull(sources.lookupLocal(1, 1, "CZ"));
+        assertEquals("Pack", sources.lookupLocal(1, 1, "DE"));
+        assertNull(sources.lookup(1, 1, "US"));
+        assertTrue(sources.coversRemotely("CZ"));
+        assertFalse(sources.coversRemotely("DE"));
+
+        api.failing = true;
+        try {
+            sources.lookup(2, 1, "CZ");
+            fail();
+        } catch (IOException e) {
+            assertEquals("Failed", e.getMessage());
+        }
+        assertEquals(3, sources.statsOf(index).missCount());
+        assertEquals(1, sources.statsOf(api).failureCount());
+        assertEquals(0, sources.statsOf(pack).missCount());
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.john.namedays;
+
+import org.junit.Test;
+
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+public class CountriesTest {
+
+    @Test
+    public void ids_ofEveryCodeAndKey() {
+        for (int id = 0; id < Countries.COUNT; id++) {
+            assertEquals(id, Countries.idOfCountryCode(Countries.CODES[id]));
+            assertEquals(id, Countries.idOfCountryCode(Countries.CODES[id].toLowerCase(Locale.US)));
+            assertEquals(id, Countries.idOfCountryCode(Countries.NUMERIC_CODES[id]));
+            assertEquals(id, Countries.idOfApiKey(Countries.apiKey(id)));
+        }
+    }
+
+    @Test
+    public void ids_ofUnsupportedCodesAndKeys() {
+        assertEquals(-1, Countries.idOfCountryCode("DE"));
+        assertEquals(-1, Countries.idOfCountryCode("276"));
+        assertEquals(-1, Countries.idOfCountryCode(""));
+        assertEquals(-1, Countries.idOfCountryCode("C1"));
+        assertEquals(-1, Countries.idOfApiKey("name_CZ"));
+        assertEquals(-1, Countries.idOfApiKey("name_de"));
+        assertEquals(-1, Countries.idOfApiKey("day"));
+        assertEquals("name_us", Countries.apiKeyForCountryCode("DE"));
+        assertEquals("name_cz", Countries.apiKeyForLocale(new Locale("cs", "CZ")));
+    }
+
+    @Test
+    public void keys_ofCountriesOutsideTheApi() {
+        assertEquals("name_de", Countries.keyOfCountryCode("DE"));
+        assertEquals("name_cz", Countries.keyOfCountryCode("cz"));
+        assertEquals("DE", Countries.countryCodeOfKey("name_de"));
+        assertEquals("CZ", Countries.countryCodeOfKey(Countries.apiKey(1)));
+        assertNull(Countries.countryCodeOfKey("name_d1"));
+        assertNull(Countries.countryCodeOfKey("day"));
+    }
+
+    @Test
+    public void localeNames_areResolvedOncePerLocale() {
+        LocaleNames english = LocaleNames.of(Locale.US);
+
+        assertSame(english, LocaleNames.of(new Locale("en", "US")));
+        assertEquals(new Locale("en", "CZ").getDisplayCountry(Locale.US), english.countries[1]);
+        assertEquals("June", english.months[5]);
+
+        LocaleNames french = LocaleNames.of(Locale.FRANCE);
+        assertNotSame(english, french);
+        assertEquals("juin", french.months[5]);
+    }
+}
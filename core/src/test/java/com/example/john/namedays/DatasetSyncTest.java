@@ -0,0 +1,121 @@
+package com.example.john.namedays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs a sync of the whole year against a local server that fails on demand.
+ */
+public class DatasetSyncTest {
+    private static final String COUNTRY = "name_us";
+
+    private FaultInjectingServer server;
+    private HttpFetcher fetcher;
+    private final NameDayIndex index = new NameDayIndex();
+    private final AtomicInteger checkpoints = new AtomicInteger();
+
+    private final DatasetSync.Store store = new DatasetSync.Store() {
+        @Override
+        public boolean has(int dayOfYear) {
+            return index.get(NameDayIndex.dayOf(dayOfYear), NameDayIndex.monthOf(dayOfYear),
+                    COUNTRY) != null;
+        }
+
+        @Override
+        public void store(ResponseCache.Key key, NameDays nameDays) {
+            index.put(nameDays.day, nameDays.month, key.country, nameDays.names);
+        }
+
+        @Override
+        public void checkpoint() {
+            checkpoints.incrementAndGet();
+        }
+    };
+
+    @Before
+    public void startServer() throws IOException {
+        server = new FaultInjectingServer();
+        fetcher = new HttpFetcher(new ApiClient(server.baseUrl(), 1000, 1000),
+                GsonNameDaysParser.FACTORY, new Metrics());
+    }
+
+    @After
+    public void stopServer() {
+        server.stop();
+    }
+
+    @Test
+    public void run_fetchesEveryDayInBatches() throws Exception {
+        final AtomicInteger lastDone = new AtomicInteger();
+        DatasetSync sync = new DatasetSync(fetcher, store, COUNTRY, 50, 4);
+
+        DatasetSync.Result result = sync.run(false, new DatasetSync.Progress() {
+            @Override
+            public void onProgress(int done, int total) {
+                assertTrue(done > lastDone.get());
+                assertEquals(NameDayIndex.DAYS_IN_YEAR, total);
+                lastDone.set(done);
+            }
+        });
+
+        assertTrue(result.isComplete());
+        assertEquals(NameDayIndex.DAYS_IN_YEAR, result.fetched);
+        assertEquals(NameDayIndex.DAYS_IN_YEAR, lastDone.get());
+        assertEquals(8, checkpoints.get());
+        assertEquals("Names 29/2", index.get(29, 2, COUNTRY));
+    }
+
+    @Test
+    public void run_fetchesOnlyMissingDaysUnlessFull() throws Exception {
+        for (int dayOfYear = 0; dayOfYear < 300; dayOfYear++) {
+            index.put(NameDayIndex.dayOf(dayOfYear), NameDayIndex.monthOf(dayOfYear), COUNTRY,
+                    "Held");
+        }
+        DatasetSync sync = new DatasetSync(fetcher, store, COUNTRY, 50, 4);
+
+        DatasetSync.Result delta = sync.run(false, null);
+        assertEquals(66, delta.total);
+        assertEquals(66, server.requestCount());
+        assertEquals("Held", index.get(1, 1, COUNTRY));
+
+        DatasetSync.Result full = sync.run(true, null);
+        assertEquals(NameDayIndex.DAYS_IN_YEAR, full.fetched);
+        assertEquals("Names 1/1", index.get(1, 1, COUNTRY));
+    }
+
+    @Test
+    public void run_stopsWhenWholeBatchFails() throws Exception {
+        server.failNext(Integer.MAX_VALUE, 503);
+        DatasetSync sync = new DatasetSync(fetcher, store, COUNTRY, 10, 2);
+
+        DatasetSync.Result result = sync.run(false, null);
+
+        assertTrue(result.stopped);
+        assertEquals(10, result.failed);
+        assertEquals(0, result.fetched);
+        assertEquals(10, server.requestCount());
+        assertEquals(1, checkpoints.get());
+    }
+
+    @Test
+    public void cancel_stopsBeforeNextBatch() throws Exception {
+        final DatasetSync sync = new DatasetSync(fetcher, store, COUNTRY, 10, 2);
+
+        DatasetSync.Result result = sync.run(false, new DatasetSync.Progress() {
+            @Override
+            public void onProgress(int done, int total) {
+                sync.cancel();
+            }
+        });
+
+        assertTrue(result.stopped);
+        assertEquals(10, result.fetched);
+        assertFalse(result.isComplete());
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.john.namedays;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stands in for the NameDays API on a local port, answering 'namedays?day=D&month=M' with names
+ * for the US, and failing or stalling the next requests on demand.
+ *
+ * Every response has an ETag, and a request whose If-None-Match matches it is answered with 304
+ * Not Modified.
+ */
+final class FaultInjectingServer {
+
+    private final HttpServer server;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger failuresLeft = new AtomicInteger();
+    private final AtomicInteger delaysLeft = new AtomicInteger();
+    private volatile int failureStatus;
+    private volatile long delayMillis;
+    private volatile String cacheControl;
+    private volatile String retryAfter;
+
+    FaultInjectingServer() throws IOException {
+        // Otherwise the body, written apart from the headers, waits on a delayed ACK
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 64);
+        server.createContext("/get/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                requests.incrementAndGet();
+
+                if (delaysLeft.getAndDecrement() > 0) {
+                    try {
+                        Thread.sleep(delayMillis);
+                    } catch (InterruptedException ignore) {
+                    }
+                }
+                if (failuresLeft.getAndDecrement() > 0) {
+                    if (retryAfter != null) {
+                        exchange.getResponseHeaders().set("Retry-After", retryAfter);
+                    }
+                    exchange.sendResponseHeaders(failureStatus, -1);
+                    exchange.close();
+                    return;
+                }
+
+                // namedays?day=D&month=M
+                String[] query = exchange.getRequestURI().getQuery().split("[=&]");
+                String etag = "\"" + query[1] + "-" + query[3] + "\"";
+
+                exchange.getResponseHeaders().set("ETag", etag);
+                if (cacheControl != null) {
+                    exchange.getResponseHeaders().set("Cache-Control", cacheControl);
+                }
+                if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    exchange.sendResponseHeaders(304, -1);
+                    exchange.close();
+                    return;
+                }
+
+                byte[] body = ("{\"data\":{\"day\":" + query[1] + ",\"month\":" + query[3]
+                        + ",\"name_us\":\"Names " + query[1] + "/" + query[3] + "\"}}")
+                        .getBytes("UTF-8");
+
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        server.setExecutor(Executors.newFixedThreadPool(8));
+        server.start();
+    }
+
+    String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/get/";
+    }
+
+    /**
+     * Answers the next requests with the status, and no body
+     */
+    void failNext(int count, int status) {
+        failureStatus = status;
+        failuresLeft.set(count);
+    }
+
+    /**
+     * Stalls the next requests, before answering them
+     */
+    void delayNext(int count, long millis) {
+        delayMillis = millis;
+        delaysLeft.set(count);
+    }
+
+    /**
+     * Sends the Cache-Control header with every response from now on
+     */
+    void setCacheControl(String cacheControl) {
+        this.cacheControl = cacheControl;
+    }
+
+    /**
+     * Sends the Retry-After header with every failure from now on
+     */
+    void setRetryAfter(String retryAfter) {
+        this.retryAfter = retryAfter;
+    }
+
+    int requestCount() {
+        return requests.get();
+    }
+
+    void stop() {
+        server.stop(0);
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.john.namedays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the fetcher against a local server that answers conditional requests.
+ */
+public class HttpFetcherTest {
+    private static final ResponseCache.Key KEY =
+            new ResponseCache.Key("namedays", 24, 6, "name_us");
+
+    private FaultInjectingServer server;
+    private final Metrics metrics = new Metrics();
+    private final ResponseCache cache = new ResponseCache(16, TimeUnit.HOURS.toMillis(1));
+    private HttpFetcher fetcher;
+
+    @Before
+    public void startServer() throws IOException {
+        server = new FaultInjectingServer();
+        fetcher = new HttpFetcher(new ApiClient(server.baseUrl(), 1000, 1000),
+                GsonNameDaysParser.FACTORY, metrics, cache);
+    }
+
+    @After
+    public void stopServer() {
+        server.stop();
+    }
+
+    @Test
+    public void fetch_keepsValidatorsOfResponse() throws Exception {
+        server.setCacheControl("max-age=3600, stale-while-revalidate=60");
+
+        Validators validators = fetcher.fetch(KEY).validators;
+
+        assertEquals("\"24-6\"", validators.etag);
+        assertEquals(3600, validators.maxAgeSeconds);
+        assertEquals(60, validators.staleWhileRevalidateSeconds);
+    }
+
+    @Test
+    public void fetch_answersNotModifiedWithHeldNames() throws Exception {
+        NameDays first = fetcher.fetch(KEY);
+        cache.put(KEY, first);
+        long bytes = metrics.snapshot().bytes;
+
+        NameDays second = fetcher.fetch(KEY);
+
+        assertEquals(first.names, second.names);
+        assertEquals(first.validators.etag, second.validators.etag);
+        assertEquals(2, server.requestCount());
+        assertEquals(1, metrics.snapshot().notModified);
+        assertEquals(bytes, metrics.snapshot().bytes);
+    }
+
+    @Test
+    public void validators_parseCacheControl() {
+        Validators validators = Validators.of(null, "Sat, 24 Jun 2000 00:00:00 GMT",
+                "public, max-age=86400, stale-while-revalidate=604800");
+
+        assertTrue(validators.canRevalidate());
+        assertEquals(86400, validators.maxAgeSeconds);
+        assertEquals(604800, validators.staleWhileRevalidateSeconds);
+        assertEquals(0, Validators.of(null, null, "no-cache, max-age=60").maxAgeSeconds);
+        assertFalse(Validators.of(null, null, null).canRevalidate());
+    }
+
+    @Test
+    public void validators_parseCacheControlInAnyLocale() {
+        Locale locale = Locale.getDefault();
+        // Where a capital I is not lower cased to i
+        Locale.setDefault(new Locale("tr", "TR"));
+        try {
+            assertEquals(60, Validators.of(null, null, "MAX-AGE=0, STALE-WHILE-REVALIDATE=60")
+                    .staleWhileRevalidateSeconds);
+        } finally {
+            Locale.setDefault(locale);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.john.namedays;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void percentiles_areWithinTheWidthOfABucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int micros = 1; micros <= 10000; micros++) {
+            histogram.recordMicros(micros);
+        }
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        assertEquals(10000, snapshot.count);
+        assertEquals(10000, snapshot.maxMicros);
+        assertEquals(5000, snapshot.percentileMicros(50), 5000 / 8);
+        assertEquals(9900, snapshot.percentileMicros(99), 9900 / 8);
+        assertEquals(10000, snapshot.percentileMicros(100));
+    }
+
+    @Test
+    public void buckets_coverEveryLatencyInOrder() {
+        long previous = -1;
+        for (int bucket = 0; bucket < 100; bucket++) {
+            long upper = LatencyHistogram.upperBoundOf(bucket);
+
+            assertTrue(upper > previous);
+            assertEquals(bucket, LatencyHistogram.bucketOf(upper));
+            assertEquals(bucket, LatencyHistogram.bucketOf(previous + 1));
+            previous = upper;
+        }
+    }
+
+    @Test
+    public void errors_areCountedByCategory() {
+        Metrics metrics = new Metrics();
+        metrics.recordError(new IOException("timeout"));
+        metrics.recordError(new ParseException("Unable to make json object"));
+        metrics.recordError(new MissingCountryException("No name days"));
+
+        Metrics.Snapshot snapshot = metrics.snapshot();
+
+        assertEquals(3, snapshot.requests);
+        assertEquals(1, snapshot.errors(Metrics.IO_ERROR));
+        assertEquals(1, snapshot.errors(Metrics.PARSE_ERROR));
+        assertEquals(1, snapshot.errors(Metrics.MISSING_COUNTRY));
+    }
+}
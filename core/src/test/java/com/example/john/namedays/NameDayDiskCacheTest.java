@@ -0,0 +1,154 @@
+package com.example.john.namedays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+
+/**
+ * Appends records to a disk cache in a temporary file, and opens it again after damaging it.
+ */
+public class NameDayDiskCacheTest {
+
+    private File file;
+
+    @Before
+    public void createFile() throws Exception {
+        file = File.createTempFile("namedays", ".cache");
+    }
+
+    @After
+    public void deleteFile() {
+        assertTrue(file.delete());
+    }
+
+    private void damage(long position, int length) throws Exception {
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+        try {
+            if (length == -1) {
+                out.setLength(position);
+            } else {
+                out.seek(position);
+                for (int i = 0; i < length; i++) {
+                    out.write(0x5A);
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    @Test
+    public void open_readsBackTheLatestRecords() throws Exception {
+        long before = System.currentTimeMillis();
+        NameDayDiskCache cache = NameDayDiskCache.open(file, 1 << 20);
+        // Every country of a day, as one response is stored
+        for (int id = 0; id < Countries.COUNT; id++) {
+            cache.put(24, 6, Countries.apiKey(id), "Jan " + id);
+        }
+        cache.put(24, 6, "name_cz", "Jan, Ivan");
+        assertEquals("Jan, Ivan", cache.get(24, 6, "name_cz").names);
+        assertEquals("Jan 0", cache.get(24, 6, "name_us").names);
+        cache.close();
+
+        cache = NameDayDiskCache.open(file, 1 << 20);
+        assertEquals("Jan, Ivan", cache.get(24, 6, "name_cz").names);
+        assertEquals("Jan 10", cache.get(24, 6, "name_es").names);
+        assertNull(cache.get(25, 6, "name_cz"));
+        assertTrue(cache.writtenAt(24, 6, "name_cz") >= before);
+        assertTrue(cache.writtenAt(24, 6, "name_cz") <= System.currentTimeMillis());
+        assertEquals(-1, cache.writtenAt(25, 6, "name_cz"));
+        cache.close();
+    }
+
+    @Test
+    public void get_readsRecordsAppendedAcrossRemappings() throws Exception {
+        NameDayDiskCache cache = NameDayDiskCache.open(file, 1 << 30);
+        // Far more than is held in memory between mappings
+        for (int dayOfYear = 0; dayOfYear < NameDayIndex.DAYS_IN_YEAR; dayOfYear++) {
+            for (int id = 0; id < Countries.COUNT; id++) {
+                cache.put(NameDayIndex.dayOf(dayOfYear), NameDayIndex.monthOf(dayOfYear),
+                        Countries.apiKey(id), "Names of " + dayOfYear + " in " + id);
+            }
+        }
+        assertTrue(cache.size() > 128 * 1024);
+
+        for (int dayOfYear = 0; dayOfYear < NameDayIndex.DAYS_IN_YEAR; dayOfYear++) {
+            assertEquals("Names of " + dayOfYear + " in 3", cache.get(NameDayIndex.dayOf(dayOfYear),
+                    NameDayIndex.monthOf(dayOfYear), Countries.apiKey(3)).names);
+        }
+        cache.close();
+    }
+
+    @Test
+    public void open_cutsOffRecordsThatFailTheirChecksum() throws Exception {
+        NameDayDiskCache cache = NameDayDiskCache.open(file, 1 << 20);
+        cache.put(1, 1, "name_us", "Fulgencio");
+        long first = cache.size();
+        cache.put(2, 1, "name_us", "Abel");
+        cache.put(3, 1, "name_us", "Genoveva");
+        cache.close();
+
+        // The time written, in the payload of the second record
+        damage(first + 8 + 2, 4);
+
+        cache = NameDayDiskCache.open(file, 1 << 20);
+        assertEquals("Fulgencio", cache.get(1, 1, "name_us").names);
+        assertNull(cache.get(2, 1, "name_us"));
+        // Cut off with the record before it
+        assertNull(cache.get(3, 1, "name_us"));
+        assertEquals(first, cache.size());
+        assertEquals(first, file.length());
+        cache.close();
+    }
+
+    @Test
+    public void open_cutsOffATornLastRecord() throws Exception {
+        NameDayDiskCache cache = NameDayDiskCache.open(file, 1 << 20);
+        cache.put(1, 1, "name_us", "Fulgencio");
+        long first = cache.size();
+        cache.put(2, 1, "name_us", "Abel");
+        long second = cache.size();
+        cache.close();
+
+        damage(second - 3, -1);
+
+        cache = NameDayDiskCache.open(file, 1 << 20);
+        assertEquals("Fulgencio", cache.get(1, 1, "name_us").names);
+        assertNull(cache.get(2, 1, "name_us"));
+        assertEquals(first, file.length());
+
+        // Appends go on from the last whole record
+        cache.put(2, 1, "name_us", "Abel");
+        cache.close();
+        cache = NameDayDiskCache.open(file, 1 << 20);
+        assertEquals("Abel", cache.get(2, 1, "name_us").names);
+        cache.close();
+    }
+
+    @Test
+    public void put_compactsTheFileOnceMostOfItIsSuperseded() throws Exception {
+        NameDayDiskCache cache = NameDayDiskCache.open(file, 1024);
+        cache.put(1, 1, "name_sk", "Nový rok");
+
+        long largest = 0;
+        for (int i = 0; i < 200; i++) {
+            cache.put(2, 1, "name_sk", "Alexandra, Karina " + i);
+            largest = Math.max(largest, cache.size());
+        }
+
+        assertTrue(largest < 2 * 1024 + 100);
+        assertEquals("Nový rok", cache.get(1, 1, "name_sk").names);
+        assertEquals("Alexandra, Karina 199", cache.get(2, 1, "name_sk").names);
+        cache.close();
+
+        cache = NameDayDiskCache.open(file, 1024);
+        assertEquals("Alexandra, Karina 199", cache.get(2, 1, "name_sk").names);
+        assertFalse(new File(file.getPath() + ".compact").exists());
+        cache.close();
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.john.namedays;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Looks up, puts and ages the names of a name day index, on its own and over a snapshot.
+ */
+public class NameDayIndexTest {
+
+    private static final long MAX_AGE = 1000;
+
+    @Test
+    public void dayOfYear_countsTheLeapDayAndEndsOnTheLastDayOfTheYear() {
+        assertEquals(0, NameDayIndex.dayOfYear(1, 1));
+        assertEquals(58, NameDayIndex.dayOfYear(28, 2));
+        assertEquals(59, NameDayIndex.dayOfYear(29, 2));
+        assertEquals(60, NameDayIndex.dayOfYear(1, 3));
+        assertEquals(365, NameDayIndex.dayOfYear(31, 12));
+        assertEquals(NameDayIndex.DAYS_IN_YEAR - 1, NameDayIndex.dayOfYear(31, 12));
+
+        for (int dayOfYear = 0; dayOfYear < NameDayIndex.DAYS_IN_YEAR; dayOfYear++) {
+            assertEquals(dayOfYear, NameDayIndex.dayOfYear(NameDayIndex.dayOf(dayOfYear),
+                    NameDayIndex.monthOf(dayOfYear)));
+        }
+        assertEquals(29, NameDayIndex.dayOf(59));
+        assertEquals(2, NameDayIndex.monthOf(59));
+        assertEquals(31, NameDayIndex.dayOf(365));
+        assertEquals(12, NameDayIndex.monthOf(365));
+    }
+
+    @Test
+    public void dayOfYear_rejectsDatesThatDoNotExist() {
+        assertEquals(-1, NameDayIndex.dayOfYear(30, 2));
+        assertEquals(-1, NameDayIndex.dayOfYear(31, 4));
+        assertEquals(-1, NameDayIndex.dayOfYear(32, 12));
+        assertEquals(-1, NameDayIndex.dayOfYear(0, 1));
+        assertEquals(-1, NameDayIndex.dayOfYear(1, 0));
+        assertEquals(-1, NameDayIndex.dayOfYear(1, 13));
+
+        NameDayIndex index = new NameDayIndex();
+        assertFalse(index.put(30, 2, "name_us", "Nobody"));
+        assertFalse(index.put(1, 1, "name_xx", "Nobody"));
+        assertNull(index.get(30, 2, "name_us"));
+        assertNull(index.getAll(30, 2));
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void put_keepsTheSlotsAroundTheLeapDayAndTheEndOfTheYearApart() {
+        NameDayIndex index = new NameDayIndex();
+        String last = Countries.apiKey(Countries.COUNT - 1);
+        index.put(28, 2, last, "Roman");
+        index.put(29, 2, "name_cz", "Horymír");
+        index.put(1, 3, "name_cz", "Bedřich");
+        index.put(31, 12, last, "Silvester");
+
+        assertEquals("Roman", index.get(28, 2, last));
+        assertEquals("Horymír", index.get(29, 2, "name_cz"));
+        assertEquals("Bedřich", index.get(1, 3, "name_cz"));
+        assertEquals("Silvester", index.get(31, 12, last));
+        assertNull(index.get(31, 12, "name_cz"));
+        assertEquals(4, index.size());
+
+        final List<String> visited = new ArrayList<>();
+        index.forEach(new NameDayIndex.Visitor() {
+            @Override
+            public void visit(int dayOfYear, int countryId, String names) {
+                visited.add(dayOfYear + ":" + countryId);
+            }
+        });
+        assertEquals(Arrays.asList("58:" + (Countries.COUNT - 1),
+                "59:" + Countries.idOfApiKey("name_cz"), "60:" + Countries.idOfApiKey("name_cz"),
+                "365:" + (Countries.COUNT - 1)), visited);
+
+        for (int id = 0; id < Countries.COUNT; id++) {
+            index.put(31, 12, Countries.apiKey(id), "Silvester");
+        }
+        assertTrue(index.hasDay(365));
+        assertFalse(index.hasDay(59));
+        assertFalse(index.isComplete());
+    }
+
+    @Test
+    public void isStale_onceOlderThanTheMaxAge() {
+        NameDayIndex index = new NameDayIndex();
+        index.markBuilt(5000);
+
+        assertFalse(index.isStale(5000, MAX_AGE));
+        assertFalse(index.isStale(5000 + MAX_AGE, MAX_AGE));
+        assertTrue(index.isStale(5000 + MAX_AGE + 1, MAX_AGE));
+
+        // Synced anew
+        index.markBuilt(5000 + MAX_AGE + 1);
+        assertFalse(index.isStale(5000 + MAX_AGE + 1, MAX_AGE));
+    }
+
+    @Test
+    public void put_overlaysNewerNamesOnASnapshot() throws Exception {
+        NameDayIndex built = new NameDayIndex();
+        built.put(29, 2, "name_cz", "Horymír");
+        built.put(31, 12, "name_us", "Sylvester, Silvester");
+        built.put(31, 12, "name_at", "Silvester");
+        built.markBuilt(5000);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        built.writeTo(bytes);
+
+        NameDayIndex index = NameDayIndex.of(NameDaySnapshot.wrap(
+                ByteBuffer.wrap(bytes.toByteArray())));
+        assertEquals(3, index.size());
+        assertTrue(index.isStale(5000 + MAX_AGE + 1, MAX_AGE));
+
+        // Shorter, then longer than what the snapshot holds for the slot
+        index.put(31, 12, "name_us", "Sylvester");
+        assertEquals("Sylvester", index.get(31, 12, "name_us"));
+        index.put(31, 12, "name_us", "Sylvester, Silvester, Sylvia");
+        assertEquals("Sylvester, Silvester, Sylvia", index.get(31, 12, "name_us"));
+        index.put(1, 1, "name_us", "Aaron");
+
+        assertEquals("Horymír", index.get(29, 2, "name_cz"));
+        assertEquals("Silvester", index.get(31, 12, "name_at"));
+        assertEquals("Aaron", index.get(1, 1, "name_us"));
+        // Slots of the snapshot replaced are counted once
+        assertEquals(4, index.size());
+        assertEquals("Sylvester, Silvester, Sylvia",
+                index.getAll(31, 12)[Countries.idOfApiKey("name_us")]);
+        assertEquals("Silvester", index.getAll(31, 12)[Countries.idOfApiKey("name_at")]);
+    }
+}
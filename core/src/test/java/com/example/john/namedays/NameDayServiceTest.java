@@ -0,0 +1,198 @@
+package com.example.john.namedays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the engine on the JVM, against a local server that stands in for the NameDays API.
+ */
+public class NameDayServiceTest {
+
+    private FaultInjectingServer server;
+    private final Metrics metrics = new Metrics();
+    private HttpFetcher fetcher;
+
+    @Before
+    public void startServer() throws IOException {
+        server = new FaultInjectingServer();
+        fetcher = new HttpFetcher(new ApiClient(server.baseUrl(), 1000, 1000),
+                GsonNameDaysParser.FACTORY, metrics);
+    }
+
+    @After
+    public void stopServer() {
+        server.stop();
+    }
+
+    @Test
+    public void lookup_fetchesOnceThenAnswersFromCache() throws Exception {
+        ResponseCache cache = new ResponseCache(16, TimeUnit.HOURS.toMillis(1));
+        NameDayService service = new NameDayService(fetcher, cacheOf(cache), 2, 8, metrics);
+        ResponseCache.Key key = new ResponseCache.Key("namedays", 2, 2, "name_us");
+
+        assertEquals("Names 2/2", service.lookup(key).get(1, TimeUnit.SECONDS).names);
+        assertEquals("Names 2/2", service.lookup(key).get(1, TimeUnit.SECONDS).names);
+        assertEquals(1, server.requestCount());
+    }
+
+    @Test
+    public void lookup_answersStaleNamesAndRevalidatesThem() throws Exception {
+        ResponseCache cache = new ResponseCache(16, TimeUnit.HOURS.toMillis(1));
+        HttpFetcher revalidating = new HttpFetcher(new ApiClient(server.baseUrl(), 1000, 1000),
+                GsonNameDaysParser.FACTORY, metrics, cache);
+        NameDayService service = new NameDayService(revalidating, cacheOf(cache), 2, 8, metrics);
+        ResponseCache.Key key = new ResponseCache.Key("namedays", 2, 2, "name_us");
+        // Out of date at once, but may be served for a minute while revalidated
+        server.setCacheControl("max-age=0, stale-while-revalidate=60");
+
+        service.lookup(key).get(1, TimeUnit.SECONDS);
+        assertEquals(1, server.requestCount());
+
+        Future<NameDays> stale = service.lookup(key);
+        assertTrue(stale.isDone());
+        assertEquals("Names 2/2", stale.get().names);
+
+        while (!service.isIdle()) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, server.requestCount());
+        assertEquals(1, metrics.snapshot().notModified);
+    }
+
+    @Test
+    public void lookup_loadsStoredNamesOnARequestThreadBeforeFetching() throws Exception {
+        final ResponseCache cache = new ResponseCache(16, TimeUnit.HOURS.toMillis(1));
+        final Thread[] loadedOn = new Thread[1];
+        NameDayService service = new NameDayService(fetcher, new NameDayService.Cache() {
+            @Override
+            public NameDays get(ResponseCache.Key key) {
+                return cache.get(key);
+            }
+
+            @Override
+            public NameDays getStale(ResponseCache.Key key) {
+                return cache.getStale(key);
+            }
+
+            @Override
+            public void put(ResponseCache.Key key, NameDays nameDays) {
+                cache.put(key, nameDays);
+            }
+
+            @Override
+            public NameDays load(ResponseCache.Key key) {
+                loadedOn[0] = Thread.currentThread();
+                return key.day == 2 ? new NameDays("Stored", key.day, key.month) : null;
+            }
+        }, 2, 8, metrics);
+
+        assertEquals("Stored", service.lookup(new ResponseCache.Key("namedays", 2, 2, "name_us"))
+                .get(1, TimeUnit.SECONDS).names);
+        assertNotSame(Thread.currentThread(), loadedOn[0]);
+        assertEquals(0, server.requestCount());
+
+        assertEquals("Names 3/2", service.lookup(new ResponseCache.Key("namedays", 3, 2,
+                "name_us")).get(1, TimeUnit.SECONDS).names);
+        assertEquals(1, server.requestCount());
+    }
+
+    @Test
+    public void lookup_failsWhenCountryIsMissing() throws Exception {
+        NameDayService service = new NameDayService(fetcher, cacheOf(null), 2, 8, metrics);
+
+        try {
+            service.lookup(new ResponseCache.Key("namedays", 2, 2, "name_cz"))
+                    .get(1, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof MissingCountryException);
+        }
+        assertEquals(1, metrics.snapshot().errors(Metrics.MISSING_COUNTRY));
+    }
+
+    @Test
+    public void lookup_doesNotCacheNamesFallenBackTo() throws Exception {
+        ResponseCache cache = new ResponseCache(16, TimeUnit.HOURS.toMillis(1));
+        ResilientFetcher resilient = new ResilientFetcher(fetcher, 1, 10, 100, 0,
+                new CircuitBreaker(5, 1000, null), new ResilientFetcher.Fallback() {
+                    @Override
+                    public NameDays fallback(ResponseCache.Key key) {
+                        return new NameDays("Stale", key.day, key.month);
+                    }
+                });
+        NameDayService service = new NameDayService(resilient, cacheOf(cache), 2, 8, metrics);
+        ResponseCache.Key key = new ResponseCache.Key("namedays", 2, 2, "name_us");
+        server.failNext(1, 503);
+
+        assertEquals("Stale", service.lookup(key).get(1, TimeUnit.SECONDS).names);
+        assertNull(cache.getStale(key));
+        assertEquals("Names 2/2", service.lookup(key).get(1, TimeUnit.SECONDS).names);
+    }
+
+    @Test
+    public void lookup_keepsUpWithManyLookups() throws Exception {
+        final int lookups = 2000;
+        ResponseCache cache = new ResponseCache(NameDayIndex.DAYS_IN_YEAR,
+                TimeUnit.HOURS.toMillis(1));
+        NameDayService service = new NameDayService(fetcher, cacheOf(cache), 4, lookups, metrics);
+        List<Future<NameDays>> futures = new ArrayList<>(NameDayIndex.DAYS_IN_YEAR);
+
+        for (int dayOfYear = 0; dayOfYear < NameDayIndex.DAYS_IN_YEAR; dayOfYear++) {
+            futures.add(service.lookup(keyOf(dayOfYear)));
+        }
+        for (Future<NameDays> future : futures) {
+            assertNotNull(future.get(10, TimeUnit.SECONDS).names);
+        }
+        assertEquals(NameDayIndex.DAYS_IN_YEAR, server.requestCount());
+
+        // Every later lookup is answered from the cache, before it returns
+        for (int i = 0; i < lookups; i++) {
+            Future<NameDays> future = service.lookup(keyOf(i % NameDayIndex.DAYS_IN_YEAR));
+            assertTrue(future.isDone());
+            assertNotNull(future.get().names);
+        }
+        assertEquals(NameDayIndex.DAYS_IN_YEAR, server.requestCount());
+        assertEquals(NameDayIndex.DAYS_IN_YEAR, metrics.snapshot().requests);
+    }
+
+    private static ResponseCache.Key keyOf(int dayOfYear) {
+        return new ResponseCache.Key("namedays", NameDayIndex.dayOf(dayOfYear),
+                NameDayIndex.monthOf(dayOfYear), "name_us");
+    }
+
+    private static NameDayService.Cache cacheOf(final ResponseCache cache) {
+        return new NameDayService.Cache() {
+            @Override
+            public NameDays get(ResponseCache.Key key) {
+                return cache != null ? cache.get(key) : null;
+            }
+
+            @Override
+            public NameDays getStale(ResponseCache.Key key) {
+                return cache != null ? cache.getStale(key) : null;
+            }
+
+            @Override
+            public void put(ResponseCache.Key key, NameDays nameDays) {
+                if (cache != null) {
+                    cache.put(key, nameDays);
+                }
+            }
+
+            @Override
+            public NameDays load(ResponseCache.Key key) {
+                return null;
+            }
+        };
+    }
+}
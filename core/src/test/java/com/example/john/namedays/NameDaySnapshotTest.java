@@ -0,0 +1,91 @@
+package com.example.john.namedays;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Writes name day indexes as snapshots, and reads and maps them back.
+ */
+public class NameDaySnapshotTest {
+
+    private static byte[] snapshotOf(NameDayIndex index) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        index.writeTo(bytes);
+        return bytes.toByteArray();
+    }
+
+    @Test
+    public void snapshot_roundTripsAndSharesRepeatedNames() throws Exception {
+        NameDayIndex index = new NameDayIndex();
+        index.put(1, 1, "name_us", "Aaron, Abigail");
+        index.put(1, 1, "name_es", "María, Manuel");
+        index.put(29, 2, "name_cz", "Horymír");
+        index.put(31, 12, "name_at", "Silvester");
+        index.put(31, 12, "name_hu", "Silvester");
+        index.markBuilt(1234);
+
+        byte[] bytes = snapshotOf(index);
+        NameDayIndex read = NameDayIndex.readFrom(new ByteArrayInputStream(bytes));
+
+        assertEquals("María, Manuel", read.get(1, 1, "name_es"));
+        assertEquals("Horymír", read.get(29, 2, "name_cz"));
+        assertEquals("Silvester", read.get(31, 12, "name_hu"));
+        assertNull(read.get(2, 1, "name_us"));
+        assertEquals(5, read.size());
+        assertFalse(read.isStale(1234, 0));
+
+        // Names repeated, even among other names, cost only their count and references
+        index.put(30, 12, "name_at", "Silvester");
+        assertEquals(bytes.length + 1, snapshotOf(index).length);
+        index.put(2, 1, "name_us", "Abigail, Aaron");
+        assertEquals(bytes.length + 3, snapshotOf(index).length);
+        assertEquals("Abigail, Aaron", NameDayIndex.readFrom(
+                new ByteArrayInputStream(snapshotOf(index))).get(2, 1, "name_us"));
+    }
+
+    @Test
+    public void map_laysNewNamesOverSnapshot() throws Exception {
+        NameDayIndex index = new NameDayIndex();
+        index.put(24, 6, "name_us", "Ivan");
+        index.put(24, 6, "name_sk", "Ján");
+
+        File file = File.createTempFile("namedays", ".idx");
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            out.write(snapshotOf(index));
+            out.close();
+
+            NameDayIndex mapped = NameDayIndex.map(file);
+            mapped.put(24, 6, "name_us", "John");
+            mapped.put(25, 6, "name_us", "Ivan");
+
+            assertEquals("John", mapped.get(24, 6, "name_us"));
+            assertEquals("Ján", mapped.get(24, 6, "name_sk"));
+            assertEquals(3, mapped.size());
+
+            NameDayIndex rewritten = NameDayIndex.readFrom(
+                    new ByteArrayInputStream(snapshotOf(mapped)));
+            assertEquals("John", rewritten.get(24, 6, "name_us"));
+            assertEquals("Ivan", rewritten.get(25, 6, "name_us"));
+        } finally {
+            assertTrue(file.delete());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void wrap_rejectsTruncatedSnapshot() throws Exception {
+        NameDayIndex index = new NameDayIndex();
+        index.put(1, 1, "name_us", "Aaron");
+        byte[] bytes = snapshotOf(index);
+
+        NameDaySnapshot.wrap(ByteBuffer.wrap(bytes, 0, bytes.length - 1).slice());
+    }
+}
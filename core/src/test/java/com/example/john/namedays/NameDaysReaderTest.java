@@ -0,0 +1,82 @@
+package com.example.john.namedays;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Parses response bodies, well and badly shaped, as the app does, on Gson's JsonReader.
+ */
+public class NameDaysReaderTest {
+
+    private static NameDays parse(String country, String body) throws IOException {
+        return new GsonNameDaysParser(country).read(
+                new ByteArrayInputStream(body.getBytes("UTF-8")));
+    }
+
+    private static void assertRejected(String country, String body,
+                                       Class<? extends IOException> expected) {
+        try {
+            parse(country, body);
+            fail("Parsed " + body);
+        } catch (IOException e) {
+            assertEquals(body, expected, e.getClass());
+        }
+    }
+
+    @Test
+    public void read_skipsUnknownFields() throws Exception {
+        NameDays nameDays = parse("name_cz", "{\"state\":\"ok\",\"meta\":{\"a\":[1,{\"b\":null}]},"
+                + "\"data\":{\"day\":24,\"extra\":[\"x\"],\"month\":6,\"name_cz\":\"Jan\","
+                + "\"name_de\":\"Johannes\",\"name_us\":\"John\"},\"trailer\":true}");
+
+        assertEquals("Jan", nameDays.names);
+        assertEquals(24, nameDays.day);
+        assertEquals(6, nameDays.month);
+        assertEquals("John", nameDays.allCountries[Countries.idOfApiKey("name_us")]);
+        assertNull(nameDays.allCountries[Countries.idOfApiKey("name_sk")]);
+    }
+
+    @Test
+    public void read_failsOnAMissingCountry() {
+        assertRejected("name_sk", "{\"data\":{\"day\":1,\"month\":1,\"name_cz\":\"Nový rok\"}}",
+                MissingCountryException.class);
+        // Not a string, so not names
+        assertRejected("name_sk", "{\"data\":{\"day\":1,\"month\":1,\"name_sk\":null}}",
+                MissingCountryException.class);
+        assertRejected("name_sk", "{\"data\":{\"day\":1,\"month\":1,\"name_sk\":[\"Ján\"]}}",
+                MissingCountryException.class);
+        assertRejected("name_sk", "{\"data\":{\"day\":1,\"month\":1,\"name_sk\":7}}",
+                MissingCountryException.class);
+    }
+
+    @Test
+    public void read_answersEveryCountryWithoutOne() throws Exception {
+        NameDays nameDays = parse(null, "{\"data\":{\"day\":\"29\",\"month\":2,\"name_cz\":\"Horymír\"}}");
+
+        assertNull(nameDays.names);
+        assertEquals(29, nameDays.day);
+        assertEquals("Horymír", nameDays.allCountries[Countries.idOfApiKey("name_cz")]);
+    }
+
+    @Test
+    public void read_rejectsBodiesNotShapedAsResponses() {
+        String[] bodies = {
+                "[]",
+                "{}",
+                "{\"data\":[]}",
+                "{\"data\":\"none\"}",
+                "{\"data\":{\"month\":1,\"name_us\":\"Fulgencio\"}}",
+                "{\"data\":{\"day\":null,\"month\":1,\"name_us\":\"Fulgencio\"}}",
+                "{\"data\":{\"day\":\"first\",\"month\":1,\"name_us\":\"Fulgencio\"}}",
+                "{\"data\":{\"day\":{},\"month\":1,\"name_us\":\"Fulgencio\"}}",
+                "{\"data\":{\"day\":30,\"month\":2,\"name_us\":\"Fulgencio\"}}",
+        };
+        for (String body : bodies) {
+            assertRejected("name_us", body, ParseException.class);
+        }
+    }
+}
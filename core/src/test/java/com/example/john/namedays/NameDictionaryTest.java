@@ -0,0 +1,50 @@
+package com.example.john.namedays;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class NameDictionaryTest {
+
+    @Test
+    public void encode_storesEachNameOnce() {
+        NameDictionary dictionary = new NameDictionary();
+
+        int[] pl = dictionary.encode("Maria, Mirosław");
+        int[] cz = dictionary.encode("Jan");
+        int[] sk = dictionary.encode("Mirosław, Jan");
+
+        assertEquals(3, dictionary.size());
+        assertEquals(pl[1], sk[0]);
+        assertEquals(cz[0], sk[1]);
+        assertEquals("Mirosław", dictionary.name(sk[0]));
+    }
+
+    @Test
+    public void decode_restoresEntriesExactly() {
+        NameDictionary dictionary = new NameDictionary();
+        String[] entries = {"Šárka", "Maria, Mirosław", "Ödön, , Jan", "", "a,b", "Jan, "};
+
+        int[][] ids = new int[entries.length][];
+        for (int i = 0; i < entries.length; i++) {
+            ids[i] = dictionary.encode(entries[i]);
+        }
+        for (int i = 0; i < entries.length; i++) {
+            assertEquals(entries[i], dictionary.decode(ids[i], 0, ids[i].length));
+        }
+    }
+
+    @Test
+    public void intern_keepsNumbersAcrossGrowth() {
+        NameDictionary dictionary = new NameDictionary();
+
+        for (int i = 0; i < 5000; i++) {
+            assertEquals(i, dictionary.intern("Name " + i));
+        }
+        for (int i = 0; i < 5000; i++) {
+            assertEquals(i, dictionary.intern("Name " + i));
+            assertEquals("Name " + i, dictionary.name(i));
+        }
+        assertEquals(5000, dictionary.size());
+    }
+}
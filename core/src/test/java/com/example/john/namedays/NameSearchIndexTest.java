@@ -0,0 +1,39 @@
+package com.example.john.namedays;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class NameSearchIndexTest {
+    private static final int CZ = Countries.idOfApiKey("name_cz");
+    private static final int PL = Countries.idOfApiKey("name_pl");
+
+    @Test
+    public void fold_removesDiacriticsAndCase() {
+        assertEquals("sarka", NameSearchIndex.fold("Šárka"));
+        assertEquals("lukasz", NameSearchIndex.fold("Łukasz"));
+        assertEquals("odon", NameSearchIndex.fold("Ödön"));
+    }
+
+    @Test
+    public void search_findsNamesByFoldedPrefix() {
+        NameSearchIndex index = new NameSearchIndex();
+        index.add(NameDayIndex.dayOfYear(14, 1), CZ, "Bohumila");
+        index.add(NameDayIndex.dayOfYear(2, 2), PL, "Maria, Mirosław");
+        index.add(NameDayIndex.dayOfYear(24, 6), CZ, "Jan");
+        index.add(NameDayIndex.dayOfYear(5, 3), CZ, "Jana, Jan");
+
+        List<NameSearchIndex.Match> matches = index.search("jan", CZ, 10);
+
+        assertEquals(2, matches.size());
+        assertEquals("Jan", matches.get(0).name);
+        assertArrayEquals(new int[]{NameDayIndex.dayOfYear(5, 3), NameDayIndex.dayOfYear(24, 6)},
+                matches.get(0).daysOfYear);
+        assertEquals("Jana", matches.get(1).name);
+
+        assertEquals("Mirosław", index.search("MIROSL", PL, 10).get(0).name);
+        assertTrue(index.search("mirosl", CZ, 10).isEmpty());
+    }
+}
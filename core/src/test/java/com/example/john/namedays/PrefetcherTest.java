@@ -0,0 +1,138 @@
+package com.example.john.namedays;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Schedules prefetches over fetchers that record what they are asked for, with nothing else in
+ * flight.
+ */
+public class PrefetcherTest {
+
+    private static final NameDayService.Cache NO_CACHE = new NameDayService.Cache() {
+        @Override
+        public NameDays get(ResponseCache.Key key) {
+            return null;
+        }
+
+        @Override
+        public NameDays getStale(ResponseCache.Key key) {
+            return null;
+        }
+
+        @Override
+        public void put(ResponseCache.Key key, NameDays nameDays) {
+        }
+
+        @Override
+        public NameDays load(ResponseCache.Key key) {
+            return null;
+        }
+    };
+
+    /**
+     * Holds the keys stored, and has those it was given to begin with
+     */
+    private static final class ListStore implements Prefetcher.Store {
+        final List<String> stored = Collections.synchronizedList(new ArrayList<String>());
+        final List<String> contained;
+
+        ListStore(String... contained) {
+            this.contained = Arrays.asList(contained);
+        }
+
+        @Override
+        public boolean contains(ResponseCache.Key key) {
+            return contained.contains(key.day + "/" + key.month);
+        }
+
+        @Override
+        public void store(ResponseCache.Key key, NameDays nameDays) {
+            stored.add(key.day + "/" + key.month);
+        }
+    }
+
+    private static NameDayService idleService(RequestExecutor.Fetcher fetcher) {
+        return new NameDayService(fetcher, NO_CACHE, 1, 1, new Metrics());
+    }
+
+    @Test
+    public void schedule_fetchesTheNearestDaysNotAtHand() throws Exception {
+        final List<String> fetched = Collections.synchronizedList(new ArrayList<String>());
+        RequestExecutor.Fetcher fetcher = new RequestExecutor.Fetcher() {
+            @Override
+            public NameDays fetch(ResponseCache.Key key) {
+                fetched.add(key.day + "/" + key.month + " " + key.country);
+                return new NameDays("Names", key.day, key.month);
+            }
+        };
+        ListStore store = new ListStore("2/3");
+        Prefetcher prefetcher = new Prefetcher(fetcher, idleService(fetcher), store, 2, 0);
+
+        // Across the leap day, nearest first, later before earlier
+        prefetcher.schedule(1, 3, "name_us");
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (store.stored.size() < 3 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(Arrays.asList("29/2 name_us", "3/3 name_us", "28/2 name_us"), fetched);
+        assertEquals(Arrays.asList("29/2", "3/3", "28/2"), store.stored);
+    }
+
+    @Test
+    public void cancel_abortsThePrefetchInFlight() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch aborted = new CountDownLatch(1);
+        final List<String> fetched = Collections.synchronizedList(new ArrayList<String>());
+        RequestExecutor.Fetcher fetcher = new RequestExecutor.Fetcher() {
+            @Override
+            public NameDays fetch(ResponseCache.Key key) throws IOException {
+                fetched.add(key.day + "/" + key.month);
+                // Blocks as a read of a socket does, deaf to interruption until aborted
+                CancellableThread.onInterrupt(new CancellableThread.Abort() {
+                    @Override
+                    public void abort() {
+                        aborted.countDown();
+                    }
+                });
+                started.countDown();
+                boolean done = false, interrupted = false;
+                while (!done) {
+                    try {
+                        done = aborted.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                CancellableThread.onInterrupt(null);
+                if (interrupted) {
+                    // Left set, as a socket leaves it
+                    Thread.currentThread().interrupt();
+                }
+                throw new IOException("Socket closed");
+            }
+        };
+        ListStore store = new ListStore();
+        Prefetcher prefetcher = new Prefetcher(fetcher, idleService(fetcher), store, 3, 0);
+
+        prefetcher.schedule(10, 5, "name_us");
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        prefetcher.cancel();
+
+        assertTrue(aborted.await(1, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        // The rest of the plan is dropped
+        assertEquals(Collections.singletonList("11/5"), fetched);
+        assertTrue(store.stored.isEmpty());
+    }
+}
@@ -0,0 +1,228 @@
+package com.example.john.namedays;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs queries over ranges of dates against a fetcher, a service of lookups and a local store that
+ * the test controls.
+ */
+public class RangeQueryTest {
+
+    private static final String[] US = {"name_us"};
+
+    /**
+     * Records what the listener is told, and waits for the query to complete
+     */
+    private static final class Recorder implements RangeQuery.Listener {
+        final List<String> results = Collections.synchronizedList(new ArrayList<String>());
+        final List<String> failures = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch complete = new CountDownLatch(1);
+        volatile int succeeded = -1, failed = -1;
+
+        @Override
+        public void onResult(int day, int month, String[] names) {
+            results.add(day + "/" + month + " " + Arrays.toString(names));
+        }
+
+        @Override
+        public void onFailure(int day, int month, IOException e) {
+            failures.add(day + "/" + month);
+        }
+
+        @Override
+        public void onComplete(int succeeded, int failed) {
+            this.succeeded = succeeded;
+            this.failed = failed;
+            complete.countDown();
+        }
+
+        /**
+         * @return The dates with results, as day/month, in order of date
+         */
+        List<String> dates() throws InterruptedException {
+            assertTrue(complete.await(2, TimeUnit.SECONDS));
+            List<String> dates = new ArrayList<>();
+            for (String result : new TreeSet<>(results)) {
+                dates.add(result.substring(0, result.indexOf(' ')));
+            }
+            return dates;
+        }
+    }
+
+    /**
+     * Fetches names for every date but those it is told to fail, and counts its fetches
+     */
+    private static final class Fetcher implements RequestExecutor.Fetcher {
+        final List<String> fetched = Collections.synchronizedList(new ArrayList<String>());
+        final List<String> failing;
+
+        Fetcher(String... failing) {
+            this.failing = Arrays.asList(failing);
+        }
+
+        @Override
+        public NameDays fetch(ResponseCache.Key key) throws IOException {
+            String date = key.day + "/" + key.month;
+            fetched.add(date);
+            if (failing.contains(date)) {
+                throw new IOException("Failed " + date);
+            }
+            String[] allCountries = new String[Countries.COUNT];
+            allCountries[Countries.idOfApiKey("name_us")] = "US " + date;
+            allCountries[Countries.idOfApiKey("name_cz")] = "CZ " + date;
+            return new NameDays(null, key.day, key.month, allCountries);
+        }
+    }
+
+    /**
+     * Knows the dates it is given, for every country, and keeps nothing
+     */
+    private static RangeQuery.Lookup knowing(final String... dates) {
+        return new RangeQuery.Lookup() {
+            @Override
+            public String find(int day, int month, String country) {
+                return Arrays.asList(dates).contains(day + "/" + month) ? "Known" : null;
+            }
+
+            @Override
+            public void store(ResponseCache.Key key, NameDays nameDays) {
+            }
+        };
+    }
+
+    private static final NameDayService.Cache NO_CACHE = new NameDayService.Cache() {
+        @Override
+        public NameDays get(ResponseCache.Key key) {
+            return null;
+        }
+
+        @Override
+        public NameDays getStale(ResponseCache.Key key) {
+            return null;
+        }
+
+        @Override
+        public void put(ResponseCache.Key key, NameDays nameDays) {
+        }
+
+        @Override
+        public NameDays load(ResponseCache.Key key) {
+            return null;
+        }
+    };
+
+    /**
+     * A service with no lookup in flight, which the query never joins
+     */
+    private static NameDayService idleService() {
+        return new NameDayService(new Fetcher(), NO_CACHE, 1, 1, new Metrics());
+    }
+
+    private static Calendar date(int year, int month, int day) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(year, month - 1, day);
+        return calendar;
+    }
+
+    @Test
+    public void month_includesTheLeapDay() throws Exception {
+        Recorder recorder = new Recorder();
+        new RangeQuery(new Fetcher(), idleService(), knowing(), 3).month(2, US, recorder);
+
+        List<String> dates = recorder.dates();
+        assertEquals(29, dates.size());
+        assertTrue(dates.contains("29/2"));
+        assertEquals(29, recorder.succeeded);
+        assertEquals(0, recorder.failed);
+    }
+
+    @Test
+    public void range_crossesTheEndOfTheYear() throws Exception {
+        Recorder recorder = new Recorder();
+        new RangeQuery(new Fetcher(), idleService(), knowing(), 2).range(date(2000, 12, 30), date(2001, 1, 2),
+                US, recorder);
+
+        assertEquals(new TreeSet<>(Arrays.asList("30/12", "31/12", "1/1", "2/1")),
+                new TreeSet<>(recorder.dates()));
+    }
+
+    @Test
+    public void week_crossesTheEndOfFebruary() throws Exception {
+        Recorder recorder = new Recorder();
+        new RangeQuery(new Fetcher(), idleService(), knowing(), 2).week(26, 2, new String[]{"name_cz", "name_us"},
+                recorder);
+
+        assertEquals(new TreeSet<>(Arrays.asList("26/2", "27/2", "28/2", "29/2", "1/3", "2/3",
+                "3/3")), new TreeSet<>(recorder.dates()));
+        // Every country from one response
+        assertTrue(recorder.results.contains("29/2 [CZ 29/2, US 29/2]"));
+    }
+
+    @Test
+    public void range_goesOnPastFailedDates() throws Exception {
+        Recorder recorder = new Recorder();
+        Fetcher fetcher = new Fetcher("15/1", "31/1");
+        new RangeQuery(fetcher, idleService(), knowing("1/1", "2/1"), 4).month(1, US, recorder);
+
+        assertEquals(29, recorder.dates().size());
+        assertEquals(new TreeSet<>(Arrays.asList("15/1", "31/1")),
+                new TreeSet<>(recorder.failures));
+        assertEquals(29, recorder.succeeded);
+        assertEquals(2, recorder.failed);
+        assertTrue(recorder.results.contains("1/1 [Known]"));
+        // Known dates cost no request
+        assertEquals(29, fetcher.fetched.size());
+        assertFalse(fetcher.fetched.contains("1/1"));
+    }
+
+    @Test
+    public void month_joinsALookupInFlight() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        NameDayService service = new NameDayService(new RequestExecutor.Fetcher() {
+            @Override
+            public NameDays fetch(ResponseCache.Key key) throws IOException {
+                started.countDown();
+                try {
+                    release.await(2, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                String[] allCountries = new String[Countries.COUNT];
+                allCountries[Countries.idOfApiKey("name_us")] = "Looked up";
+                return new NameDays(null, key.day, key.month, allCountries);
+            }
+        }, NO_CACHE, 1, 1, new Metrics());
+        service.lookup(new ResponseCache.Key("namedays", 5, 1, "name_us"));
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+
+        Recorder recorder = new Recorder();
+        Fetcher fetcher = new Fetcher();
+        new RangeQuery(fetcher, service, knowing(), 4).month(1, US, recorder);
+
+        // Every other date of the month fetched, while the one in flight waits for its lookup
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (fetcher.fetched.size() < 30 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        release.countDown();
+
+        assertEquals(31, recorder.dates().size());
+        assertTrue(recorder.results.contains("5/1 [Looked up]"));
+        assertEquals(30, fetcher.fetched.size());
+        assertFalse(fetcher.fetched.contains("5/1"));
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.john.namedays;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the rate limiter on its own, and in front of a local server that throttles on demand.
+ */
+public class RateLimiterTest {
+
+    @Test
+    public void acquire_delaysRequestsBeyondTheBurst() throws Exception {
+        RateLimiter limiter = new RateLimiter(10, 2, 1000, 0.001, 0, 1000);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 3; i++) {
+            limiter.acquire(RateLimiter.Priority.INTERACTIVE);
+        }
+
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(80));
+        assertEquals(3, limiter.allowedCount(RateLimiter.Priority.INTERACTIVE));
+        assertEquals(1, limiter.delayedCount(RateLimiter.Priority.INTERACTIVE));
+    }
+
+    @Test
+    public void acquire_rejectsRequestsThatWouldWaitTooLong() throws Exception {
+        RateLimiter limiter = new RateLimiter(0.1, 1, 100, 0.1, 1, 100);
+
+        limiter.acquire(RateLimiter.Priority.INTERACTIVE);
+        // Borrowed from the background budget
+        limiter.acquire(RateLimiter.Priority.INTERACTIVE);
+        try {
+            limiter.acquire(RateLimiter.Priority.INTERACTIVE);
+            fail();
+        } catch (RateLimiter.RateLimitedException expected) {
+        }
+        try {
+            limiter.acquire(RateLimiter.Priority.BACKGROUND);
+            fail();
+        } catch (RateLimiter.RateLimitedException expected) {
+        }
+        assertEquals(1, limiter.rejectedCount(RateLimiter.Priority.INTERACTIVE));
+        assertEquals(1, limiter.rejectedCount(RateLimiter.Priority.BACKGROUND));
+    }
+
+    @Test
+    public void acquire_letsInteractiveRequestsAheadOfBackground() throws Exception {
+        final RateLimiter limiter = new RateLimiter(0.001, 1, 2000, 5, 1, 2000);
+        limiter.acquire(RateLimiter.Priority.INTERACTIVE);
+        limiter.acquire(RateLimiter.Priority.BACKGROUND);
+
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        Thread background = acquireOn(limiter, RateLimiter.Priority.BACKGROUND, order);
+        Thread.sleep(50);
+        Thread interactive = acquireOn(limiter, RateLimiter.Priority.INTERACTIVE, order);
+        background.join();
+        interactive.join();
+
+        assertEquals(2, order.size());
+        assertEquals("INTERACTIVE", order.get(0));
+        assertEquals("BACKGROUND", order.get(1));
+    }
+
+    private static Thread acquireOn(final RateLimiter limiter, final RateLimiter.Priority priority,
+                                    final List<String> order) {
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    limiter.acquire(priority);
+                    order.add(priority.name());
+                } catch (IOException e) {
+                    order.add(e.toString());
+                }
+            }
+        };
+        thread.start();
+        return thread;
+    }
+
+    @Test
+    public void fetch_pausesEveryRequestForRetryAfter() throws Exception {
+        FaultInjectingServer server = new FaultInjectingServer();
+        try {
+            RateLimiter limiter = new RateLimiter(100, 10, 5000, 100, 10, 5000);
+            RequestExecutor.Fetcher fetcher = limiter.limit(new HttpFetcher(
+                    new ApiClient(server.baseUrl(), 1000, 2000), GsonNameDaysParser.FACTORY,
+                    new Metrics()), RateLimiter.Priority.INTERACTIVE);
+            ResponseCache.Key key = new ResponseCache.Key("namedays", 2, 2, "name_us");
+            server.setRetryAfter("1");
+            server.failNext(1, 429);
+
+            try {
+                fetcher.fetch(key);
+                fail();
+            } catch (ApiClient.StatusException e) {
+                assertEquals(429, e.status);
+                assertEquals(1000, e.retryAfterMillis);
+            }
+
+            long start = System.nanoTime();
+            assertEquals("Names 2/2", fetcher.fetch(key).names);
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(900));
+            assertEquals(1, limiter.throttledCount());
+        } finally {
+            server.stop();
+        }
+    }
+}
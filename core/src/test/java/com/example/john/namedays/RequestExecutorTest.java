@@ -0,0 +1,152 @@
+package com.example.john.namedays;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the executor over a fetcher that holds each fetch until the test releases it.
+ */
+public class RequestExecutorTest {
+
+    private static final ResponseCache.Key KEY = new ResponseCache.Key("namedays", 2, 2, "name_us");
+
+    /**
+     * Counts its fetches, and blocks each until released
+     */
+    private static final class GatedFetcher implements RequestExecutor.Fetcher {
+        final AtomicInteger fetches = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        volatile boolean interrupted;
+
+        @Override
+        public NameDays fetch(ResponseCache.Key key) throws IOException {
+            fetches.incrementAndGet();
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                interrupted = true;
+                throw new InterruptedIOException("Cancelled");
+            }
+            return new NameDays("Names " + key.day + "/" + key.month, key.day, key.month);
+        }
+    }
+
+    private static final class RecordingListener implements RequestExecutor.Listener {
+        final List<NameDays> responses = Collections.synchronizedList(new ArrayList<NameDays>());
+        final CountDownLatch done = new CountDownLatch(1);
+
+        @Override
+        public void onResponse(ResponseCache.Key key, NameDays nameDays) {
+            responses.add(nameDays);
+            done.countDown();
+        }
+
+        @Override
+        public void onFailure(ResponseCache.Key key, IOException e) {
+            done.countDown();
+        }
+    }
+
+    @Test
+    public void submit_sharesOneFetchBetweenConcurrentRequestsForAKey() throws Exception {
+        GatedFetcher fetcher = new GatedFetcher();
+        RequestExecutor executor = new RequestExecutor(fetcher, 2, 8, new Metrics());
+
+        RecordingListener[] listeners = new RecordingListener[4];
+        for (int i = 0; i < listeners.length; i++) {
+            listeners[i] = new RecordingListener();
+            executor.submit(KEY, listeners[i]);
+        }
+        assertTrue(fetcher.started.await(1, TimeUnit.SECONDS));
+        fetcher.release.countDown();
+
+        for (RecordingListener listener : listeners) {
+            assertTrue(listener.done.await(1, TimeUnit.SECONDS));
+            assertEquals(1, listener.responses.size());
+            assertSame(listeners[0].responses.get(0), listener.responses.get(0));
+        }
+        assertEquals(1, fetcher.fetches.get());
+        assertTrue(executor.isIdle());
+    }
+
+    @Test
+    public void cancel_leavesTheSharedFetchToTheOtherListeners() throws Exception {
+        GatedFetcher fetcher = new GatedFetcher();
+        RequestExecutor executor = new RequestExecutor(fetcher, 2, 8, new Metrics());
+        RecordingListener cancelled = new RecordingListener();
+        RecordingListener kept = new RecordingListener();
+
+        executor.submit(KEY, cancelled);
+        executor.submit(KEY, kept);
+        assertTrue(fetcher.started.await(1, TimeUnit.SECONDS));
+        executor.cancel(KEY, cancelled);
+        assertTrue(executor.isInFlight(KEY));
+        fetcher.release.countDown();
+
+        assertTrue(kept.done.await(1, TimeUnit.SECONDS));
+        assertEquals("Names 2/2", kept.responses.get(0).names);
+        assertTrue(cancelled.responses.isEmpty());
+        assertFalse(fetcher.interrupted);
+    }
+
+    @Test
+    public void cancel_interruptsTheFetchOnceNoListenerIsLeft() throws Exception {
+        GatedFetcher fetcher = new GatedFetcher();
+        RequestExecutor executor = new RequestExecutor(fetcher, 2, 8, new Metrics());
+        RecordingListener first = new RecordingListener();
+        RecordingListener second = new RecordingListener();
+
+        executor.submit(KEY, first);
+        executor.submit(KEY, second);
+        assertTrue(fetcher.started.await(1, TimeUnit.SECONDS));
+        executor.cancel(KEY, first);
+        executor.cancel(KEY, second);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (!fetcher.interrupted && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(fetcher.interrupted);
+        assertFalse(executor.isInFlight(KEY));
+        assertEquals(1, first.done.getCount());
+        assertEquals(1, second.done.getCount());
+    }
+
+    @Test
+    public void submit_recoversFromAFetcherThatThrows() throws Exception {
+        final AtomicInteger fetches = new AtomicInteger();
+        RequestExecutor executor = new RequestExecutor(new RequestExecutor.Fetcher() {
+            @Override
+            public NameDays fetch(ResponseCache.Key key) {
+                if (fetches.incrementAndGet() == 1) {
+                    throw new IllegalStateException("Broken");
+                }
+                return new NameDays("Names", key.day, key.month);
+            }
+        }, 1, 8, new Metrics());
+
+        RecordingListener failed = new RecordingListener();
+        executor.submit(KEY, failed);
+        assertTrue(failed.done.await(1, TimeUnit.SECONDS));
+        assertTrue(failed.responses.isEmpty());
+        assertFalse(executor.isInFlight(KEY));
+
+        RecordingListener retried = new RecordingListener();
+        executor.submit(KEY, retried);
+        assertTrue(retried.done.await(1, TimeUnit.SECONDS));
+        assertEquals("Names", retried.responses.get(0).names);
+        assertEquals(2, fetches.get());
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.john.namedays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the resilient fetcher against a local server that fails and stalls on demand.
+ */
+public class ResilientFetcherTest {
+    private static final ResponseCache.Key KEY =
+            new ResponseCache.Key("namedays", 2, 2, "name_us");
+
+    private FaultInjectingServer server;
+    private HttpFetcher fetcher;
+
+    @Before
+    public void startServer() throws IOException {
+        server = new FaultInjectingServer();
+        fetcher = new HttpFetcher(new ApiClient(server.baseUrl(), 1000, 2000),
+                GsonNameDaysParser.FACTORY, new Metrics());
+    }
+
+    @After
+    public void stopServer() {
+        server.stop();
+    }
+
+    @Test
+    public void fetch_retriesTransientFailures() throws Exception {
+        ResilientFetcher resilient = new ResilientFetcher(fetcher, 3, 10, 100, 0,
+                new CircuitBreaker(5, 1000, null), null);
+        server.failNext(2, 503);
+
+        assertEquals("Names 2/2", resilient.fetch(KEY).names);
+        assertEquals(3, server.requestCount());
+        assertEquals(2, resilient.retryCount());
+    }
+
+    @Test
+    public void fetch_doesNotRetryClientErrors() throws Exception {
+        ResilientFetcher resilient = new ResilientFetcher(fetcher, 3, 10, 100, 0,
+                new CircuitBreaker(5, 1000, null), null);
+        server.failNext(1, 404);
+
+        try {
+            resilient.fetch(KEY);
+            fail();
+        } catch (ApiClient.StatusException e) {
+            assertEquals(404, e.status);
+        }
+        assertEquals(1, server.requestCount());
+        assertEquals(CircuitBreaker.State.CLOSED, resilient.getBreaker().getState());
+    }
+
+    @Test
+    public void fetch_hedgesSlowAttempt() throws Exception {
+        ResilientFetcher resilient = new ResilientFetcher(fetcher, 1, 10, 100, 50,
+                new CircuitBreaker(5, 1000, null), null);
+        server.delayNext(1, 1500);
+
+        long start = System.nanoTime();
+        assertEquals("Names 2/2", resilient.fetch(KEY).names);
+
+        assertTrue(System.nanoTime() - start < 1000 * 1000000L);
+        assertEquals(1, resilient.hedgeCount());
+        assertEquals(1, resilient.hedgeWinCount());
+    }
+
+    @Test
+    public void breaker_opensFailsFastAndFallsBack() throws Exception {
+        final NameDays stale = new NameDays("Stale", 2, 2);
+        ResilientFetcher resilient = new ResilientFetcher(fetcher, 1, 10, 100, 0,
+                new CircuitBreaker(2, 200, null), new ResilientFetcher.Fallback() {
+                    @Override
+                    public NameDays fallback(ResponseCache.Key key) {
+                        return stale;
+                    }
+                });
+        server.failNext(2, 503);
+
+        assertEquals("Stale", resilient.fetch(KEY).names);
+        assertTrue(resilient.fetch(KEY).fallback);
+        assertEquals(CircuitBreaker.State.OPEN, resilient.getBreaker().getState());
+
+        // Open: answered from the fallback, without a request
+        assertTrue(resilient.fetch(KEY).fallback);
+        assertEquals(2, server.requestCount());
+
+        // Half open, once the breaker has been open long enough: a trial closes it
+        Thread.sleep(250);
+        NameDays fetched = resilient.fetch(KEY);
+        assertEquals("Names 2/2", fetched.names);
+        assertFalse(fetched.fallback);
+        assertEquals(CircuitBreaker.State.CLOSED, resilient.getBreaker().getState());
+        assertEquals(3, resilient.fallbackCount());
+    }
+
+    @Test
+    public void fetch_doesNotFallBackOnceCancelled() throws Exception {
+        final ResilientFetcher resilient = new ResilientFetcher(fetcher, 3, 10, 100, 0,
+                new CircuitBreaker(5, 1000, null), new ResilientFetcher.Fallback() {
+                    @Override
+                    public NameDays fallback(ResponseCache.Key key) {
+                        return new NameDays("Stale", 2, 2);
+                    }
+                });
+        final IOException[] failure = new IOException[1];
+        server.failNext(3, 503);
+        server.delayNext(3, 1500);
+
+        Thread thread = new CancellableThread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    resilient.fetch(KEY);
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            }
+        }, "Cancelled Fetch");
+        thread.start();
+        Thread.sleep(200);
+        thread.interrupt();
+        thread.join(2000);
+
+        assertFalse(thread.isAlive());
+        assertNotNull(failure[0]);
+        assertEquals(0, resilient.fallbackCount());
+        assertEquals(CircuitBreaker.State.CLOSED, resilient.getBreaker().getState());
+    }
+
+    @Test(expected = ResilientFetcher.CircuitOpenException.class)
+    public void breaker_failsFastWithoutFallback() throws Exception {
+        ResilientFetcher resilient = new ResilientFetcher(fetcher, 1, 10, 100, 0,
+                new CircuitBreaker(1, 10000, null), null);
+        server.failNext(1, 500);
+
+        try {
+            resilient.fetch(KEY);
+            fail();
+        } catch (ApiClient.StatusException expected) {
+        }
+        resilient.fetch(KEY);
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.john.namedays;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+
+import static org.junit.Assert.*;
+
+/**
+ * Puts responses in the cache, and reads them back at chosen times, across their expiry.
+ */
+public class ResponseCacheTest {
+
+    private static final long HOUR = 60 * 60 * 1000;
+
+    private static ResponseCache.Key key(int day) {
+        return new ResponseCache.Key("namedays", day, 1, "name_us");
+    }
+
+    private static NameDays names(String names) {
+        return new NameDays(names, 1, 1);
+    }
+
+    /**
+     * @return 10:00 today, local time
+     */
+    private static long morning() {
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(Calendar.HOUR_OF_DAY, 10);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        return calendar.getTimeInMillis();
+    }
+
+    @Test
+    public void put_evictsTheLeastRecentlyUsed() {
+        ResponseCache cache = new ResponseCache(2, HOUR);
+        long now = morning();
+
+        cache.put(key(1), names("One"), now);
+        cache.put(key(2), names("Two"), now);
+        // Used, so that 2 is now the least recently used
+        assertEquals("One", cache.get(key(1), now).names);
+        cache.put(key(3), names("Three"), now);
+
+        assertNull(cache.get(key(2), now));
+        assertEquals("One", cache.get(key(1), now).names);
+        assertEquals("Three", cache.get(key(3), now).names);
+        assertEquals(1, cache.evictionCount());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void get_missesOnceTheTimeToLiveOrMaxAgeHasPassed() {
+        ResponseCache cache = new ResponseCache(8, HOUR);
+        long now = morning();
+
+        cache.put(key(1), names("One"), now);
+        cache.put(key(2), names("Two").withValidators(new Validators(null, null, 60, -1)), now);
+
+        assertEquals("One", cache.get(key(1), now + HOUR - 1).names);
+        assertNull(cache.get(key(1), now + HOUR));
+        assertEquals("Two", cache.get(key(2), now + 59 * 1000).names);
+        assertNull(cache.get(key(2), now + 60 * 1000));
+        assertEquals(2, cache.expirationCount());
+        // Kept, for its validators
+        assertEquals("One", cache.peek(key(1)).names);
+    }
+
+    @Test
+    public void get_missesRelativeKeysAfterMidnight() {
+        ResponseCache cache = new ResponseCache(8, 48 * HOUR, 48 * HOUR);
+        ResponseCache.Key today = new ResponseCache.Key("today", 0, 0, "name_us");
+        long now = morning();
+        long midnight = ResponseCache.nextMidnight(now);
+
+        cache.put(today, names("Today"), now);
+        cache.put(key(1), names("Date"), now);
+
+        assertEquals("Today", cache.get(today, midnight - 1).names);
+        assertNull(cache.get(today, midnight));
+        // Not even stale, since they are the names of another day
+        assertNull(cache.getStale(today, midnight));
+        assertEquals("Date", cache.get(key(1), midnight).names);
+    }
+
+    @Test
+    public void peek_dropsRelativeKeysAfterMidnight() {
+        ResponseCache cache = new ResponseCache(8, HOUR);
+        ResponseCache.Key today = new ResponseCache.Key("today", 0, 0, "name_us");
+        long now = morning();
+        long midnight = ResponseCache.nextMidnight(now);
+
+        cache.put(today, names("Today").withValidators(new Validators("\"1\"", null, 60, -1)),
+                now);
+        cache.put(key(1), names("Date"), now);
+
+        // Expired, but held for its validators until the day changes
+        assertEquals("Today", cache.peek(today, midnight - 1).names);
+        assertNull(cache.peek(today, midnight));
+        assertEquals(1, cache.size());
+        assertEquals("Date", cache.peek(key(1), midnight).names);
+    }
+
+    @Test
+    public void getStale_servesExpiredEntriesWhileTheyMayBeRevalidated() {
+        ResponseCache cache = new ResponseCache(8, HOUR, HOUR);
+        long now = morning();
+
+        cache.put(key(1), names("One"), now);
+        cache.put(key(2), names("Two").withValidators(new Validators(null, null, 60, 0)), now);
+
+        // Fresh, so not served as stale
+        assertNull(cache.getStale(key(1), now));
+        assertNull(cache.get(key(1), now + HOUR));
+        assertEquals("One", cache.getStale(key(1), now + HOUR).names);
+        assertNull(cache.getStale(key(1), now + 2 * HOUR));
+        // The response allowed no stale serving
+        assertNull(cache.getStale(key(2), now + 60 * 1000));
+        assertEquals(1, cache.staleHitCount());
+    }
+
+    @Test
+    public void put_evictsEntriesPastServingBeforeLiveOnes() {
+        ResponseCache cache = new ResponseCache(2, HOUR);
+        long now = morning();
+
+        cache.put(key(1), names("One"), now);
+        cache.put(key(2), names("Two").withValidators(new Validators(null, null, 1, 0)), now);
+        cache.get(key(2), now);
+        cache.put(key(3), names("Three"), now + 2000);
+
+        // 2 is the most recently used of the old ones, but can no longer be served
+        assertEquals("One", cache.get(key(1), now + 2000).names);
+        assertNull(cache.peek(key(2)));
+    }
+}
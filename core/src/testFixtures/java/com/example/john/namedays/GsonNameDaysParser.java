@@ -0,0 +1,83 @@
+package com.example.john.namedays;
+
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+/**
+ * Parses response bodies of the NameDays API as the app does, with {@link NameDaysReader} on
+ * Gson's JsonReader in place of android.util.JsonReader, which share their API. The one copy that
+ * the tests, the benchmarks and the tools parse with
+ */
+final class GsonNameDaysParser implements ApiClient.BodyReader<NameDays> {
+
+    static final HttpFetcher.ParserFactory FACTORY = new HttpFetcher.ParserFactory() {
+        @Override
+        public ApiClient.BodyReader<NameDays> parserFor(String country) {
+            return new GsonNameDaysParser(country);
+        }
+    };
+
+    private final String country;
+
+    /**
+     * @param country The NameDays API key of the country whose names are answered, or null to
+     * answer with the names of every country only
+     */
+    GsonNameDaysParser(String country) {
+        this.country = country;
+    }
+
+    @Override
+    public NameDays read(InputStream body) throws IOException {
+        final JsonReader reader = new JsonReader(new InputStreamReader(body, "UTF-8"));
+
+        return NameDaysReader.read(new NameDaysReader.Json() {
+            @Override
+            public void beginObject() throws IOException {
+                reader.beginObject();
+            }
+
+            @Override
+            public boolean hasNext() throws IOException {
+                return reader.hasNext();
+            }
+
+            @Override
+            public String nextName() throws IOException {
+                return reader.nextName();
+            }
+
+            @Override
+            public NameDaysReader.Token peek() throws IOException {
+                switch (reader.peek()) {
+                    case BEGIN_OBJECT:
+                        return NameDaysReader.Token.BEGIN_OBJECT;
+                    case STRING:
+                        return NameDaysReader.Token.STRING;
+                    case NULL:
+                        return NameDaysReader.Token.NULL;
+                    default:
+                        return NameDaysReader.Token.OTHER;
+                }
+            }
+
+            @Override
+            public String nextString() throws IOException {
+                return reader.nextString();
+            }
+
+            @Override
+            public int nextInt() throws IOException {
+                return reader.nextInt();
+            }
+
+            @Override
+            public void skipValue() throws IOException {
+                reader.skipValue();
+            }
+        }, country);
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.john.namedays;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pushes the request pipeline of the app, as the activity drives it, at a set concurrency, and
+ * reports its throughput and latency percentiles.
+ *
+ * Every caller looks up random dates through a {@link NameDayService}, over the fetcher chain of
+ * the app (resilient fetcher, HTTP fetcher, streaming parser), and waits for each answer before
+ * the next, as the activity does. The target is a {@link StandInServer} started in the process,
+ * so the run is offline, unless a base URL is given.
+ *
+ * Usage: LoadDriver [--url=base URL] [--concurrency=8] [--seconds=10] [--dates=366]
+ * [--threads=4] [--queue=64] [--cache=false] [--rate=requests per second, or 0 for no limit],
+ * and the options of {@link StandInServer} for the
+ * server started in the process
+ */
+public final class LoadDriver {
+
+    private LoadDriver() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        final int concurrency = Integer.parseInt(StandInServer.option(args, "concurrency", "8"));
+        long seconds = Long.parseLong(StandInServer.option(args, "seconds", "10"));
+        final int dates = Integer.parseInt(StandInServer.option(args, "dates", "366"));
+        int threads = Integer.parseInt(StandInServer.option(args, "threads", "4"));
+        int queue = Integer.parseInt(StandInServer.option(args, "queue", "64"));
+        boolean cached = Boolean.parseBoolean(StandInServer.option(args, "cache", "false"));
+        String url = StandInServer.option(args, "url", null);
+        double rate = Double.parseDouble(StandInServer.option(args, "rate", "0"));
+
+        StandInServer server = null;
+        if (url == null) {
+            server = new StandInServer(StandInServer.configOf(args), StandInServer.responsesIn(
+                    new File(StandInServer.option(args, "responses", "responses"))));
+            server.start();
+            url = server.baseUrl();
+        }
+
+        Metrics metrics = new Metrics();
+        // As many connections kept alive as may be in flight
+        ApiClient.configureConnectionPool(threads, TimeUnit.MINUTES.toMillis(5));
+        HttpFetcher fetcher = new HttpFetcher(new ApiClient(url, ApiClient.DEFAULT_CONNECT_TIMEOUT,
+                ApiClient.DEFAULT_READ_TIMEOUT), GsonNameDaysParser.FACTORY, metrics);
+        // Every caller is interactive, as a user tapping away
+        RateLimiter limiter = rate > 0 ? new RateLimiter(rate, (int) Math.ceil(rate), 2000, rate,
+                (int) Math.ceil(rate), 2000) : null;
+        ResilientFetcher resilient = new ResilientFetcher(limiter != null
+                ? limiter.limit(fetcher, RateLimiter.Priority.INTERACTIVE) : fetcher, 3, 250, 4000,
+                1000, new CircuitBreaker(5, TimeUnit.SECONDS.toMillis(30), null), null);
+
+        final ResponseCache responseCache = new ResponseCache(64, TimeUnit.HOURS.toMillis(6));
+        final boolean useCache = cached;
+        final NameDayService service = new NameDayService(resilient, new NameDayService.Cache() {
+            @Override
+            public NameDays get(ResponseCache.Key key) {
+                return useCache ? responseCache.get(key) : null;
+            }
+
+            @Override
+            public NameDays getStale(ResponseCache.Key key) {
+                return null;
+            }
+
+            @Override
+            public void put(ResponseCache.Key key, NameDays nameDays) {
+                if (useCache) {
+                    responseCache.put(key, nameDays);
+                }
+            }
+
+            @Override
+            public NameDays load(ResponseCache.Key key) {
+                return null;
+            }
+        }, threads, queue, metrics);
+
+        final LatencyHistogram latencies = new LatencyHistogram();
+        final AtomicLong succeeded = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+        final AtomicLong rejected = new AtomicLong();
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        final CountDownLatch done = new CountDownLatch(concurrency);
+
+        System.out.println(String.format("%d callers for %ds against %s", concurrency, seconds,
+                url));
+        long start = System.nanoTime();
+
+        for (int i = 0; i < concurrency; i++) {
+            final Random random = new Random(i);
+            new Thread("Load Caller " + (i + 1)) {
+                @Override
+                public void run() {
+                    try {
+                        while (System.nanoTime() < deadline) {
+                            int dayOfYear = random.nextInt(Math.min(dates,
+                                    NameDayIndex.DAYS_IN_YEAR));
+                            ResponseCache.Key key = new ResponseCache.Key("namedays",
+                                    NameDayIndex.dayOf(dayOfYear), NameDayIndex.monthOf(dayOfYear),
+                                    Countries.apiKey(random.nextInt(Countries.COUNT)));
+
+                            long requestStart = System.nanoTime();
+                            try {
+                                service.lookup(key).get();
+                                latencies.recordNanos(System.nanoTime() - requestStart);
+                                succeeded.incrementAndGet();
+                            } catch (ExecutionException e) {
+                                failed.incrementAndGet();
+                            } catch (RejectedExecutionException e) {
+                                rejected.incrementAndGet();
+                                // Back off, as the activity does when the user tries again
+                                Thread.sleep(10);
+                            }
+                        }
+                    } catch (InterruptedException ignore) {
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+        done.await();
+
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+        LatencyHistogram.Snapshot snapshot = latencies.snapshot();
+        System.out.println(String.format(
+                "%.0f lookups/s: %d succeeded, %d failed, %d rejected in %.1fs",
+                succeeded.get() / elapsedSeconds, succeeded.get(), failed.get(), rejected.get(),
+                elapsedSeconds));
+        System.out.println(String.format(
+                "latency: p50=%dus, p90=%dus, p99=%dus, p99.9=%dus, max=%dus, mean=%dus",
+                snapshot.percentileMicros(50), snapshot.percentileMicros(90),
+                snapshot.percentileMicros(99), snapshot.percentileMicros(99.9),
+                snapshot.maxMicros, snapshot.meanMicros()));
+        System.out.println(metrics.snapshot());
+        System.out.println(resilient);
+        if (limiter != null) {
+            System.out.println(limiter);
+        }
+        System.out.println(service);
+        if (server != null) {
+            System.out.println(server);
+            server.stop();
+        }
+        System.exit(0);
+    }
+}
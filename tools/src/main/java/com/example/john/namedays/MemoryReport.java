@@ -0,0 +1,210 @@
+package com.example.john.namedays;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Measures the heap taken by a whole year of names for every country, held as a string per slot,
+ * as the name day index once held them; held by an index filled in as names arrive, as numbers
+ * into a dictionary of distinct names; and held the way the app loads it, as an index over a
+ * mapped snapshot, with the search index built from it.
+ *
+ * The year is that of a snapshot, such as the bundled index, if one is given. Otherwise it is
+ * made of the recorded responses, twice: replayed for every day, as the stand-in server does,
+ * which repeats names more than any real year; and with every name made distinct for its day,
+ * which repeats names only across the countries of a day, less than a real year does.
+ *
+ * Usage: MemoryReport [--snapshot=file] [--responses=dir]
+ */
+public final class MemoryReport {
+
+    private interface Build {
+        Object build(String[] year);
+    }
+
+    private static final Build STRINGS = new Build() {
+        @Override
+        public Object build(String[] year) {
+            String[] strings = new String[year.length];
+            for (int i = 0; i < year.length; i++) {
+                // A string of its own per slot, as parsed from a response of its own
+                strings[i] = year[i] != null ? new String(year[i].toCharArray()) : null;
+            }
+            return strings;
+        }
+    };
+
+    private static final Build INDEX = new Build() {
+        @Override
+        public Object build(String[] year) {
+            NameDayIndex index = new NameDayIndex();
+            for (int i = 0; i < year.length; i++) {
+                if (year[i] != null) {
+                    int dayOfYear = i / Countries.COUNT;
+                    index.put(NameDayIndex.dayOf(dayOfYear), NameDayIndex.monthOf(dayOfYear),
+                            Countries.apiKey(i % Countries.COUNT), year[i]);
+                }
+            }
+            return index;
+        }
+    };
+
+    private static final int COPIES = 20;
+
+    private MemoryReport() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        String snapshot = StandInServer.option(args, "snapshot", null);
+
+        if (snapshot != null) {
+            report("snapshot " + snapshot, yearOf(NameDayIndex.map(new File(snapshot))));
+        } else {
+            String[] replayed = replayed(StandInServer.responsesIn(
+                    new File(StandInServer.option(args, "responses", "responses"))));
+            report("recorded days, replayed", replayed);
+            report("recorded days, distinct names per day", distinctPerDay(replayed));
+        }
+    }
+
+    /**
+     * Maps the snapshot, and builds the search index from it, as the app does when it starts
+     */
+    private static Build mapped(final File snapshot) {
+        return new Build() {
+            @Override
+            public Object build(String[] year) {
+                NameDayIndex index;
+                try {
+                    index = NameDayIndex.map(snapshot);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+                final NameSearchIndex searchIndex = new NameSearchIndex();
+                index.forEach(new NameDayIndex.Visitor() {
+                    @Override
+                    public void visit(int dayOfYear, int countryId, String names) {
+                        searchIndex.add(dayOfYear, countryId, names);
+                    }
+                });
+                return new Object[]{index, searchIndex};
+            }
+        };
+    }
+
+    private static void report(String name, String[] year) throws IOException {
+        int slots = 0;
+        long chars = 0;
+        for (String names : year) {
+            if (names != null) {
+                slots++;
+                chars += names.length();
+            }
+        }
+        NameDayIndex index = (NameDayIndex) INDEX.build(year);
+
+        System.out.println(String.format("%s: %d slots, %d chars, %d distinct names", name, slots,
+                chars, index.distinctNames()));
+        System.out.println(String.format("  string per slot:    %,d bytes",
+                measure(STRINGS, year)));
+        System.out.println(String.format("  dictionary:         %,d bytes",
+                measure(INDEX, year)));
+
+        File snapshot = File.createTempFile("namedays", ".idx");
+        try {
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(snapshot));
+            try {
+                index.writeTo(out);
+            } finally {
+                out.close();
+            }
+            System.out.println(String.format("  mapped, searchable: %,d bytes of heap, %,d mapped",
+                    measure(mapped(snapshot), year), snapshot.length()));
+        } finally {
+            if (!snapshot.delete()) {
+                snapshot.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * @return The growth of the heap, once collected, from building the year, averaged over
+     * several copies, so that it stands out from the noise of the collector
+     */
+    private static long measure(Build build, String[] year) {
+        Object[] built = new Object[COPIES];
+        long before = usedHeap();
+        for (int i = 0; i < COPIES; i++) {
+            built[i] = build.build(year);
+        }
+        long after = usedHeap();
+
+        // Kept reachable until measured
+        if (built[COPIES - 1].hashCode() == 42) {
+            System.out.println();
+        }
+        return (after - before) / COPIES;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static String[] yearOf(NameDayIndex index) {
+        final String[] year = new String[NameDayIndex.DAYS_IN_YEAR * Countries.COUNT];
+        index.forEach(new NameDayIndex.Visitor() {
+            @Override
+            public void visit(int dayOfYear, int countryId, String names) {
+                year[dayOfYear * Countries.COUNT + countryId] = names;
+            }
+        });
+        return year;
+    }
+
+    private static String[] replayed(List<File> responses) throws IOException {
+        if (responses.isEmpty()) {
+            throw new IOException("No recorded responses");
+        }
+        String[][] rows = new String[responses.size()][];
+        for (int i = 0; i < rows.length; i++) {
+            FileInputStream in = new FileInputStream(responses.get(i));
+            try {
+                rows[i] = new GsonNameDaysParser(null).read(in).allCountries;
+            } finally {
+                in.close();
+            }
+        }
+
+        String[] year = new String[NameDayIndex.DAYS_IN_YEAR * Countries.COUNT];
+        for (int dayOfYear = 0; dayOfYear < NameDayIndex.DAYS_IN_YEAR; dayOfYear++) {
+            System.arraycopy(rows[dayOfYear % rows.length], 0, year, dayOfYear * Countries.COUNT,
+                    Countries.COUNT);
+        }
+        return year;
+    }
+
+    private static String[] distinctPerDay(String[] replayed) {
+        String[] year = new String[replayed.length];
+        for (int i = 0; i < year.length; i++) {
+            if (replayed[i] != null) {
+                String suffix = " " + (i / Countries.COUNT);
+                year[i] = replayed[i].replace(", ", suffix + ", ") + suffix;
+            }
+        }
+        return year;
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.john.namedays;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Converts recorded response bodies of the NameDays API into the snapshot that the app maps as
+ * its bundled name day index.
+ *
+ * Usage: SnapshotConverter snapshot-file (response.json | directory of them)...
+ *
+ * Each body is the JSON of one date, {"data":{"day":D,"month":M,"name_us":"...",...}}; the names
+ * of every supported country in it are kept, and those of later bodies replace earlier ones.
+ */
+public final class SnapshotConverter {
+
+    private SnapshotConverter() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println(
+                    "Usage: SnapshotConverter snapshot-file (response.json | directory)...");
+            System.exit(2);
+        }
+
+        List<File> bodies = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            addBodies(new File(args[i]), bodies);
+        }
+
+        NameDayIndex index = new NameDayIndex();
+        for (File body : bodies) {
+            read(body, index);
+        }
+
+        File snapshot = new File(args[0]);
+        File parent = snapshot.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Unable to create " + parent);
+        }
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(snapshot));
+        try {
+            index.writeTo(out);
+        } finally {
+            out.close();
+        }
+
+        System.out.println(String.format("%d responses, %d of %d slots, %d bytes: %s",
+                bodies.size(), index.size(), NameDayIndex.DAYS_IN_YEAR * Countries.COUNT,
+                snapshot.length(), snapshot));
+    }
+
+    private static void addBodies(File file, List<File> bodies) throws IOException {
+        if (!file.isDirectory()) {
+            if (!file.isFile()) {
+                throw new IOException("No such file: " + file);
+            }
+            bodies.add(file);
+            return;
+        }
+        File[] files = file.listFiles();
+        if (files == null) {
+            throw new IOException("Unable to list " + file);
+        }
+        // In order of name, so that which body wins does not depend on the file system
+        Arrays.sort(files);
+        for (File child : files) {
+            if (child.isDirectory() || child.getName().endsWith(".json")) {
+                addBodies(child, bodies);
+            }
+        }
+    }
+
+    /**
+     * Puts the names of every country in the body into the index
+     */
+    private static void read(File body, NameDayIndex index) throws IOException {
+        NameDays nameDays;
+        InputStream in = new BufferedInputStream(new FileInputStream(body));
+        try {
+            nameDays = new GsonNameDaysParser(null).read(in);
+        } catch (ParseException e) {
+            throw new ParseException(e.getMessage() + ": " + body);
+        } finally {
+            in.close();
+        }
+
+        for (int id = 0; id < Countries.COUNT; id++) {
+            index.put(nameDays.day, nameDays.month, Countries.apiKey(id),
+                    nameDays.allCountries[id]);
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package com.example.john.namedays;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A local stand-in for the NameDays API, which replays recorded response bodies, so that the app
+ * and its engine can be tuned and load tested offline, against a server that behaves as told.
+ *
+ * It answers {@code today}, {@code yesterday}, {@code tomorrow} and {@code namedays?day=D&month=M}
+ * under {@code /get/}, with the body recorded for the date. Dates without a recording get one of
+ * the others, with the date in it rewritten. Every response is delayed by the latency, plus or
+ * minus up to the jitter; a share of them fails with 503; and requests beyond the most allowed in
+ * any one second are throttled with 429.
+ *
+ * Usage: StandInServer [--port=8080] [--responses=dir] [--latency=ms] [--jitter=ms]
+ * [--error-rate=0..1] [--max-rate=requests per second]
+ */
+public final class StandInServer {
+
+    static final class Config {
+        int port;
+        long latencyMillis;
+        long jitterMillis;
+        double errorRate;
+        /**
+         * The most requests answered in any one second, or 0 for no limit
+         */
+        int maxRequestsPerSecond;
+        int threads = 32;
+    }
+
+    private final Config config;
+    /**
+     * Recorded bodies, by day of year; null for days without a recording
+     */
+    private final byte[][] recorded = new byte[NameDayIndex.DAYS_IN_YEAR][];
+    private final List<Integer> recordedDays = new ArrayList<>();
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Random random = new Random();
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+    private long windowStart;
+    private int windowCount;
+
+    /**
+     * @param responses Recorded response bodies, one date each
+     */
+    StandInServer(Config config, List<File> responses) throws IOException {
+        this.config = config;
+
+        for (File response : responses) {
+            byte[] body = readFully(new FileInputStream(response));
+            NameDays nameDays = new GsonNameDaysParser(null).read(new ByteArrayInputStream(body));
+            int dayOfYear = NameDayIndex.dayOfYear(nameDays.day, nameDays.month);
+
+            if (recorded[dayOfYear] == null) {
+                recordedDays.add(dayOfYear);
+            }
+            recorded[dayOfYear] = body;
+        }
+        if (recordedDays.isEmpty()) {
+            throw new IOException("No recorded responses to replay");
+        }
+
+        // Otherwise the body, written apart from the headers, waits on a delayed ACK
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", config.port), 256);
+        server.createContext("/get/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    answer(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        executor = Executors.newFixedThreadPool(config.threads);
+        server.setExecutor(executor);
+    }
+
+    void start() {
+        server.start();
+    }
+
+    void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/get/";
+    }
+
+    private void answer(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+
+        if (!admit()) {
+            throttled.incrementAndGet();
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            exchange.sendResponseHeaders(429, -1);
+            return;
+        }
+
+        long delay = config.latencyMillis;
+        if (config.jitterMillis > 0) {
+            delay += (long) ((random.nextDouble() * 2 - 1) * config.jitterMillis);
+        }
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+
+        if (random.nextDouble() < config.errorRate) {
+            failed.incrementAndGet();
+            exchange.sendResponseHeaders(503, -1);
+            return;
+        }
+
+        int dayOfYear = dayOfYearOf(exchange.getRequestURI().getPath(),
+                exchange.getRequestURI().getQuery());
+        if (dayOfYear == -1) {
+            exchange.sendResponseHeaders(404, -1);
+            return;
+        }
+
+        byte[] body = bodyFor(dayOfYear);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.close();
+    }
+
+    /**
+     * @return False if the request is over the most allowed in the current second
+     */
+    private synchronized boolean admit() {
+        if (config.maxRequestsPerSecond <= 0) {
+            return true;
+        }
+        long now = System.nanoTime();
+        if (now - windowStart >= TimeUnit.SECONDS.toNanos(1)) {
+            windowStart = now;
+            windowCount = 0;
+        }
+        return ++windowCount <= config.maxRequestsPerSecond;
+    }
+
+    /**
+     * @return The day of the year that the request is for, or -1 if it is not one of the API
+     */
+    private static int dayOfYearOf(String path, String query) {
+        String endpoint = path.substring(path.lastIndexOf('/') + 1);
+        Calendar calendar = Calendar.getInstance();
+
+        switch (endpoint) {
+            case "yesterday":
+                calendar.add(Calendar.DAY_OF_MONTH, -1);
+                break;
+            case "today":
+                break;
+            case "tomorrow":
+                calendar.add(Calendar.DAY_OF_MONTH, 1);
+                break;
+            case "namedays":
+                int day = -1, month = -1;
+                for (String parameter : query != null ? query.split("&") : new String[0]) {
+                    String[] pair = parameter.split("=", 2);
+                    try {
+                        if (pair[0].equals("day")) {
+                            day = Integer.parseInt(pair[1]);
+                        } else if (pair[0].equals("month")) {
+                            month = Integer.parseInt(pair[1]);
+                        }
+                    } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                        return -1;
+                    }
+                }
+                return NameDayIndex.dayOfYear(day, month);
+            default:
+                return -1;
+        }
+        return NameDayIndex.dayOfYear(calendar.get(Calendar.DAY_OF_MONTH),
+                calendar.get(Calendar.MONTH) + 1);
+    }
+
+    /**
+     * @return The body recorded for the day, or else that of another day, with the date in it
+     * replaced
+     */
+    private byte[] bodyFor(int dayOfYear) throws IOException {
+        if (recorded[dayOfYear] != null) {
+            return recorded[dayOfYear];
+        }
+        byte[] other = recorded[recordedDays.get(dayOfYear % recordedDays.size())];
+        return new String(other, "UTF-8")
+                .replaceFirst("\"day\"\\s*:\\s*\\d+", "\"day\":" + NameDayIndex.dayOf(dayOfYear))
+                .replaceFirst("\"month\"\\s*:\\s*\\d+",
+                        "\"month\":" + NameDayIndex.monthOf(dayOfYear))
+                .getBytes("UTF-8");
+    }
+
+    @Override
+    public String toString() {
+        return "StandInServer[" + baseUrl() + ", recorded=" + recordedDays.size()
+                + ", requests=" + requests + ", failed=" + failed + ", throttled=" + throttled
+                + "]";
+    }
+
+    /**
+     * @return The .json files in the files and directories, in order of name
+     */
+    static List<File> responsesIn(File... files) throws IOException {
+        List<File> responses = new ArrayList<>();
+        for (File file : files) {
+            if (file.isFile()) {
+                responses.add(file);
+                continue;
+            }
+            File[] children = file.listFiles();
+            if (children == null) {
+                throw new IOException("No such file or directory: " + file);
+            }
+            Arrays.sort(children);
+            for (File child : children) {
+                if (child.isDirectory() || child.getName().endsWith(".json")) {
+                    responses.addAll(responsesIn(child));
+                }
+            }
+        }
+        return responses;
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                bytes.write(buffer, 0, n);
+            }
+            return bytes.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @return The value of the option {@code --name=value} in the arguments, or the default
+     */
+    static String option(String[] args, String name, String defaultValue) {
+        for (String arg : args) {
+            if (arg.startsWith("--" + name + "=")) {
+                return arg.substring(name.length() + 3);
+            }
+        }
+        return defaultValue;
+    }
+
+    static Config configOf(String[] args) {
+        Config config = new Config();
+        config.port = Integer.parseInt(option(args, "port", "0"));
+        config.latencyMillis = Long.parseLong(option(args, "latency", "0"));
+        config.jitterMillis = Long.parseLong(option(args, "jitter", "0"));
+        config.errorRate = Double.parseDouble(option(args, "error-rate", "0"));
+        config.maxRequestsPerSecond = Integer.parseInt(option(args, "max-rate", "0"));
+        return config;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Config config = configOf(args);
+        if (config.port == 0) {
+            config.port = 8080;
+        }
+        StandInServer server = new StandInServer(config,
+                responsesIn(new File(option(args, "responses", "responses"))));
+        server.start();
+        System.out.println("Serving " + server.baseUrl() + ", Ctrl-C to stop");
+    }
+}
@@ -0,0 +1,60 @@
+#!/bin/sh
+#
+# Measures cold and warm starts of the app on the connected device or emulator, so that the time
+# to first content can be compared across releases. Install the build to measure first, such as
+# with ./gradlew installRelease.
+#
+# Cold: the process is killed before each start. Warm: the process lives, and the activity is
+# started again after Home. Each start reports:
+#   displayed  - the first frame, as the activity manager measures it (am start -W, TotalTime)
+#   content    - the names of the last answer shown, from the local index: the "Fully drawn"
+#                that MainActivity reports once it has shown them
+#
+# The medians of the runs are printed. Traces of the sections of onCreate (loadNameDayIndex,
+# showLastAnswer) can be captured alongside with systrace, under the app's package.
+#
+# Usage: tools/startup-benchmark.sh [runs, default 10]
+
+RUNS=${1:-10}
+PACKAGE=com.example.john.namedays
+ACTIVITY=$PACKAGE/.MainActivity
+
+# Prints the median of the numbers on standard input
+median() {
+    sort -n | awk '{ v[NR] = $1 } END { if (NR == 0) print "-"; else print v[int((NR + 1) / 2)] }'
+}
+
+# Starts the activity, and prints its displayed and fully drawn times, in ms
+start() {
+    adb logcat -c
+    displayed=$(adb shell am start -W -n $ACTIVITY | tr -d '\r' | awk -F': ' '/TotalTime/ { print $2 }')
+    # Fully drawn is logged once the activity reports it, shortly after the first frame
+    sleep 1
+    content=$(adb logcat -d -s ActivityManager:I ActivityTaskManager:I | tr -d '\r' \
+        | sed -n "s|.*Fully drawn $ACTIVITY: +\([0-9s]*\)ms.*|\1|p" | tail -n 1 \
+        | awk -F's' '{ if (NF > 1) print $1 * 1000 + $2; else print $1 }')
+    echo "$displayed ${content:--}"
+}
+
+run() {
+    kind=$1
+    : > /tmp/startup-$kind
+    i=0
+    while [ $i -lt "$RUNS" ]; do
+        if [ "$kind" = cold ]; then
+            adb shell am force-stop $PACKAGE
+        else
+            adb shell input keyevent KEYCODE_HOME
+        fi
+        sleep 1
+        start >> /tmp/startup-$kind
+        i=$((i + 1))
+    done
+    echo "$kind: displayed $(cut -d' ' -f1 /tmp/startup-$kind | median)ms," \
+        "content $(cut -d' ' -f2 /tmp/startup-$kind | grep -v -- - | median)ms" \
+        "(median of $RUNS)"
+}
+
+run cold
+# The process is left running by the last cold start
+run warm